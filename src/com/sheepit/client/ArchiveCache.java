@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Keep the archives, and the directories extracted from them, of the cache directories (working, storage and shared downloads) under a
+ * size quota, and make room before a download so the disk doesn't get full in the middle of it.
+ *
+ * The size, last access and number of hits of each archive or extracted directory are kept in an index in its directory. When a download
+ * needs room, the entries of the directory are removed, the least recently used ones first (or the ones least expensive to download again,
+ * for the COST policy), except the ones used by a job of this client and the ones being downloaded by another client.
+ *
+ * The room made is reserved until the caller releases it (once the space has been allocated on the disk, or the file written), so several
+ * downloads, extractions and renders running at the same time don't count the same free space.
+ */
+public class ArchiveCache {
+	public static final String INDEX_FILENAME = "cache_index.txt";
+	private static final String SEPARATOR = "\t";
+	private static final long MIN_FREE_SPACE = 512 * 1024; // in bytes, like Utils.noFreeSpaceOnDisk
+	private static final Pattern NAME = Pattern.compile("[0-9a-f]{32}(\\.zip)?"); // md5 of the archive
+	
+	public enum Policy {
+		LRU, COST
+	}
+	
+	private Log log;
+	private long quota; // in bytes, for each directory, -1 if there is no limit
+	private Policy policy;
+	private Map<String, Map<String, Entry>> directories; // entries by name, by absolute path of the directory
+	private Map<FileStore, Long> reserved; // in bytes, by disk
+	
+	public ArchiveCache(Log log_, long quota_, Policy policy_) {
+		this.log = log_;
+		this.quota = quota_;
+		this.policy = policy_;
+		this.directories = new LinkedHashMap<String, Map<String, Entry>>();
+		this.reserved = new HashMap<FileStore, Long>();
+	}
+	
+	public synchronized void addDirectory(File directory_) {
+		if (directory_ != null && this.directories.containsKey(directory_.getAbsolutePath()) == false) {
+			this.directories.put(directory_.getAbsolutePath(), this.load(directory_));
+		}
+	}
+	
+	/**
+	 * Record a use of an archive or an extracted directory
+	 */
+	public synchronized void access(File file_) {
+		Map<String, Entry> entries = this.directories.get(file_.getParentFile().getAbsolutePath());
+		if (entries == null || NAME.matcher(file_.getName()).matches() == false) {
+			return;
+		}
+		
+		this.scan(file_.getParentFile(), entries);
+		Entry entry = entries.get(file_.getName());
+		if (entry != null) {
+			entry.lastAccess = new Date().getTime();
+			entry.hits++;
+			this.save(file_.getParentFile(), entries);
+		}
+	}
+	
+	/**
+	 * Remove entries until size_ bytes can be written in the directory, while staying under the quota and leaving some free space on the disk.
+	 * The entries of the other directories on the same disk are removed too if it's not enough. The space reserved by the others is not
+	 * considered free.
+	 *
+	 * @return the reservation, to release once the space is allocated or not needed anymore, null if there is not enough room even with all
+	 * the unused entries removed
+	 */
+	public synchronized Reservation reserve(File directory_, long size_) {
+		Set<String> used = this.getUsedNames();
+		File directory = directory_.getAbsoluteFile();
+		
+		Map<String, Entry> entries = this.directories.get(directory.getAbsolutePath());
+		if (entries != null) {
+			this.scan(directory, entries);
+			if (this.quota >= 0) {
+				long total = 0;
+				for (Entry entry : entries.values()) {
+					total += entry.size;
+				}
+				this.evict(directory, entries, used, total + size_ - this.quota);
+			}
+			this.evict(directory, entries, used, size_ + MIN_FREE_SPACE - this.getFreeSpace(directory));
+		}
+		
+		for (Map.Entry<String, Map<String, Entry>> other : this.directories.entrySet()) {
+			File otherDirectory = new File(other.getKey());
+			if (this.getFreeSpace(directory) - size_ >= MIN_FREE_SPACE) {
+				break;
+			}
+			if (otherDirectory.equals(directory) == false && this.isSameDisk(directory, otherDirectory)) {
+				this.scan(otherDirectory, other.getValue());
+				this.evict(otherDirectory, other.getValue(), used, size_ + MIN_FREE_SPACE - this.getFreeSpace(directory));
+			}
+		}
+		
+		if (this.quota >= 0 && size_ > this.quota) {
+			this.log.debug("ArchiveCache::reserve " + size_ + " bytes is over the quota of " + this.quota + " bytes, ignoring the quota for it");
+		}
+		
+		long free = this.getFreeSpace(directory);
+		if (free - size_ < MIN_FREE_SPACE) {
+			this.log.error("ArchiveCache::reserve not enough space in " + directory + " for " + size_ + " bytes (usable " + directory.getUsableSpace()
+					+ " bytes, of which " + (directory.getUsableSpace() - free) + " are reserved)");
+			return null;
+		}
+		
+		FileStore store = this.getFileStore(directory);
+		if (store != null && size_ > 0) {
+			this.reserved.put(store, this.reserved.getOrDefault(store, 0L) + size_);
+		}
+		return new Reservation(store, size_);
+	}
+	
+	/**
+	 * Remove the unused entries over the quota, in every directory
+	 */
+	public synchronized void trim() {
+		if (this.quota < 0) {
+			return;
+		}
+		for (String directory : new ArrayList<String>(this.directories.keySet())) {
+			this.reserve(new File(directory), 0);
+		}
+	}
+	
+	/**
+	 * @return the names (md5 with or without ".zip") of the archives and directories used by the jobs, overridden by the client
+	 */
+	protected Set<String> getUsedNames() {
+		return Collections.emptySet();
+	}
+	
+	/**
+	 * Remove an archive or a directory, overridden by the client for the ones which have to be removed another way
+	 */
+	protected void delete(File file_) {
+		Utils.delete(file_);
+	}
+	
+	/**
+	 * Remove entries until at least amount_ bytes are freed
+	 */
+	private void evict(File directory_, Map<String, Entry> entries_, Set<String> used_, long amount_) {
+		if (amount_ <= 0) {
+			return;
+		}
+		
+		List<Entry> candidates = new ArrayList<Entry>();
+		for (Entry entry : entries_.values()) {
+			String md5 = entry.name.endsWith(".zip") ? entry.name.substring(0, entry.name.length() - ".zip".length()) : entry.name;
+			if (used_.contains(md5) || used_.contains(entry.name)) {
+				continue;
+			}
+			// being downloaded (the archive, or the directory extracted from it) or installed (a renderer of the store) by another client
+			if (new File(directory_, md5 + ".zip.lock").exists() || new File(directory_, entry.name + ".lock").exists()) {
+				continue;
+			}
+			candidates.add(entry);
+		}
+		Collections.sort(candidates, this.policy == Policy.COST ? new CostComparator() : new LRUComparator());
+		
+		long freed = 0;
+		for (Entry entry : candidates) {
+			if (freed >= amount_) {
+				break;
+			}
+			File file = new File(directory_, entry.name);
+			this.log.debug("ArchiveCache::evict removing " + file + " (" + entry.size + " bytes, " + entry.hits + " hits, last access " + new Date(entry.lastAccess) + ")");
+			this.delete(file);
+			if (file.exists() == false) {
+				freed += entry.size;
+				entries_.remove(entry.name);
+			}
+		}
+		this.save(directory_, entries_);
+	}
+	
+	/**
+	 * Add the archives and directories which are not in the index yet, remove the ones which are gone
+	 */
+	private void scan(File directory_, Map<String, Entry> entries_) {
+		Set<String> names = new HashSet<String>();
+		File[] files = directory_.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (NAME.matcher(file.getName()).matches()) {
+					names.add(file.getName());
+					if (entries_.containsKey(file.getName()) == false) {
+						entries_.put(file.getName(), new Entry(file.getName(), size(file), file.lastModified(), 0));
+					}
+				}
+			}
+		}
+		entries_.keySet().retainAll(names);
+	}
+	
+	private boolean isSameDisk(File a_, File b_) {
+		FileStore store = this.getFileStore(a_);
+		return store != null && store.equals(this.getFileStore(b_));
+	}
+	
+	/**
+	 * @return the usable space of the disk, minus what is reserved on it
+	 */
+	private long getFreeSpace(File directory_) {
+		FileStore store = this.getFileStore(directory_);
+		return directory_.getUsableSpace() - (store != null ? this.reserved.getOrDefault(store, 0L) : 0);
+	}
+	
+	private FileStore getFileStore(File directory_) {
+		try {
+			return Files.getFileStore(directory_.toPath());
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+	
+	private static long size(File file_) {
+		if (Files.isSymbolicLink(file_.toPath())) { // staged from the shared downloads directory, the data is counted there
+			return 0;
+		}
+		if (file_.isDirectory()) {
+			long size = 0;
+			File[] files = file_.listFiles();
+			if (files != null) {
+				for (File file : files) {
+					size += size(file);
+				}
+			}
+			return size;
+		}
+		return file_.length();
+	}
+	
+	private Map<String, Entry> load(File directory_) {
+		Map<String, Entry> entries = new HashMap<String, Entry>();
+		File index = new File(directory_, INDEX_FILENAME);
+		if (index.exists()) {
+			try (BufferedReader reader = Files.newBufferedReader(index.toPath(), StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String[] values = line.split(SEPARATOR, -1);
+					if (values.length == 4) {
+						try {
+							entries.put(values[3], new Entry(values[3], Long.parseLong(values[0]), Long.parseLong(values[1]), Integer.parseInt(values[2])));
+						}
+						catch (NumberFormatException e) {
+							// broken line, the entry is scanned again
+						}
+					}
+				}
+			}
+			catch (IOException e) {
+				entries.clear();
+			}
+		}
+		this.scan(directory_, entries);
+		return entries;
+	}
+	
+	private void save(File directory_, Map<String, Entry> entries_) {
+		File index = new File(directory_, INDEX_FILENAME);
+		File temp = new File(index.getAbsolutePath() + ".partial");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+				for (Entry entry : entries_.values()) {
+					writer.write(entry.size + SEPARATOR + entry.lastAccess + SEPARATOR + entry.hits + SEPARATOR + entry.name);
+					writer.newLine();
+				}
+			}
+			Files.move(temp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			// the entries are scanned again next time, only the access history is lost
+			temp.delete();
+		}
+	}
+	
+	/**
+	 * Space reserved on a disk
+	 */
+	public class Reservation {
+		private final FileStore store; // null if unknown, nothing is reserved then
+		private long size; // in bytes, 0 once released
+		
+		Reservation(FileStore store_, long size_) {
+			this.store = store_;
+			this.size = size_;
+		}
+		
+		/**
+		 * Give the space back, can be called several times
+		 */
+		public void release() {
+			synchronized (ArchiveCache.this) {
+				if (this.store != null && this.size > 0) {
+					long left = reserved.getOrDefault(this.store, 0L) - this.size;
+					if (left > 0) {
+						reserved.put(this.store, left);
+					}
+					else {
+						reserved.remove(this.store);
+					}
+				}
+				this.size = 0;
+			}
+		}
+	}
+	
+	private static class Entry {
+		private final String name;
+		private final long size; // in bytes
+		private long lastAccess;
+		private int hits;
+		
+		Entry(String name_, long size_, long lastAccess_, int hits_) {
+			this.name = name_;
+			this.size = size_;
+			this.lastAccess = lastAccess_;
+			this.hits = hits_;
+		}
+	}
+	
+	private static class LRUComparator implements Comparator<Entry> {
+		@Override public int compare(Entry a, Entry b) {
+			return Long.compare(a.lastAccess, b.lastAccess);
+		}
+	}
+	
+	/**
+	 * The entries which would cost the least to download again (size of the download times the number of times it has been useful) first
+	 */
+	private static class CostComparator implements Comparator<Entry> {
+		@Override public int compare(Entry a, Entry b) {
+			int ret = Double.compare((double) a.size * (a.hits + 1), (double) b.size * (b.hits + 1));
+			return ret != 0 ? ret : Long.compare(a.lastAccess, b.lastAccess);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+/**
+ * Gui given to tasks running in the background (ie while a frame is being rendered). Status and error messages are only sent to the log, so they don't
+ * overwrite the status of the render in progress, everything else is forwarded to the real user interface.
+ */
+public class BackgroundGui implements Gui {
+	private Gui gui;
+	private Log log;
+	private String prefix;
+	
+	public BackgroundGui(Gui gui_, Log log_, String prefix_) {
+		this.gui = gui_;
+		this.log = log_;
+		this.prefix = prefix_;
+	}
+	
+	@Override public void start() {
+		this.gui.start();
+	}
+	
+	@Override public void stop() {
+		this.gui.stop();
+	}
+	
+	@Override public void status(String msg_) {
+		this.log.debug(this.prefix + " " + msg_);
+	}
+	
+	@Override public void status(String msg_, boolean overwriteSuspendedMsg) {
+		this.status(msg_);
+	}
+	
+	@Override public void status(String msg_, int progress) {
+		// progress updates are not worth a log line
+	}
+	
+	@Override public void status(String msg_, int progress, long size) {
+		// progress updates are not worth a log line
+	}
+	
+	@Override public void updateTrayIcon(Integer percentage_) {
+		// the tray icon shows the progress of the render in progress
+	}
+	
+	@Override public void setRenderingProjectName(String name_) {
+		// the project name shown is the one being rendered
+	}
+	
+	@Override public void setRemainingTime(String time_) {
+		// the remaining time shown is the one of the render in progress
+	}
+	
+	@Override public void setRenderingTime(String time_) {
+		// the rendering time shown is the one of the render in progress
+	}
+	
+	@Override public void displayTransferStats(TransferStats downloads, TransferStats uploads) {
+		this.gui.displayTransferStats(downloads, uploads);
+	}
+	
+	@Override public void displayStats(Stats stats) {
+		this.gui.displayStats(stats);
+	}
+	
+	@Override public void displayUploadQueueStats(int queueSize, long queueVolume) {
+		this.gui.displayUploadQueueStats(queueSize, queueVolume);
+	}
+	
+	@Override public void error(String err_) {
+		this.log.error(this.prefix + " " + err_);
+	}
+	
+	@Override public void AddFrameRendered() {
+		this.gui.AddFrameRendered();
+	}
+	
+	@Override public void successfulAuthenticationEvent(String publickey) {
+		this.gui.successfulAuthenticationEvent(publickey);
+	}
+	
+	@Override public void setClient(Client cli) {
+		this.gui.setClient(cli);
+	}
+	
+	@Override public void setComputeMethod(String computeMethod_) {
+		// the compute method shown is the one of the render in progress
+	}
+	
+	@Override public Client getClient() {
+		return this.gui.getClient();
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Limit the speed of the transfers of one direction (downloads or uploads), shared by all the transfers of the client.
+ *
+ * It's a token bucket: the transfers take a token per byte, the bucket is refilled at the allowed speed and holds at most one second of it.
+ * A transfer taking more than what is in the bucket owes it, and waits for the time needed to refill its debt, so the waiting transfers are
+ * served in turn. The allowed speed can depend on the time of the day (for example lower during office hours), outside the time slots the
+ * default speed is used, no limit if there is none.
+ */
+public class BandwidthLimiter {
+	private static final long NO_LIMIT = -1;
+	private static final long PROFILE_CHECK_INTERVAL = 1000; // in ms, the speed allowed now is not looked up for each chunk of data
+	private static final long MEASURE_INTERVAL = 1000; // in ms
+	
+	private List<TimeSlot> slots;
+	private long defaultRate; // in bytes per second, NO_LIMIT if there is no limit
+	
+	private long rate; // allowed now
+	private long lastProfileCheck; // in ms
+	private double tokens; // in bytes, negative when owed
+	private long lastRefill; // in ns
+	
+	private long measuredBytes;
+	private long measureStart; // in ms
+	private long currentSpeed; // in bytes per second, over the last measure interval
+	
+	public BandwidthLimiter() {
+		this.slots = new ArrayList<TimeSlot>();
+		this.defaultRate = NO_LIMIT;
+		this.rate = NO_LIMIT;
+		this.lastProfileCheck = 0;
+		this.tokens = 0;
+		this.lastRefill = System.nanoTime();
+		this.measuredBytes = 0;
+		this.measureStart = System.currentTimeMillis();
+		this.currentSpeed = 0;
+	}
+	
+	/**
+	 * Limit the speed between start_ and end_ (only the hour and minute are used, the slot can go over midnight)
+	 *
+	 * @param rate_ in bytes per second
+	 */
+	public synchronized void addTimeSlot(Calendar start_, Calendar end_, long rate_) {
+		this.slots.add(new TimeSlot(minuteOfDay(start_), minuteOfDay(end_), rate_));
+		this.lastProfileCheck = 0;
+	}
+	
+	/**
+	 * @param rate_ in bytes per second, used outside of the time slots
+	 */
+	public synchronized void setDefaultRate(long rate_) {
+		this.defaultRate = rate_;
+		this.lastProfileCheck = 0;
+	}
+	
+	/**
+	 * @return true if the speed is limited, at least at some time of the day
+	 */
+	public synchronized boolean isLimited() {
+		return this.defaultRate != NO_LIMIT || this.slots.isEmpty() == false;
+	}
+	
+	/**
+	 * @return the speed allowed now, in bytes per second, -1 if there is no limit
+	 */
+	public synchronized long getCurrentLimit() {
+		this.checkProfile(System.currentTimeMillis());
+		return this.rate;
+	}
+	
+	/**
+	 * @return the recent speed of the transfers (over the last second at least), in bytes per second
+	 */
+	public synchronized long getCurrentSpeed() {
+		this.measure(System.currentTimeMillis(), 0);
+		return this.currentSpeed;
+	}
+	
+	/**
+	 * Take bytes_ from the bucket, the caller has to wait if it's over the allowed speed. To be called for each chunk of data transferred.
+	 */
+	public void acquire(long bytes_) throws InterruptedIOException {
+		long wait; // in ns
+		synchronized (this) {
+			long now = System.nanoTime();
+			long time = System.currentTimeMillis();
+			this.measure(time, bytes_);
+			this.checkProfile(time);
+			
+			if (this.rate == NO_LIMIT) {
+				this.tokens = 0;
+				this.lastRefill = now;
+				return;
+			}
+			
+			this.tokens = Math.min(this.rate, this.tokens + (now - this.lastRefill) / 1e9 * this.rate);
+			this.lastRefill = now;
+			this.tokens -= bytes_;
+			wait = this.tokens >= 0 ? 0 : (long) (-this.tokens / this.rate * 1e9);
+		}
+		
+		if (wait > 0) {
+			try {
+				Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+			catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			}
+		}
+	}
+	
+	private void checkProfile(long now_) {
+		if (now_ - this.lastProfileCheck < PROFILE_CHECK_INTERVAL) {
+			return;
+		}
+		this.lastProfileCheck = now_;
+		
+		int minute = minuteOfDay(Calendar.getInstance());
+		long rate = this.defaultRate;
+		for (TimeSlot slot : this.slots) {
+			if (slot.contains(minute)) {
+				rate = slot.rate;
+				break;
+			}
+		}
+		if (rate != this.rate && this.rate != NO_LIMIT) {
+			this.tokens = Math.min(this.tokens, rate); // the burst allowed by the previous speed would go over the new one
+		}
+		this.rate = rate;
+	}
+	
+	private void measure(long now_, long bytes_) {
+		long elapsed = now_ - this.measureStart;
+		if (elapsed >= MEASURE_INTERVAL) {
+			this.currentSpeed = this.measuredBytes * 1000 / elapsed;
+			this.measuredBytes = 0;
+			this.measureStart = now_;
+		}
+		this.measuredBytes += bytes_;
+	}
+	
+	private static int minuteOfDay(Calendar time_) {
+		return time_.get(Calendar.HOUR_OF_DAY) * 60 + time_.get(Calendar.MINUTE);
+	}
+	
+	private static class TimeSlot {
+		private final int start; // in minutes since midnight
+		private final int end; // excluded
+		private final long rate; // in bytes per second
+		
+		TimeSlot(int start_, int end_, long rate_) {
+			this.start = start_;
+			this.end = end_;
+			this.rate = rate_;
+		}
+		
+		boolean contains(int minute_) {
+			if (this.start <= this.end) {
+				return this.start <= minute_ && minute_ < this.end;
+			}
+			return minute_ >= this.start || minute_ < this.end; // over midnight
+		}
+	}
+}
@@ -24,22 +24,27 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
-import java.util.Random;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
+import com.sheepit.client.Configuration.ComputeType;
 import com.sheepit.client.Error.ServerCode;
 import com.sheepit.client.Error.Type;
 import com.sheepit.client.exception.FermeException;
@@ -55,7 +60,6 @@ import com.sheepit.client.exception.FermeServerDown;
 import com.sheepit.client.hardware.cpu.CPU;
 import com.sheepit.client.os.OS;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 
 @Data public class Client {
@@ -63,18 +67,31 @@ import lombok.Data;
 	private Server server;
 	private Configuration configuration;
 	private Log log;
-	private Job renderingJob;
+	private List<RenderSlot> slots;
+	private int slotsExitValue;
+	private final Object rendererLock = new Object(); // the renderers are shared between the slots
 	private Job previousJob;
-	private BlockingQueue<QueuedJob> jobsToValidate;
-	private boolean isValidatingJob;
+	private DelayQueue<QueuedJob> jobsToValidate;
+	private UploadScheduler uploadScheduler;
+	private UploadJournal uploadJournal;
+	private SceneCache sceneCache;
+	private Set<String> streamedDirectories; // extracted during their download, not yet used by prepareRenderer/prepareScene
+	private List<String> prefetchedArchives; // md5 of the archives of the jobs being prefetched, not in their slot yet
+	private Map<String, Long> outputSizes; // size of the last frame rendered, by md5 of the scene
 	private long startTime;
 	
-	private boolean disableErrorSending;
+	private ErrorReporter errorReporter;
+	private JobRequestPolicy jobRequestPolicy;
 	private boolean running;
 	private boolean suspended;
 	private boolean shuttingdown;
 	
 	private int maxDownloadFileAttempts = 5;
+	private static final int MAX_UPLOAD_ATTEMPTS = 2; // also used by the synchronous upload (confirmJob)
+	private static final int UPLOAD_RETRY_DELAY = 32; // in seconds
+	private static final long DOWNLOAD_LOCK_TIMEOUT = 30 * 60 * 1000; // in ms, max time to wait for another client downloading an archive
+	private static final long DEFAULT_OUTPUT_SIZE = 32 * 1024 * 1024; // in bytes, room made for a frame of a project not rendered yet
+	private static final int NO_SPACE_RETRY_DELAY = 10 * 60 * 1000; // in ms
 	
 	private int uploadQueueSize;
 	private long uploadQueueVolume;
@@ -85,12 +102,19 @@ import lombok.Data;
 		this.server = new Server(url_, this.configuration, this);
 		this.log = Log.getInstance(this.configuration);
 		this.gui = gui_;
-		this.renderingJob = null;
+		this.slots = new ArrayList<RenderSlot>();
+		this.slotsExitValue = 0;
 		this.previousJob = null;
-		this.jobsToValidate = new ArrayBlockingQueue<QueuedJob>(5);
-		this.isValidatingJob = false;
+		this.jobsToValidate = new DelayQueue<QueuedJob>();
+		this.uploadScheduler = new UploadScheduler();
+		this.uploadJournal = new UploadJournal(this.configuration.getUploadQueueDir(), this.log);
+		this.sceneCache = null; // sized once the working directory is cleaned
+		this.streamedDirectories = Collections.synchronizedSet(new HashSet<String>());
+		this.prefetchedArchives = Collections.synchronizedList(new ArrayList<String>());
+		this.outputSizes = new ConcurrentHashMap<String, Long>();
 		
-		this.disableErrorSending = false;
+		this.errorReporter = new ErrorReporter(this.configuration, this.server, this.log, this.gui);
+		this.jobRequestPolicy = new JobRequestPolicy();
 		this.running = false;
 		this.suspended = false;
 		this.shuttingdown = false;
@@ -104,6 +128,19 @@ import lombok.Data;
 		return String.format("Client (configuration %s, server %s)", this.configuration, this.server);
 	}
 	
+	/**
+	 * @return the job of the first slot currently rendering, or null if none is
+	 */
+	public Job getRenderingJob() {
+		for (RenderSlot slot : this.slots) {
+			Job job = slot.getRenderingJob();
+			if (job != null) {
+				return job;
+			}
+		}
+		return null;
+	}
+	
 	public int run() {
 		if (this.configuration.checkOSisSupported() == false) {
 			this.gui.error(Error.humanString(Error.Type.OS_NOT_SUPPORTED));
@@ -123,6 +160,33 @@ import lombok.Data;
 			this.gui.status("Starting");
 			
 			this.configuration.cleanWorkingDirectory();
+			long scene_cache_size = this.configuration.getSceneCacheSize();
+			if (scene_cache_size < 0) { // not set, use up to a quarter of the free space
+				scene_cache_size = this.configuration.getWorkingDirectory().getUsableSpace() / 4;
+			}
+			this.sceneCache = new SceneCache(this.log, scene_cache_size);
+			
+			ArchiveCache archive_cache = new ArchiveCache(this.log, this.configuration.getArchiveCacheSize(), this.configuration.getArchiveCachePolicy()) {
+				@Override protected Set<String> getUsedNames() {
+					return usedArchives();
+				}
+				
+				@Override protected void delete(File file_) {
+					RendererStore store = configuration.getRendererStore();
+					if (store.contains(file_)) {
+						store.remove(file_.getName()); // left for a later eviction if it's being installed
+					}
+					else {
+						super.delete(file_);
+					}
+				}
+			};
+			archive_cache.addDirectory(this.configuration.getWorkingDirectory());
+			archive_cache.addDirectory(this.configuration.getStorageDir());
+			archive_cache.addDirectory(this.configuration.getSharedDownloadsDirectory());
+			archive_cache.addDirectory(this.configuration.getRendererStoreDir());
+			archive_cache.trim();
+			this.configuration.setArchiveCache(archive_cache);
 			
 			Error.Type ret;
 			ret = this.server.getConfiguration();
@@ -156,60 +220,156 @@ import lombok.Data;
 			
 			this.startTime = new Date().getTime();
 			this.server.start(); // for staying alive
+			this.errorReporter.start();
 			
-			// create a thread which will send the frame
+			// create the threads which will send the frames, the uploadScheduler decides how many of them are actually uploading
 			Runnable runnable_sender = new Runnable() {
 				public void run() {
 					senderLoop();
 				}
 			};
-			Thread thread_sender = new Thread(runnable_sender);
-			thread_sender.start();
+			for (int i = 0; i < UploadScheduler.MAX_CONCURRENT_UPLOADS; i++) {
+				Thread thread_sender = new Thread(runnable_sender);
+				thread_sender.start();
+			}
+			
+			// the frames rendered before the client was stopped are sent before asking for new jobs
+			List<Job> pending_frames = this.uploadJournal.open(this.configuration, this.gui);
+			if (pending_frames.isEmpty() == false) {
+				this.log.debug("Client::run " + pending_frames.size() + " frame(s) left from the previous run");
+				for (Job job : pending_frames) {
+					this.updateUploadQueue(1, job.getOutputImageSize());
+					this.jobsToValidate.add(new QueuedJob(this.log.newCheckPoint(), job));
+				}
+				
+				this.gui.status("Uploading frames rendered before the restart");
+				while (this.uploadQueueSize > 0 && this.running) {
+					Thread.sleep(1000);
+				}
+			}
+			
+			this.slots = this.createRenderSlots();
 			
+			// the first slot renders on the current thread, every other one has its own
+			List<Thread> slot_threads = new LinkedList<Thread>();
+			for (final RenderSlot slot : this.slots.subList(1, this.slots.size())) {
+				Thread thread_slot = new Thread(new Runnable() {
+					public void run() {
+						int value = renderLoop(slot);
+						if (value != 0) {
+							slotFailed(slot, value);
+						}
+					}
+				});
+				thread_slot.start();
+				slot_threads.add(thread_slot);
+			}
+			
+			int value = this.renderLoop(this.slots.get(0));
+			if (value != 0) {
+				return value;
+			}
+			
+			for (Thread thread_slot : slot_threads) {
+				thread_slot.join();
+			}
+			
+			if (this.slotsExitValue != 0) {
+				return this.slotsExitValue;
+			}
+		}
+		catch (Exception e1) {
+			// no exception should be raised in the actual launcher (applet or standalone)
+			StringWriter sw = new StringWriter();
+			PrintWriter pw = new PrintWriter(sw);
+			e1.printStackTrace(pw);
+			this.log.debug("Client::run exception(D) " + e1 + " stacktrace: " + sw.toString());
+			return -99; // the this.stop will be done after the return of this.run()
+		}
+		
+		if (this.shuttingdown) {
+			// Shutdown the computer using the appropriate command for the host OS
+			this.log.debug("Shutting down the computer in 1 minute");
+			
+			OS.getOS().shutdownComputer(1);
+		}
+		
+		this.gui.stop();
+		return 0;
+	}
+	
+	/**
+	 * Request, render and queue for upload frames on a slot until the client is asked to stop
+	 *
+	 * @return 0 on a normal stop, the exit value of the client when the error is fatal
+	 */
+	private int renderLoop(RenderSlot slot) {
+		int step;
+		Error.Type ret;
+		try {
 			do {
 				while (this.running == true) {
-					this.renderingJob = null;
-
+					slot.setRenderingJob(null);
+					
 					synchronized (this) {
 						if (this.suspended) {
-							this.gui.status("Client paused", true);
+							slot.getGui().status("Client paused", true);
 						}
 						while (this.suspended && !this.shuttingdown) {
 							wait();
 						}
 					}
 					
+					long wait_before_request = this.jobRequestPolicy.getWaitBeforeNextRequest();
+					if (wait_before_request > 0) {
+						slot.getGui().status(String.format("Error on the previous job. Will request a new one at %tR", new Date(new Date().getTime() + wait_before_request)));
+						while (this.jobRequestPolicy.getWaitBeforeNextRequest() > 0 && this.running && !this.shuttingdown) {
+							Thread.sleep(1000);
+						}
+						continue;
+					}
+					
 					step = this.log.newCheckPoint();
 					try {
-						Calendar next_request = this.nextJobRequest();
-						if (next_request != null) {
-							// wait
-							Date now = new Date();
-							this.gui.status(String.format("Waiting until %tR before requesting job", next_request));
-							long wait = next_request.getTimeInMillis() - now.getTime();
-							if (wait < 0) {
-								// it means the client has to wait until the next day
-								wait += 24 * 3600 * 1000;
-							}
-							try {
-								Thread.sleep(wait);
-							}
-							catch (InterruptedException e3) {
-							
-							}
-							catch (IllegalArgumentException e3) {
-								this.log.error("Client::run sleepA failed " + e3);
+						// the next job might already have been requested and prepared while the previous frame was rendering
+						Job prefetched = this.takePrefetchedJob(slot);
+						if (prefetched != null) {
+							// its download and preparation have been logged in its own checkpoint, the render goes on in it
+							this.log.removeCheckPoint(step);
+							step = prefetched.getLogCheckPoint();
+							slot.setRenderingJob(prefetched);
+						}
+						else {
+							Calendar next_request = this.nextJobRequest();
+							if (next_request != null) {
+								// wait
+								Date now = new Date();
+								slot.getGui().status(String.format("Waiting until %tR before requesting job", next_request));
+								long wait = next_request.getTimeInMillis() - now.getTime();
+								if (wait < 0) {
+									// it means the client has to wait until the next day
+									wait += 24 * 3600 * 1000;
+								}
+								try {
+									Thread.sleep(wait);
+								}
+								catch (InterruptedException e3) {
+								
+								}
+								catch (IllegalArgumentException e3) {
+									this.log.error("Client::run sleepA failed " + e3);
+								}
 							}
+							slot.getGui().status("Requesting Job");
+							slot.setRenderingJob(this.server.requestJob(slot));
 						}
-						this.gui.status("Requesting Job");
-						this.renderingJob = this.server.requestJob();
 					}
 					catch (FermeExceptionNoRightToRender e) {
-						this.gui.error("User does not have enough right to render scene");
+						slot.getGui().error("User does not have enough right to render scene");
 						return -2;
 					}
 					catch (FermeExceptionSessionDisabled e) {
-						this.gui.error(Error.humanString(Error.Type.SESSION_DISABLED));
+						slot.getGui().error(Error.humanString(Error.Type.SESSION_DISABLED));
 						// should wait forever to actually display the message to the user
 						while (true && !shuttingdown) {
 							try {
@@ -220,7 +380,7 @@ import lombok.Data;
 						}
 					}
 					catch (FermeExceptionNoRendererAvailable e) {
-						this.gui.error(Error.humanString(Error.Type.RENDERER_NOT_AVAILABLE));
+						slot.getGui().error(Error.humanString(Error.Type.RENDERER_NOT_AVAILABLE));
 						// should wait forever to actually display the message to the user
 						while (true && !shuttingdown) {
 							try {
@@ -234,7 +394,7 @@ import lombok.Data;
 						this.log.debug("User has no session and needs to re-authenticate");
 						ret = this.server.getConfiguration();
 						if (ret != Error.Type.OK) {
-							this.renderingJob = null;
+							slot.setRenderingJob(null);
 						}
 						else {
 							this.startTime = new Date().getTime(); // reset start session time because the server did it
@@ -243,7 +403,7 @@ import lombok.Data;
 								if (next_request != null) {
 									// wait
 									Date now = new Date();
-									this.gui.status(String.format("Waiting until %tR before requesting job", next_request));
+									slot.getGui().status(String.format("Waiting until %tR before requesting job", next_request));
 									long timeToSleep = next_request.getTimeInMillis() - now.getTime();
 									try {
 										int timeSlept = 0;
@@ -259,24 +419,24 @@ import lombok.Data;
 										this.log.error("Client::run sleepB failed " + e3);
 									}
 								}
-
+								
 								// if we have broken the wait loop because a stop or shutdown signal, go back to the main loop to exit
 								if (!this.running || this.shuttingdown) {
 									continue;
 								}
-
-								this.gui.status("Requesting Job");
-								this.renderingJob = this.server.requestJob();
+								
+								slot.getGui().status("Requesting Job");
+								slot.setRenderingJob(this.server.requestJob(slot));
 							}
 							catch (FermeException e1) {
-								this.renderingJob = null;
+								slot.setRenderingJob(null);
 							}
 						}
 					}
 					catch (FermeServerDown e) {
 						int wait = ThreadLocalRandom.current().nextInt(10, 30 + 1); // max is exclusive
 						int time_sleep = 1000 * 60 * wait;
-						this.gui.status(String.format("Cannot connect to the server. Please check your connectivity. Will try again at %tR",
+						slot.getGui().status(String.format("Cannot connect to the server. Please check your connectivity. Will try again at %tR",
 								new Date(new Date().getTime() + time_sleep)));
 						try {
 							int timeSlept = 0;
@@ -294,7 +454,7 @@ import lombok.Data;
 					catch (FermeExceptionServerOverloaded e) {
 						int wait = ThreadLocalRandom.current().nextInt(10, 30 + 1); // max is exclusive
 						int time_sleep = 1000 * 60 * wait;
-						this.gui.status(String.format("The server is overloaded and cannot allocate a job. Will try again at %tR",
+						slot.getGui().status(String.format("The server is overloaded and cannot allocate a job. Will try again at %tR",
 								new Date(new Date().getTime() + time_sleep)));
 						try {
 							int timeSlept = 0;
@@ -312,7 +472,7 @@ import lombok.Data;
 					catch (FermeExceptionServerInMaintenance e) {
 						int wait = ThreadLocalRandom.current().nextInt(20, 30 + 1); // max is exclusive
 						int time_sleep = 1000 * 60 * wait;
-						this.gui.status(String.format("The server is under maintenance and cannot allocate a job. Will try again at %tR",
+						slot.getGui().status(String.format("The server is under maintenance and cannot allocate a job. Will try again at %tR",
 								new Date(new Date().getTime() + time_sleep)));
 						try {
 							int timeSlept = 0;
@@ -330,7 +490,7 @@ import lombok.Data;
 					catch (FermeExceptionBadResponseFromServer e) {
 						int wait = ThreadLocalRandom.current().nextInt(15, 30 + 1); // max is exclusive
 						int time_sleep = 1000 * 60 * wait;
-						this.gui.status(String.format("Bad answer from the server. Will try again at %tR", new Date(new Date().getTime() + time_sleep)));
+						slot.getGui().status(String.format("Bad answer from the server. Will try again at %tR", new Date(new Date().getTime() + time_sleep)));
 						try {
 							int timeSlept = 0;
 							while (timeSlept < time_sleep && this.running && !this.shuttingdown) {
@@ -345,7 +505,7 @@ import lombok.Data;
 						continue; // go back to ask job
 					}
 					catch (FermeException e) {
-						this.gui.error("Client::run exception requestJob (1) " + e.getMessage());
+						slot.getGui().error("Client::run exception requestJob (1) " + e.getMessage());
 						StringWriter sw = new StringWriter();
 						PrintWriter pw = new PrintWriter(sw);
 						e.printStackTrace(pw);
@@ -355,13 +515,16 @@ import lombok.Data;
 						continue;
 					}
 					
-					if (this.renderingJob == null) { // no job
+					if (slot.getRenderingJob() == null) { // no job
 						int[] retrySchemeInSeconds = { 300000, 480000, 720000, 900000, 1200000 };    // 5, 8, 12, 15 and 20 minutes
 						
-						int time_sleep = retrySchemeInSeconds[(this.noJobRetryIter < retrySchemeInSeconds.length) ?
-								this.noJobRetryIter++ :
-								(retrySchemeInSeconds.length - 1)];
-						this.gui.status(String.format("No job available. Will try again at %tR", new Date(new Date().getTime() + time_sleep)));
+						int time_sleep;
+						synchronized (this) { // shared by the slots, a slot without a job makes the others wait longer too
+							time_sleep = retrySchemeInSeconds[(this.noJobRetryIter < retrySchemeInSeconds.length) ?
+									this.noJobRetryIter++ :
+									(retrySchemeInSeconds.length - 1)];
+						}
+						slot.getGui().status(String.format("No job available. Will try again at %tR", new Date(new Date().getTime() + time_sleep)));
 						int time_slept = 0;
 						while (time_slept < time_sleep && this.running == true && !this.shuttingdown) {
 							try {
@@ -376,25 +539,41 @@ import lombok.Data;
 						continue; // go back to ask job
 					}
 					
-					this.log.debug("Got work to do id: " + this.renderingJob.getId() + " frame: " + this.renderingJob.getFrameNumber());
+					slot.getRenderingJob().setLogCheckPoint(step);
+					this.log.debug(step, "Got work to do id: " + slot.getRenderingJob().getId() + " frame: " + slot.getRenderingJob().getFrameNumber());
 					
 					// As the server allocated a new job to this client, reset the no_job waiting algorithm
-					this.noJobRetryIter = 0;
+					synchronized (this) {
+						this.noJobRetryIter = 0;
+					}
 					
-					ret = this.work(this.renderingJob);
+					ret = this.work(slot.getRenderingJob());
 					if (ret == Error.Type.NO_SPACE_LEFT_ON_DEVICE) {
-						Job frame_to_reset = this.renderingJob; // copy it because the sendError will take ~5min to execute
-						this.renderingJob = null;
-						this.gui.error(Error.humanString(ret));
+						// the job is given back and the client waits for some room, the cache can be trimmed or the disk freed in the meantime
+						Job frame_to_reset = slot.getRenderingJob(); // copy it because the slot is reset before the error is reported
+						slot.setRenderingJob(null);
+						slot.getGui().error(Error.humanString(ret));
 						this.sendError(step, frame_to_reset, ret);
+						this.configuration.getArchiveCache().trim();
+						slot.getGui().status(String.format("Not enough disk space. Will try again at %tR", new Date(new Date().getTime() + NO_SPACE_RETRY_DELAY)));
+						int time_slept = 0;
+						while (time_slept < NO_SPACE_RETRY_DELAY && this.running == true && !this.shuttingdown) {
+							try {
+								Thread.sleep(250);
+							}
+							catch (InterruptedException e) {
+								return -3;
+							}
+							time_slept += 250;
+						}
 						this.log.removeCheckPoint(step);
-						return -50;
+						continue; // go back to ask job
 					}
 					
 					if (ret != Error.Type.OK) {
-						Job currentJob = this.renderingJob; // copy it because the sendError will take ~5min to execute
-						this.renderingJob = null;
-						this.gui.error(Error.humanString(ret));
+						Job currentJob = slot.getRenderingJob(); // copy it because the slot is reset before the error is reported
+						slot.setRenderingJob(null);
+						slot.getGui().error(Error.humanString(ret));
 						this.sendError(step, currentJob, ret);
 						this.log.removeCheckPoint(step);
 						
@@ -402,7 +581,7 @@ import lombok.Data;
 						// halt the execution
 						if (Integer.parseInt(currentJob.getId()) < 20) {
 							// Add the proper explanation to the existing error message and keep the client waiting forever to ensure the user sees the error
-							this.gui.error(Error.humanString(ret) + " The error happened during the test frame render. Restart the client and try again.");
+							slot.getGui().error(Error.humanString(ret) + " The error happened during the test frame render. Restart the client and try again.");
 							while (true && !shuttingdown) {
 								try {
 									Thread.sleep(1000);
@@ -416,29 +595,30 @@ import lombok.Data;
 						continue;
 					}
 					
-					if (this.renderingJob.isSynchronousUpload() == true) { // power or compute_method job, need to upload right away
-						this.gui.status(String.format("Uploading frame (%.2fMB)", (this.renderingJob.getOutputImageSize() / 1024.0 / 1024.0)));
+					this.jobRequestPolicy.frameRendered();
+					
+					if (slot.getRenderingJob().isSynchronousUpload() == true) { // power or compute_method job, need to upload right away
+						slot.getGui().status(String.format("Uploading frame (%.2fMB)", (slot.getRenderingJob().getOutputImageSize() / 1024.0 / 1024.0)));
 						
-						ret = confirmJob(this.renderingJob, step);
+						ret = confirmJob(slot.getRenderingJob(), step);
 						if (ret != Error.Type.OK) {
-							gui.error("Client::run problem with confirmJob (returned " + ret + ")");
-							sendError(step, this.renderingJob, Error.Type.VALIDATION_FAILED);
+							slot.getGui().error("Client::run problem with confirmJob (returned " + ret + ")");
+							sendError(step, slot.getRenderingJob(), Error.Type.VALIDATION_FAILED);
 						}
 					}
 					else {
-						this.gui.status(String.format("Queuing frame for upload (%.2fMB)", (this.renderingJob.getOutputImageSize() / 1024.0 / 1024.0)));
+						slot.getGui().status(String.format("Queuing frame for upload (%.2fMB)", (slot.getRenderingJob().getOutputImageSize() / 1024.0 / 1024.0)));
 						
-						this.jobsToValidate.add(new QueuedJob(step, this.renderingJob));
+						this.uploadScheduler.renderFinished(slot.getRenderingJob().getProcessRender().getDuration() * 1000L);
+						this.updateUploadQueue(1, slot.getRenderingJob().getOutputImageSize());
+						this.uploadJournal.add(slot.getRenderingJob());
+						this.jobsToValidate.add(new QueuedJob(step, slot.getRenderingJob()));
 						
-						this.uploadQueueSize++;
-						this.uploadQueueVolume += this.renderingJob.getOutputImageSize();
-						this.gui.displayUploadQueueStats(uploadQueueSize, uploadQueueVolume);
-						
-						this.renderingJob = null;
+						slot.setRenderingJob(null);
 					}
 					
 					if (this.shouldWaitBeforeRender() == true) {
-						this.gui.status("Sending frames. Please wait");
+						slot.getGui().status("Sending frames. Please wait");
 						
 						while (this.shouldWaitBeforeRender() == true) {
 							try {
@@ -457,7 +637,7 @@ import lombok.Data;
 				// control again
 				try {
 					Thread.sleep(2300); // wait a little bit
-					this.gui.status("Uploading rendered frames before exiting. Please wait");
+					slot.getGui().status("Uploading rendered frames before exiting. Please wait");
 				}
 				catch (InterruptedException e3) {
 				}
@@ -472,36 +652,90 @@ import lombok.Data;
 			StringWriter sw = new StringWriter();
 			PrintWriter pw = new PrintWriter(sw);
 			e1.printStackTrace(pw);
-			this.log.debug("Client::run exception(D) " + e1 + " stacktrace: " + sw.toString());
-			return -99; // the this.stop will be done after the return of this.run()
+			this.log.debug("Client::renderLoop exception(D) " + e1 + " stacktrace: " + sw.toString());
+			return -99;
 		}
 		
-		if (this.shuttingdown) {
-			// Shutdown the computer using the appropriate command for the host OS
-			this.log.debug("Shutting down the computer in 1 minute");
-			
-			OS.getOS().shutdownComputer(1);
+		return 0;
+	}
+	
+	/**
+	 * A slot has hit an error the client can not recover from, stop all the slots once their current frame is done
+	 */
+	private synchronized void slotFailed(RenderSlot slot, int value) {
+		this.log.error("Client::slotFailed slot " + slot.getId() + " stopped with value " + value + ", stopping the client");
+		if (this.slotsExitValue == 0) {
+			this.slotsExitValue = value;
+		}
+		this.running = false;
+	}
+	
+	/**
+	 * Split the cores and memory of the host between the render slots. With a single slot, it uses the whole configuration as before.
+	 */
+	private List<RenderSlot> createRenderSlots() {
+		List<RenderSlot> slots_ = new ArrayList<RenderSlot>();
+		int nb_slots = Math.max(1, this.configuration.getRenderSlots());
+		
+		if (nb_slots == 1) {
+			slots_.add(new RenderSlot(0, 1, this.configuration.getNbCores(), this.configuration.getMaxMemory(), this.configuration.getComputeMethod(),
+					this.configuration.getWorkingDirectory(), this.gui));
+			return slots_;
 		}
 		
-		this.gui.stop();
-		return 0;
+		int cores = this.configuration.getNbCores() > 0 ? this.configuration.getNbCores() : OS.getOS().getCPU().cores();
+		for (int i = 0; i < nb_slots; i++) {
+			// the remaining cores go to the first slots
+			int slot_cores = Math.max(1, cores / nb_slots + (i < cores % nb_slots ? 1 : 0));
+			long slot_memory = this.configuration.getMaxMemory() > 0 ? this.configuration.getMaxMemory() / nb_slots : -1;
+			
+			// only the first slot can use the GPU, the others render on the CPU
+			ComputeType compute_method = (i == 0) ? this.configuration.getComputeMethod() : ComputeType.CPU;
+			
+			File slot_directory = new File(this.configuration.getWorkingDirectory(), "slot_" + i);
+			slot_directory.mkdirs();
+			
+			Gui slot_gui = (i == 0) ? this.gui : new BackgroundGui(this.gui, this.log, "Slot " + i + ":");
+			
+			RenderSlot slot = new RenderSlot(i, nb_slots, slot_cores, slot_memory, compute_method, slot_directory, slot_gui);
+			this.log.debug("Client::createRenderSlots " + slot);
+			slots_.add(slot);
+		}
+		return slots_;
 	}
 	
 	public synchronized int stop() {
 		this.running = false;
-		this.disableErrorSending = true;
+		this.errorReporter.disable();
 		
-		if (this.renderingJob != null) {
-			this.gui.status("Stopping");
-			
-			if (this.renderingJob.getProcessRender().getProcess() != null) {
-				this.renderingJob.setAskForRendererKill(true);
-				OS.getOS().kill(this.renderingJob.getProcessRender().getProcess());
+		List<RenderSlot> prefetched = new ArrayList<RenderSlot>();
+		for (RenderSlot slot : this.slots) {
+			Job job = slot.getRenderingJob();
+			if (job != null) {
+				this.gui.status("Stopping");
+				
+				if (job.getProcessRender().getProcess() != null) {
+					job.setAskForRendererKill(true);
+					OS.getOS().kill(job.getProcessRender().getProcess());
+				}
+			}
+			if (slot.getPrefetchedJob() != null) {
+				prefetched.add(slot);
+			}
+		}
+		
+		if (this.server != null && prefetched.isEmpty() == false) {
+			this.gui.status("Giving back the prefetched jobs");
+			for (RenderSlot slot : prefetched) {
+				this.giveBackPrefetchedJob(slot.getPrefetchedJob(), slot.isPrefetchedSceneAcquired());
+				slot.setPrefetchedJob(null);
+				slot.setPrefetchedSceneAcquired(false);
 			}
 		}
 		
 		// 		this.configuration.workingDirectory.delete();
 		this.configuration.removeWorkingDirectory();
+		this.uploadJournal.close();
 		
 		if (this.server == null) {
 			return 0;
@@ -536,7 +770,7 @@ import lombok.Data;
 	
 	public synchronized void resume() {
 		suspended = false;
-		notify();
+		notifyAll(); // every slot waits for it
 	}
 	
 	public void askForStop() {
@@ -550,132 +784,81 @@ import lombok.Data;
 	}
 	
 	public int senderLoop() {
-		int step = -1;
-		Error.Type ret = null;
 		while (true) {
-			QueuedJob queuedJob = null;
+			QueuedJob queuedJob;
 			try {
-				queuedJob = jobsToValidate.take();
-				step = queuedJob.checkpoint;	// retrieve the checkpoint attached to the job
-				
-				this.log.debug(step, "will validate " + queuedJob.job);
-				
-				ret = confirmJob(queuedJob.job, step);
-				if (ret != Error.Type.OK) {
-					this.gui.error(Error.humanString(ret));
-					this.log.debug(step, "Client::senderLoop confirm failed, ret: " + ret);
-				}
+				// the frame is taken once it can be uploaded, until then it's still available to the other senders
+				this.uploadScheduler.acquire();
 			}
 			catch (InterruptedException e) {
-				this.log.error(step, "Client::senderLoop Exception " + e.getMessage());
+				this.log.error("Client::senderLoop Exception " + e.getMessage());
+				return -1;
 			}
-			finally {
-				if (ret != Error.Type.OK) {
-					if (queuedJob.job != null) {
-						sendError(step, queuedJob.job, ret);
-					}
-					else {
-						sendError(step);
-					}
-				}
-				
-				// Remove the checkpoint information
-				log.removeCheckPoint(step);
-				
-				this.uploadQueueSize--;
-				if (queuedJob.job != null) {
-					this.uploadQueueVolume -= queuedJob.job.getOutputImageSize();
-				}
-				
-				this.gui.displayUploadQueueStats(this.uploadQueueSize, this.uploadQueueVolume);
+			try {
+				queuedJob = this.jobsToValidate.take(); // only returns the frames whose retry delay is over
+			}
+			catch (InterruptedException e) {
+				this.uploadScheduler.cancel();
+				this.log.error("Client::senderLoop Exception " + e.getMessage());
+				return -1;
 			}
-		}
-	}
-	
-	protected void sendError(int step_) {
-		this.sendError(step_, null, null);
-	}
-	
-	protected void sendError(int step_, Job job_to_reset_, Error.Type error) {
-		if (this.disableErrorSending) {
-			this.log.debug("Error sending is disabled, do not send log");
-			return;
-		}
-		
-		this.log.debug("Sending error to server (type: " + error + ")");
-		try {
-			File temp_file = File.createTempFile("farm_", ".txt");
-			temp_file.createNewFile();
-			temp_file.deleteOnExit();
-			FileOutputStream writer = new FileOutputStream(temp_file);
 			
-			// Create a header with the information summarised for easier admin error analysis
-			Configuration conf = this.configuration;
-			CPU cpu = OS.getOS().getCPU();
+			int step = queuedJob.checkpoint;    // retrieve the checkpoint attached to the job
+			queuedJob.attempts++;
+			this.log.debug(step, "will validate " + queuedJob.job + " (attempt " + queuedJob.attempts + ", " + this.uploadScheduler + ")");
 			
-			StringBuilder logHeader = new StringBuilder()
-				.append("====================================================================================================\n")
-				.append(String.format("%s  /  %s  /  %s  /  SheepIt v%s\n", conf.getLogin(), conf.getHostname(), OS.getOS().name(), conf.getJarVersion()))
-				.append(String.format("%s  x%d  %.1f GB RAM\n", cpu.name(), conf.getNbCores(), conf.getMaxMemory() / 1024.0 / 1024.0));
+			long start = new Date().getTime();
+			ServerCode code = this.sendFrame(queuedJob.job, step);
+			long duration = new Date().getTime() - start;
+			Error.Type ret = this.validationError(code);
 			
-			if (conf.getComputeMethod() == Configuration.ComputeType.GPU || conf.getComputeMethod() == Configuration.ComputeType.CPU_GPU) {
-				logHeader
-					.append(String.format("%s   %.1f GB VRAM\n", conf.getGPUDevice().getModel(), conf.getGPUDevice().getMemory() / 1024.0 / 1024.0 / 1024.0));
-			}
+			this.uploadScheduler.release(queuedJob.job.getOutputImageSize(), duration, code == ServerCode.OK, this.jobsToValidate.isEmpty() == false);
 			
-			logHeader.append("====================================================================================================\n");
-			if (job_to_reset_ != null) {
-				logHeader.append(String.format("Project ::: %s\n", job_to_reset_.getName())).append(String.format("Project id: %s  frame: %s\n", job_to_reset_.getId(), job_to_reset_.getFrameNumber()))
-						.append(String.format("blender ::: %s\n\n", job_to_reset_.getBlenderLongVersion())).append(String.format("ERROR Type :: %s\n", error));
+			if (ret == null && queuedJob.attempts < MAX_UPLOAD_ATTEMPTS) {
+				// try again later, without blocking the frames queued behind this one
+				this.log.debug(step, "Client::senderLoop upload failed (" + code + "), retry in " + UPLOAD_RETRY_DELAY + "s");
+				queuedJob.retryAt = new Date().getTime() + UPLOAD_RETRY_DELAY * 1000L;
+				this.jobsToValidate.add(queuedJob);
+				continue;
 			}
-			else {
-				logHeader.append("Project ::: No project allocated.\n")
-						.append(String.format("ERROR Type :: %s\n", (error != null ? error : "N/A")));
-			}
-			logHeader.append("====================================================================================================\n\n");
-			
-			// Insert the info at the beginning of the error log
-			writer.write(logHeader.toString().getBytes());
 			
-			ArrayList<String> logs = this.log.getForCheckPoint(step_);
-			for (String line : logs) {
-				writer.write(line.getBytes());
-				writer.write('\n');
+			if (ret == null) {
+				ret = Error.Type.OK; // like the synchronous upload, a frame rejected too many times is not reported
 			}
 			
-			writer.close();
-			String args = "?type=" + (error == null ? "" : error.getValue());
-			if (job_to_reset_ != null) {
-				args += "&frame=" + job_to_reset_.getFrameNumber() + "&job=" + job_to_reset_.getId() + "&render_time=" + job_to_reset_.getProcessRender()
-						.getDuration() + "&memoryused=" + job_to_reset_.getProcessRender().getMemoryUsed();
-				if (job_to_reset_.getExtras() != null && job_to_reset_.getExtras().isEmpty() == false) {
-					args += "&extras=" + job_to_reset_.getExtras();
-				}
-			}
-			this.server.HTTPSendFile(this.server.getPage("error") + args, temp_file.getAbsolutePath(), step_, this.gui);
-			temp_file.delete();
-		}
-		catch (Exception e) {
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			e.printStackTrace(pw);
-			this.log.debug("Client::sendError Exception " + e + " stacktrace: " + sw.toString());
-			// no exception should be raised to actual launcher (applet or standalone)
-		}
-		
-		if (error != null && (error == Error.Type.RENDERER_CRASHED || error == Error.Type.RENDERER_KILLED_BY_USER
-				|| error == Type.RENDERER_KILLED_BY_USER_OVER_TIME || error == Error.Type.RENDERER_KILLED_BY_SERVER)) {
-			// do nothing, we can ask for a job right away
-		}
-		else {
-			try {
-				Thread.sleep(300000); // sleeping for 5min
-			}
-			catch (InterruptedException e) {
+			this.uploadJournal.remove(queuedJob.job);
+			this.frameValidated(queuedJob.job, ret);
+			if (ret != Error.Type.OK) {
+				this.gui.error(Error.humanString(ret));
+				this.log.debug(step, "Client::senderLoop confirm failed, ret: " + ret);
+				this.errorReporter.report(step, queuedJob.job, ret);
 			}
+			
+			// Remove the checkpoint information
+			log.removeCheckPoint(step);
+			
+			this.updateUploadQueue(-1, -queuedJob.job.getOutputImageSize());
 		}
 	}
 	
+	private synchronized void updateUploadQueue(int frames_, long volume_) {
+		this.uploadQueueSize += frames_;
+		this.uploadQueueVolume += volume_;
+		this.gui.displayUploadQueueStats(this.uploadQueueSize, this.uploadQueueVolume);
+	}
+	
+	protected void sendError(int step_) {
+		this.sendError(step_, null, null);
+	}
+	
+	/**
+	 * Report the error to the server (in the background) and delay the next job request if needed
+	 */
+	protected void sendError(int step_, Job job_to_reset_, Error.Type error) {
+		this.errorReporter.report(step_, job_to_reset_, error);
+		this.jobRequestPolicy.errorOccurred(error);
+	}
+	
 	/**
 	 * @return the date of the next request, or null if there is not delay (null <=> now)
 	 */
@@ -711,28 +894,22 @@ import lombok.Data;
 	
 	public Error.Type work(final Job ajob) {
 		Error.Type downloadRet;
+		Gui gui = ajob.getGui();
 		
 		gui.setRenderingProjectName(ajob.getName());
 		
 		try {
-			downloadRet = this.downloadExecutable(ajob);
-			if (downloadRet != Error.Type.OK) {
-				gui.setRenderingProjectName("");
-				this.log.error("Client::work problem with downloadExecutable (ret " + downloadRet + ")");
-				return downloadRet;
-			}
-			
-			downloadRet = this.downloadSceneFile(ajob);
+			downloadRet = this.downloadArchives(ajob, gui);
 			if (downloadRet != Error.Type.OK) {
 				gui.setRenderingProjectName("");
-				this.log.error("Client::work problem with downloadSceneFile (ret " + downloadRet + ")");
+				this.log.error(ajob.getLogCheckPoint(), "Client::work problem with downloadArchives (ret " + downloadRet + ")");
 				return downloadRet;
 			}
 			
 			int ret = this.prepareWorkingDirectory(ajob); // decompress renderer and scene archives
 			if (ret != 0) {
 				gui.setRenderingProjectName("");
-				this.log.error("Client::work problem with this.prepareWorkingDirectory (ret " + ret + ")");
+				this.log.error(ajob.getLogCheckPoint(), "Client::work problem with this.prepareWorkingDirectory (ret " + ret + ")");
 				return Error.Type.CAN_NOT_CREATE_DIRECTORY;
 			}
 		}
@@ -740,162 +917,219 @@ import lombok.Data;
 			gui.setRenderingProjectName("");
 			return Error.Type.NO_SPACE_LEFT_ON_DEVICE;
 		}
+		finally {
+			// the job has acquired the scene by itself if it has been prepared, the hold taken while it was prefetched can go
+			boolean prefetchedSceneAcquired;
+			synchronized (this) {
+				prefetchedSceneAcquired = ajob.getSlot().isPrefetchedSceneAcquired();
+				ajob.getSlot().setPrefetchedSceneAcquired(false);
+			}
+			if (prefetchedSceneAcquired) {
+				this.sceneCache.release(ajob);
+			}
+		}
 		
-		final File scene_file = new File(ajob.getScenePath());
+		// other clients sharing the renderer store can't remove the renderer while it's used
+		RendererStore store = this.configuration.getRendererStore();
+		store.acquire(ajob.getRendererMD5());
+		try {
+			return this.renderJob(ajob, gui);
+		}
+		finally {
+			store.release(ajob.getRendererMD5());
+		}
+	}
+	
+	/**
+	 * Render the prepared job
+	 */
+	private Error.Type renderJob(final Job ajob, Gui gui) {
+		File scene_file = new File(ajob.getScenePath());
 		File renderer_file = new File(ajob.getRendererPath());
 		
 		if (scene_file.exists() == false) {
 			gui.setRenderingProjectName("");
-			this.log.error("Client::work job preparation failed (scene file '" + scene_file.getAbsolutePath()
+			this.log.error(ajob.getLogCheckPoint(), "Client::work job preparation failed (scene file '" + scene_file.getAbsolutePath()
 					+ "' does not exist), cleaning directory in hope to recover");
-			this.configuration.cleanWorkingDirectory();
+			this.sceneCache.release(ajob);
+			this.cleanWorkingDirectory(ajob);
 			return Error.Type.MISSING_SCENE;
 		}
 		
 		if (renderer_file.exists() == false) {
 			gui.setRenderingProjectName("");
-			this.log.error("Client::work job preparation failed (renderer file '" + renderer_file.getAbsolutePath()
+			this.log.error(ajob.getLogCheckPoint(), "Client::work job preparation failed (renderer file '" + renderer_file.getAbsolutePath()
 					+ "' does not exist), cleaning directory in hope to recover");
-			this.configuration.cleanWorkingDirectory();
+			this.sceneCache.release(ajob);
+			this.cleanWorkingDirectory(ajob);
 			return Error.Type.MISSING_RENDERER;
 		}
 		
-		Observer removeSceneDirectoryOnceRenderHasStartedObserver = new Observer() {
+		Observer renderStartedObserver = new Observer() {
 			@Override public void update(Observable observable, Object o) {
-				// only remove the .blend since it's most important data
-				// and it's the only file we are sure will not be needed anymore
-				scene_file.delete();
+				// the renderer is now busy on its own, it's a good time to get the next job ready
+				startPrefetch(ajob);
 			}
 		};
 		
-		Error.Type err = ajob.render(removeSceneDirectoryOnceRenderHasStartedObserver);
+		// room is made for the frame before the render, it's better to give the job back now than to fail once it's rendered
+		ArchiveCache.Reservation output = this.configuration.getArchiveCache().reserve(ajob.getSlot().getWorkingDirectory(), this.estimateOutputSize(ajob));
+		if (output == null) {
+			gui.setRenderingProjectName("");
+			this.sceneCache.release(ajob);
+			return Error.Type.NO_SPACE_LEFT_ON_DEVICE;
+		}
+		
+		Error.Type err;
+		try {
+			err = ajob.render(renderStartedObserver);
+		}
+		finally {
+			output.release();
+		}
+		if (err == Error.Type.OK) {
+			this.outputSizes.put(ajob.getSceneMD5(), ajob.getOutputImageSize());
+		}
+		
+		// the scene stays extracted for the next frames of the project, unless the render has modified it
+		this.sceneCache.release(ajob);
+		
 		gui.setRenderingProjectName("");
 		gui.setRemainingTime("");
 		gui.setRenderingTime("");
 		gui.setComputeMethod("");
 		if (err != Error.Type.OK) {
-			this.log.error("Client::work problem with runRenderer (ret " + err + ")");
+			this.log.error(ajob.getLogCheckPoint(), "Client::work problem with runRenderer (ret " + err + ")");
 			if (err == Error.Type.RENDERER_CRASHED_PYTHON_ERROR) {
-				this.log.error("Client::work failed with python error, cleaning directory in hope to recover");
-				this.configuration.cleanWorkingDirectory();
+				this.log.error(ajob.getLogCheckPoint(), "Client::work failed with python error, cleaning directory in hope to recover");
+				this.cleanWorkingDirectory(ajob);
 			}
 			return err;
 		}
 		
-		removeSceneDirectory(ajob);
-		
 		return Error.Type.OK;
 	}
 	
-	protected Error.Type downloadSceneFile(Job ajob_) throws FermeExceptionNoSpaceLeftOnDevice {
+	/**
+	 * Download the renderer and the scene at the same time
+	 */
+	protected Error.Type downloadArchives(final Job ajob_, Gui gui_) throws FermeExceptionNoSpaceLeftOnDevice {
+		List<TransferScheduler.Transfer> transfers = new ArrayList<TransferScheduler.Transfer>();
+		transfers.add(new TransferScheduler.Transfer("renderer") {
+			@Override protected Error.Type run(Gui transferGui_) throws FermeExceptionNoSpaceLeftOnDevice {
+				return downloadExecutable(ajob_, transferGui_);
+			}
+		});
+		transfers.add(new TransferScheduler.Transfer("project") {
+			@Override protected Error.Type run(Gui transferGui_) throws FermeExceptionNoSpaceLeftOnDevice {
+				return downloadSceneFile(ajob_, transferGui_);
+			}
+		});
+		return this.server.getTransferScheduler().run(ajob_, gui_, "Downloading renderer and project", transfers);
+	}
+	
+	/**
+	 * @return the space needed by the frame, twice the size of the previous frame of the project (in case it's more complex) if there is one
+	 */
+	private long estimateOutputSize(Job ajob) {
+		Long previous = this.outputSizes.get(ajob.getSceneMD5());
+		return previous != null ? 2 * previous : DEFAULT_OUTPUT_SIZE;
+	}
+	
+	protected Error.Type downloadSceneFile(Job ajob_, Gui gui_) throws FermeExceptionNoSpaceLeftOnDevice {
 		return this.downloadFile(ajob_, ajob_.getRequiredSceneArchivePath(), ajob_.getSceneMD5(),
-				String.format("%s?type=job&job=%s", this.server.getPage("download-archive"), ajob_.getId()), "project");
+				String.format("%s?type=job&job=%s", this.server.getPage("download-archive"), ajob_.getId()), "project", gui_, ajob_.getSceneDirectory(),
+				ajob_.getPassword());
 	}
 	
-	protected Error.Type downloadExecutable(Job ajob) throws FermeExceptionNoSpaceLeftOnDevice {
+	protected Error.Type downloadExecutable(Job ajob, Gui gui_) throws FermeExceptionNoSpaceLeftOnDevice {
 		return this.downloadFile(ajob, ajob.getRequiredRendererArchivePath(), ajob.getRendererMD5(),
-				String.format("%s?type=binary&job=%s", this.server.getPage("download-archive"), ajob.getId()), "renderer");
+				String.format("%s?type=binary&job=%s", this.server.getPage("download-archive"), ajob.getId()), "renderer", gui_, ajob.getRendererDirectory(),
+				null);
 	}
 	
-	private Error.Type downloadFile(Job ajob, String local_path, String md5_server, String url, String download_type) throws FermeExceptionNoSpaceLeftOnDevice {
+	/**
+	 * Download an archive, it's extracted to extract_directory at the same time (if the directory doesn't exist yet)
+	 */
+	private Error.Type downloadFile(Job ajob, String local_path, String md5_server, String url, String download_type, Gui gui_, String extract_directory,
+			String password) throws FermeExceptionNoSpaceLeftOnDevice {
 		File local_path_file = new File(local_path);
-		String update_ui = "Downloading " + download_type;
+		if (local_path_file.exists()) {
+			gui_.status("Reusing cached " + download_type);
+			this.configuration.getArchiveCache().access(local_path_file);
+			return Type.OK;
+		}
 		
-		int remaining = 1800000; // 30 minutes max timeout
+		// only one slot of one client downloads the archive (the shared downloads directory can be used by several clients), the others wait for it
+		DownloadLock lock;
+		try {
+			lock = DownloadLock.acquire(local_path_file, this.log, DOWNLOAD_LOCK_TIMEOUT, gui_, String.format("Another client is downloading the %s", download_type));
+		}
+		catch (InterruptedException e) {
+			this.log.debug(ajob.getLogCheckPoint(), "Client::downloadFile interrupted while waiting for another client to download " + local_path);
+			return Type.DOWNLOAD_FILE;
+		}
 		
 		try {
-			// If the client is using a shared cache then introduce some random delay to minimise race conditions on the partial file creation on multiple
-			// instances of a client (when started with a script or rendering a recently downloaded scene)
-			if (configuration.getSharedDownloadsDirectory() != null) {
-				Thread.sleep((new Random().nextInt(9) + 1) * 1000);
+			// if the binary or scene has been downloaded by another client
+			if (local_path_file.exists()) {
+				gui_.status("Reusing cached " + download_type);
+				this.configuration.getArchiveCache().access(local_path_file);
+				return Type.OK;
 			}
 			
-			// For a maximum of 30 minutes
-			do {
-				// if the binary or scene already exists in the cache
-				if (local_path_file.exists() == true) {
-					this.gui.status("Reusing cached " + download_type);
-					return Type.OK;
-				}
-				// if the binary or scene is being downloaded by another client
-				else if (new File(local_path + ".partial").exists()) {
-					// Wait and check every second for file download completion but only update the GUI every 10 seconds to minimise CPU load
-					if (remaining % 10000 == 0) {
-						this.gui.status(String.format("Another client is downloading the %s. Cancel in %dmin %ds",
-							download_type,
-							TimeUnit.MILLISECONDS.toMinutes(remaining),
-							TimeUnit.MILLISECONDS.toSeconds(remaining) - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(remaining))
-						));
-					}
-				}
-				else {
-					// The file doesn't yet existing not is being downloaded by another client, so immediately create the file with zero bytes to allow early
-					// detection by other concurrent clients and start downloading process
-					try {
-						File file = new File(local_path + ".partial");
-						file.createNewFile();
-						file.deleteOnExit();    // if the client crashes, the temporary file will be removed
-					} catch (IOException e) {
-						StringWriter sw = new StringWriter();
-						e.printStackTrace(new PrintWriter(sw));
-						this.log.error("Client::DownloadFile Unable to create .partial temp file for binary/scene " + local_path);
-						this.log.error("Client::DownloadFile Exception " + e + " stacktrace " + sw.toString());
-					}
-					
-					break;
-				}
-				
-				// Reduce 1 second the waiting time
-				Thread.sleep(1000);
-				remaining -= 1000;
-			} while (remaining > 0);
-		}
-		catch (InterruptedException e) {
-			log.debug("Error in the thread wait. Exception " + e.getMessage());
+			return this.downloadArchive(ajob, local_path, md5_server, url, download_type, gui_, extract_directory, password);
 		}
 		finally {
-			// If we have reached the timeout (30 minutes trying to download the client) delete the partial downloaded copy and try to download again
-			if (remaining <= 0) {
-				log.debug("ERROR while waiting for download to finish in another client. Deleting the partial file and downloading a fresh copy now!.");
-				new File(local_path + ".partial").delete();
-			}
+			lock.release();
 		}
+	}
+	
+	/**
+	 * Download an archive, a previous download interrupted (.partial) is continued. Must be called with the DownloadLock of the archive.
+	 */
+	private Error.Type downloadArchive(Job ajob, String local_path, String md5_server, String url, String download_type, Gui gui_, String extract_directory,
+			String password) throws FermeExceptionNoSpaceLeftOnDevice {
+		String update_ui = "Downloading " + download_type;
 		
-		this.gui.status(String.format("Downloading %s", download_type), 0, 0);
+		gui_.status(String.format("Downloading %s", download_type), 0, 0);
 		
 		// must download the archive
-		Error.Type ret = this.server.HTTPGetFile(url, local_path, this.gui, update_ui);
+		ZipStreamExtractor extractor = this.newExtractor(extract_directory, password);
+		FileDownload download = this.server.HTTPGetFile(url, local_path, gui_, update_ui, ajob, extractor);
+		Error.Type ret = download.getResult();
 		
 		if (ret == Type.RENDERER_KILLED_BY_SERVER || ret == Type.RENDERER_KILLED_BY_USER_OVER_TIME || ret == Type.RENDERER_KILLED_BY_USER) {
 			return ret;
 		}
 		
-		// Try to check the download file even if a download error has occurred (MD5 file check will delete the file if partially downloaded)
-		boolean md5_check = this.checkFile(ajob, local_path, md5_server);
+		// An incomplete file is kept to continue the download on the next attempt, only a complete one is checked
+		boolean md5_check = ret == Error.Type.OK && this.checkFile(ajob, local_path, download.getMd5(), md5_server);
+		this.commitExtraction(ajob, extractor, extract_directory, md5_check, download_type, gui_);
 		int attempts = 1;
 		
 		while ((ret != Error.Type.OK || md5_check == false) && attempts < this.maxDownloadFileAttempts) {
 			if (ret != Error.Type.OK) {
-				this.gui.error(String.format("Unable to download %s (error %s). Retrying now", download_type, ret));
-				this.log.debug("Client::downloadFile problem with Server.HTTPGetFile (return: " + ret + ") removing local file (path: " + local_path + ")");
+				gui_.error(String.format("Unable to download %s (error %s). Retrying now", download_type, ret));
+				this.log.debug(ajob.getLogCheckPoint(), "Client::downloadFile problem with Server.HTTPGetFile (return: " + ret + ") keeping partial file to resume (path: " + local_path + ")");
 			}
 			else if (md5_check == false) {
-				this.gui.error(String.format("Verification of downloaded %s has failed. Retrying now", download_type));
-				this.log.debug("Client::downloadFile problem with Client::checkFile mismatch on md5, removing local file (path: " + local_path + ")");
+				gui_.error(String.format("Verification of downloaded %s has failed. Retrying now", download_type));
+				this.log.debug(ajob.getLogCheckPoint(), "Client::downloadFile problem with Client::checkFile mismatch on md5, local file removed (path: " + local_path + ")");
 			}
-			local_path_file.delete();
 			
-			this.log.debug("Client::downloadFile failed, let's try again (" + (attempts + 1) + "/" + this.maxDownloadFileAttempts + ") ...");
+			this.log.debug(ajob.getLogCheckPoint(), "Client::downloadFile failed, let's try again (" + (attempts + 1) + "/" + this.maxDownloadFileAttempts + ") ...");
 			
-			ret = this.server.HTTPGetFile(url, local_path, this.gui, update_ui);
+			extractor = this.newExtractor(extract_directory, password);
+			download = this.server.HTTPGetFile(url, local_path, gui_, update_ui, ajob, extractor);
+			ret = download.getResult();
 			
-			md5_check = this.checkFile(ajob, local_path, md5_server);
+			md5_check = ret == Error.Type.OK && this.checkFile(ajob, local_path, download.getMd5(), md5_server);
+			this.commitExtraction(ajob, extractor, extract_directory, md5_check, download_type, gui_);
 			attempts++;
 			
 			if ((ret != Error.Type.OK || md5_check == false) && attempts >= this.maxDownloadFileAttempts) {
-				this.log.debug("Client::downloadFile failed after " + this.maxDownloadFileAttempts + " attempts, removing local file (path: " + local_path
-						+ "), stopping...");
-				local_path_file.delete();
+				this.log.debug(ajob.getLogCheckPoint(), "Client::downloadFile failed after " + this.maxDownloadFileAttempts + " attempts (path: " + local_path + "), stopping...");
 				return Type.DOWNLOAD_FILE;
 			}
 		}
@@ -903,164 +1137,479 @@ import lombok.Data;
 		return Type.OK;
 	}
 	
-	private boolean checkFile(Job ajob, String local_path, String md5_server) {
-		File local_path_file = new File(local_path);
+	/**
+	 * Check the md5 of a downloaded file (local_path.partial, md5_local has been computed during the download) and rename it to local_path if
+	 * it's the expected one, otherwise the file is removed
+	 */
+	private boolean checkFile(Job ajob, String local_path, String md5_local, String md5_server) {
+		File partial_file = new File(local_path + ".partial");
 		
-		if (local_path_file.exists() == false) {
-			this.log.error("Client::checkFile cannot check md5 on a nonexistent file (path: " + local_path + ")");
+		if (partial_file.exists() == false) {
+			this.log.error(ajob.getLogCheckPoint(), "Client::checkFile cannot check md5 on a nonexistent file (path: " + partial_file + ")");
 			return false;
 		}
 		
-		String md5_local = Utils.md5(local_path);
-		
 		if (md5_local.equals(md5_server) == false) {
-			this.log.error(
-					"Client::checkFile mismatch on md5 local: '" + md5_local + "' server: '" + md5_server + "' (local size: " + new File(local_path).length()
-							+ ")");
+			this.log.error(ajob.getLogCheckPoint(),
+					"Client::checkFile mismatch on md5 local: '" + md5_local + "' server: '" + md5_server + "' (local size: " + partial_file.length() + ")");
+			FileDownload.discard(partial_file);
 			return false;
 		}
 		
+		if (partial_file.renameTo(new File(local_path)) == false) {
+			this.log.error(ajob.getLogCheckPoint(), "Client::checkFile failed to rename the downloaded file to its final name (path: " + local_path + ")");
+			FileDownload.discard(partial_file);
+			return false;
+		}
+		this.configuration.addMd5(new File(local_path), md5_local); // no need to read the file again to know its md5
+		this.configuration.getArchiveCache().access(new File(local_path));
+		
 		return true;
 	}
 	
-	protected void removeSceneDirectory(Job ajob) {
-		Utils.delete(new File(ajob.getSceneDirectory()));
+	private ZipStreamExtractor newExtractor(String extract_directory, String password) {
+		if (extract_directory == null || new File(extract_directory).exists()) {
+			return null;
+		}
+		return new ZipStreamExtractor(new File(extract_directory + ".streaming"), password, this.log);
+	}
+	
+	/**
+	 * Move the archive extracted during its download to its final directory, only if the archive is the expected one (md5_check)
+	 */
+	private void commitExtraction(Job ajob, ZipStreamExtractor extractor, String extract_directory, boolean md5_check, String download_type, Gui gui_) {
+		if (extractor == null) {
+			return;
+		}
+		if (md5_check == false) {
+			extractor.discard();
+			return;
+		}
+		
+		gui_.status("Extracting " + download_type);
+		if (extractor.await() == false) {
+			extractor.discard();
+			return;
+		}
+		
+		synchronized (this.rendererLock) { // the renderer directories are shared between the slots
+			File destination = new File(extract_directory);
+			RendererStore store = this.configuration.getRendererStore();
+			if (store.contains(destination)) {
+				if (store.adopt(destination.getName(), extractor.getDirectory(), gui_) == false) {
+					return;
+				}
+			}
+			else if (destination.exists() || extractor.getDirectory().renameTo(destination) == false) {
+				extractor.discard();
+				return;
+			}
+			this.streamedDirectories.add(extract_directory);
+		}
+		this.log.debug(ajob.getLogCheckPoint(), "Client::commitExtraction " + extract_directory + " extracted during the download");
+	}
+	
+	/**
+	 * Clean the working directory in hope to recover from a broken state. When other slots are rendering, only the files of this job are removed.
+	 * The renderer is shared with the other slots (and clients), it's not removed but checked again before its next use.
+	 * The next job of the slot is given back first, its download and extraction use the same directories.
+	 */
+	protected void cleanWorkingDirectory(Job ajob) {
+		this.cancelPrefetch(ajob.getSlot());
+		if (ajob.getSlot().getNbSlots() == 1) {
+			this.configuration.cleanWorkingDirectory();
+		}
+		else {
+			this.configuration.cleanDirectory(ajob.getSlot().getWorkingDirectory());
+		}
+		this.configuration.getRendererStore().invalidate(ajob.getRendererMD5());
 	}
 	
 	protected int prepareWorkingDirectory(Job ajob) throws FermeExceptionNoSpaceLeftOnDevice {
+		int ret = this.prepareRenderer(ajob, ajob.getGui());
+		if (ret != 0) {
+			return ret;
+		}
+		
+		return this.prepareScene(ajob, ajob.getGui());
+	}
+	
+	protected int prepareRenderer(Job ajob, Gui gui_) throws FermeExceptionNoSpaceLeftOnDevice {
 		int ret;
 		String bestRendererArchive = ajob.getRequiredRendererArchivePath();
 		String renderer_archive = ajob.getRendererArchivePath();
 		String renderer_path = ajob.getRendererDirectory();
-		File renderer_path_file = new File(renderer_path);
+		RendererStore store = this.configuration.getRendererStore();
 		
-		if (!new File(renderer_archive).exists()) {
-			this.gui.status("Copying renderer from shared downloads directory");
-			
-			try {
-				Files.copy(Paths.get(bestRendererArchive), Paths.get(renderer_archive), StandardCopyOption.REPLACE_EXISTING);
+		synchronized (this.rendererLock) {
+			if (this.streamedDirectories.remove(renderer_path) || store.isInstalled(ajob.getRendererMD5())) { // extracted during the download or before
+				this.configuration.getArchiveCache().access(new File(renderer_path));
+				return 0;
 			}
-			catch (IOException e) {
-				this.gui.error("Error while copying renderer from shared downloads directory to working dir");
+			
+			if (!new File(renderer_archive).exists()) {
+				gui_.status("Copying renderer from shared downloads directory");
+				
+				try {
+					FileStaging.stage(new File(bestRendererArchive), new File(renderer_archive), this.log);
+				}
+				catch (IOException e) {
+					gui_.error("Error while copying renderer from shared downloads directory to working dir");
+				}
 			}
-		}
-		
-		if (!renderer_path_file.exists()) {
-			// we create the directory
-			renderer_path_file.mkdir();
 			
-			this.gui.status("Extracting renderer");
+			gui_.status("Extracting renderer");
 			
 			// unzip the archive
-			ret = Utils.unzipFileIntoDirectory(renderer_archive, renderer_path, null, log);
+			ret = store.install(ajob.getRendererMD5(), new File(renderer_archive), this.configuration.getArchiveCache(), gui_);
 			if (ret != 0) {
-				this.log.error(
+				this.log.error(ajob.getLogCheckPoint(),
 						"Client::prepareWorkingDirectory, error(1) with Utils.unzipFileIntoDirectory(" + renderer_archive + ", " + renderer_path + ") returned "
 								+ ret);
-				this.gui.error(String.format("Unable to extract the renderer (error %d)", ret));
+				gui_.error(String.format("Unable to extract the renderer (error %d)", ret));
 				return -1;
 			}
-			
-			try {
-				File f = new File(ajob.getRendererPath());
-				f.setExecutable(true);
-			}
-			catch (SecurityException e) {
-			}
 		}
 		
+		return 0;
+	}
+	
+	protected int prepareScene(Job ajob, Gui gui_) throws FermeExceptionNoSpaceLeftOnDevice {
+		int ret;
 		String bestSceneArchive = ajob.getRequiredSceneArchivePath();
 		String scene_archive = ajob.getSceneArchivePath();
 		String scene_path = ajob.getSceneDirectory();
 		File scene_path_file = new File(scene_path);
 		
+		if (this.sceneCache.acquire(ajob)) {
+			gui_.status("Reusing extracted project");
+			return 0;
+		}
+		
+		if (this.streamedDirectories.remove(scene_path) && scene_path_file.exists()) {
+			// extracted during the download, with the md5 of the archive checked
+			this.sceneCache.add(ajob);
+			return 0;
+		}
+		
+		// not extracted by the cache, nothing tells it's complete or unmodified
+		Utils.delete(scene_path_file);
+		
 		if (!new File(scene_archive).exists()) {
-			this.gui.status("Copying scene from common directory");
+			gui_.status("Copying scene from common directory");
 			
 			try {
-				Files.copy(Paths.get(bestSceneArchive), Paths.get(scene_archive), StandardCopyOption.REPLACE_EXISTING);
+				FileStaging.stage(new File(bestSceneArchive), new File(scene_archive), this.log);
 			}
 			catch (IOException e) {
-				this.gui.error("Error while copying scene from common directory to working dir");
+				gui_.error("Error while copying scene from common directory to working dir");
 			}
 		}
 		
-		if (!scene_path_file.exists()) {
-			// we create the directory
-			scene_path_file.mkdir();
+		gui_.status("Extracting project");
+		
+		// unzip the archive
+		ret = this.extractArchive(ajob, scene_archive, scene_path, ajob.getPassword());
+		if (ret != 0) {
+			this.log.error(ajob.getLogCheckPoint(),
+					"Client::prepareWorkingDirectory, error(2) with Utils.unzipFileIntoDirectory(" + scene_archive + ", " + scene_path + ") returned "
+							+ ret);
+			gui_.error(String.format("Unable to extract the scene (error %d)", ret));
+			return -2;
+		}
+		this.sceneCache.add(ajob);
+		
+		return 0;
+	}
+	
+	/**
+	 * Extract the archive into a staging directory which is only renamed to its final name once the extraction is complete. This way a directory
+	 * is either fully extracted or missing, even if the extraction is done in the background or interrupted.
+	 */
+	private int extractArchive(Job ajob, String archive_, String destination_, String password_) throws FermeExceptionNoSpaceLeftOnDevice {
+		File staging = new File(destination_ + ".partial");
+		Utils.delete(staging);
+		staging.mkdir();
+		
+		int ret = Utils.unzipFileIntoDirectory(archive_, staging.getAbsolutePath(), password_, this.configuration.getArchiveCache(), log);
+		if (ret != 0) {
+			Utils.delete(staging);
+			return ret;
+		}
+		
+		if (staging.renameTo(new File(destination_)) == false) {
+			this.log.error(ajob.getLogCheckPoint(), "Client::extractArchive unable to rename " + staging.getAbsolutePath() + " to " + destination_);
+			Utils.delete(staging);
+			return -1;
+		}
+		
+		return 0;
+	}
+	
+	/**
+	 * Request the next job, download and extract its archives in the background, while the current frame is rendering.
+	 * The job is picked up by the render loop of the slot (via takePrefetchedJob) once the current render is finished.
+	 */
+	protected synchronized void startPrefetch(final Job currentJob_) {
+		final RenderSlot slot = currentJob_.getSlot();
+		if (this.configuration.isPrefetchNextJob() == false || slot.getPrefetchThread() != null || slot.getPrefetchedJob() != null) {
+			return;
+		}
+		
+		if (this.running == false || this.suspended || this.shuttingdown || currentJob_.isSynchronousUpload() || this.nextJobRequest() != null) {
+			return;
+		}
+		
+		// the frames rendering and the jobs already prefetched will join the upload queue too, a job is only prefetched if its frame will have room in
+		// it (the renderer would wait for the uploads otherwise)
+		int concurrent_job = this.uploadQueueSize;
+		for (RenderSlot aSlot : this.slots) {
+			if (aSlot.getRenderingJob() != null && aSlot.getRenderingJob().isSynchronousUpload() == false) {
+				concurrent_job++;
+			}
+			if (aSlot.getPrefetchThread() != null || aSlot.getPrefetchedJob() != null) {
+				concurrent_job++;
+			}
+		}
+		if (concurrent_job >= this.uploadQueueDepth()) {
+			return;
+		}
+		
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				prefetch(currentJob_);
+			}
+		});
+		thread.setDaemon(true);
+		slot.setPrefetchThread(thread);
+		thread.start();
+	}
+	
+	private void prefetch(Job currentJob_) {
+		RenderSlot slot = currentJob_.getSlot();
+		Job job = null;
+		boolean sceneAcquired = false;
+		int step = this.log.newCheckPoint(); // the log of the next job, until it's rendered or given back
+		try {
+			this.log.debug(step, "Client::prefetch requesting the next job while rendering job " + currentJob_.getId() + " on " + slot);
+			job = this.server.requestJob(slot);
+			if (job == null) {
+				return;
+			}
 			
-			this.gui.status("Extracting project");
+			job.setLogCheckPoint(step);
+			this.log.debug(step, "Client::prefetch got work to do id: " + job.getId() + " frame: " + job.getFrameNumber());
+			synchronized (this) {
+				slot.setPrefetchingJob(job);
+			}
+			this.prefetchedArchives.add(job.getRendererMD5());
+			this.prefetchedArchives.add(job.getSceneMD5());
 			
-			// unzip the archive
-			ret = Utils.unzipFileIntoDirectory(scene_archive, scene_path, ajob.getPassword(), log);
-			if (ret != 0) {
-				this.log.error(
-						"Client::prepareWorkingDirectory, error(2) with Utils.unzipFileIntoDirectory(" + scene_archive + ", " + scene_path + ") returned "
-								+ ret);
-				this.gui.error(String.format("Unable to extract the scene (error %d)", ret));
-				return -2;
+			// any failure here is not reported, the work will be done again (and the errors reported) when the job is actually started
+			Gui background_gui = new BackgroundGui(this.gui, this.log, "Prefetch:");
+			if (this.downloadArchives(job, background_gui) != Error.Type.OK) {
+				return;
+			}
+			
+			if (this.prepareRenderer(job, background_gui) != 0) {
+				return;
+			}
+			
+			// the scene is kept by the cache until the job is started (released by work once the job has acquired it too)
+			sceneAcquired = this.prepareScene(job, background_gui) == 0;
+		}
+		catch (FermeException e) {
+			this.log.debug(step, "Client::prefetch failed to get the next job in advance (" + e + "), it will be requested after the current render");
+		}
+		finally {
+			boolean stopped;
+			synchronized (this) {
+				slot.setPrefetchingJob(null);
+				stopped = this.running == false || (job != null && job.isUserBlockJob()); // or cancelled by cancelPrefetch
+				if (stopped == false) {
+					slot.setPrefetchedJob(job);
+					slot.setPrefetchedSceneAcquired(sceneAcquired);
+				}
+			}
+			if (job != null) {
+				this.prefetchedArchives.remove(job.getRendererMD5());
+				this.prefetchedArchives.remove(job.getSceneMD5());
+				if (stopped) { // the client has stopped (or the prefetch has been cancelled) while the job was prepared, stop() hasn't seen it
+					this.giveBackPrefetchedJob(job, sceneAcquired);
+				}
+			}
+			else {
+				this.log.removeCheckPoint(step);
+			}
+		}
+	}
+	
+	/**
+	 * Stop the preparation of the next job of the slot and give the job back to the server, its files can be removed after that
+	 */
+	private void cancelPrefetch(RenderSlot slot) {
+		Thread thread;
+		synchronized (this) {
+			thread = slot.getPrefetchThread();
+			if (slot.getPrefetchingJob() != null) {
+				slot.getPrefetchingJob().setUserBlockJob(true); // stops its downloads
 			}
 		}
 		
-		return 0;
+		if (thread != null) {
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+			}
+		}
+		
+		Job job;
+		boolean sceneAcquired;
+		synchronized (this) {
+			job = slot.getPrefetchedJob();
+			sceneAcquired = slot.isPrefetchedSceneAcquired();
+			slot.setPrefetchedJob(null);
+			slot.setPrefetchedSceneAcquired(false);
+			slot.setPrefetchThread(null);
+		}
+		if (job != null) {
+			this.log.debug("Client::cancelPrefetch the next job of " + slot + " is given back before cleaning its directories");
+			this.giveBackPrefetchedJob(job, sceneAcquired);
+		}
 	}
 	
-	protected Error.Type confirmJob(Job ajob, int checkpoint) {
-		String url_real = String.format("%s&rendertime=%d&memoryused=%s", ajob.getValidationUrl(), ajob.getProcessRender().getDuration(),
-				ajob.getProcessRender().getMemoryUsed());
-		this.log.debug(checkpoint, "Client::confirmeJob url " + url_real);
-		this.log.debug(checkpoint, "path frame " + ajob.getOutputImagePath());
+	/**
+	 * The client is stopping before the prefetched job has been started, tell the server it will not be rendered
+	 */
+	private void giveBackPrefetchedJob(Job job_, boolean sceneAcquired_) {
+		if (sceneAcquired_) {
+			this.sceneCache.release(job_);
+		}
+		this.log.debug(job_.getLogCheckPoint(), "Client::giveBackPrefetchedJob job " + job_.getId() + " frame " + job_.getFrameNumber() + " will not be rendered");
+		if (this.errorReporter.sendNow(job_, Error.Type.RENDERER_KILLED_BY_USER) == false) {
+			this.log.error(job_.getLogCheckPoint(), "Client::giveBackPrefetchedJob failed to give back the job " + job_.getId() + " frame " + job_.getFrameNumber());
+		}
+		this.log.removeCheckPoint(job_.getLogCheckPoint());
+	}
+	
+	/**
+	 * @return the md5 of the archives (and of the directories extracted from them) needed by the jobs of this client, the ArchiveCache keeps them
+	 */
+	private Set<String> usedArchives() {
+		Set<String> used;
+		synchronized (this.prefetchedArchives) {
+			used = new HashSet<String>(this.prefetchedArchives);
+		}
+		for (RenderSlot slot : this.slots) {
+			for (Job job : Arrays.asList(slot.getRenderingJob(), slot.getPrefetchedJob())) {
+				if (job != null) {
+					used.add(job.getRendererMD5());
+					used.add(job.getSceneMD5());
+				}
+			}
+		}
+		return used;
+	}
+	
+	/**
+	 * @return the job prefetched for the slot (once its preparation is over), or null if there is none
+	 */
+	private Job takePrefetchedJob(RenderSlot slot) {
+		Thread thread;
+		synchronized (this) {
+			thread = slot.getPrefetchThread();
+		}
+		
+		if (thread != null) {
+			slot.getGui().status("Preparing next job");
+			try {
+				thread.join();
+			}
+			catch (InterruptedException e) {
+			}
+		}
 		
-		this.isValidatingJob = true;
+		synchronized (this) {
+			Job job = slot.getPrefetchedJob();
+			slot.setPrefetchedJob(null);
+			slot.setPrefetchThread(null);
+			return job;
+		}
+	}
+	
+	protected Error.Type confirmJob(Job ajob, int checkpoint) {
 		int nb_try = 1;
-		int max_try = 3;
-		ServerCode ret = ServerCode.UNKNOWN;
-		Type confirmJobReturnCode = Error.Type.OK;
-		retryLoop:
-		while (nb_try < max_try && ret != ServerCode.OK) {
-			ret = this.server.HTTPSendFile(url_real, ajob.getOutputImagePath(), checkpoint, this.gui);
-			switch (ret) {
-				case OK:
-					// no issue, exit the loop
-					break retryLoop;
-				
-				case JOB_VALIDATION_ERROR_SESSION_DISABLED:
-				case JOB_VALIDATION_ERROR_BROKEN_MACHINE:
-					confirmJobReturnCode = Error.Type.SESSION_DISABLED;
-					break retryLoop;
-				
-				case JOB_VALIDATION_ERROR_IMAGE_WRONG_DIMENSION:
-				case JOB_VALIDATION_ERROR_MISSING_PARAMETER:
-					// no point to retry the request
-					confirmJobReturnCode = Error.Type.UNKNOWN;
-					break retryLoop;
-					
-				case JOB_VALIDATION_IMAGE_TOO_LARGE:
-					// the client cannot recover from this error (it's server side config) so exit the retry loop
-					confirmJobReturnCode = Type.IMAGE_TOO_LARGE;
-					break retryLoop;
-					
-				default:
-					// do nothing, try to do a request on the next loop
-					break;
+		int max_try = MAX_UPLOAD_ATTEMPTS + 1;
+		Type confirmJobReturnCode = null;
+		while (nb_try < max_try) {
+			confirmJobReturnCode = this.validationError(this.sendFrame(ajob, checkpoint));
+			if (confirmJobReturnCode != null) {
+				break;
 			}
 			
 			nb_try++;
-			if (ret != ServerCode.OK && nb_try < max_try) {
+			if (nb_try < max_try) {
 				try {
 					this.log.debug(checkpoint, "Sleep for 32s before trying to re-upload the frame");
 					Thread.sleep(32000);
 				}
 				catch (InterruptedException e) {
 					confirmJobReturnCode = Error.Type.UNKNOWN;
+					break;
 				}
 			}
 		}
 		
-		this.isValidatingJob = false;
+		if (confirmJobReturnCode == null) {
+			confirmJobReturnCode = Error.Type.OK;
+		}
+		
+		this.frameValidated(ajob, confirmJobReturnCode);
+		return confirmJobReturnCode;
+	}
+	
+	private ServerCode sendFrame(Job ajob, int checkpoint) {
+		String url_real = String.format("%s&rendertime=%d&memoryused=%s", ajob.getValidationUrl(), ajob.getProcessRender().getDuration(),
+				ajob.getProcessRender().getMemoryUsed());
+		this.log.debug(checkpoint, "Client::confirmeJob url " + url_real);
+		this.log.debug(checkpoint, "path frame " + ajob.getOutputImagePath());
+		
+		return this.server.HTTPSendFile(url_real, ajob.getOutputImagePath(), checkpoint, this.gui);
+	}
+	
+	/**
+	 * @return the result of the validation of a frame, or null if the upload can be tried again
+	 */
+	private Error.Type validationError(ServerCode ret) {
+		switch (ret) {
+			case OK:
+				// no issue
+				return Error.Type.OK;
+			
+			case JOB_VALIDATION_ERROR_SESSION_DISABLED:
+			case JOB_VALIDATION_ERROR_BROKEN_MACHINE:
+				return Error.Type.SESSION_DISABLED;
+			
+			case JOB_VALIDATION_ERROR_IMAGE_WRONG_DIMENSION:
+			case JOB_VALIDATION_ERROR_MISSING_PARAMETER:
+				// no point to retry the request
+				return Error.Type.UNKNOWN;
+				
+			case JOB_VALIDATION_IMAGE_TOO_LARGE:
+				// the client cannot recover from this error (it's server side config)
+				return Type.IMAGE_TOO_LARGE;
+				
+			default:
+				// do nothing, try to do a request later
+				return null;
+		}
+	}
+	
+	private void frameValidated(Job ajob, Error.Type ret) {
 		this.previousJob = ajob;
 		
-		if (confirmJobReturnCode == Error.Type.OK) {
+		if (ret == Error.Type.OK) {
 			gui.AddFrameRendered();
 		}
 		
@@ -1068,25 +1617,45 @@ import lombok.Data;
 		File frame = new File(ajob.getOutputImagePath());
 		frame.delete();
 		ajob.setOutputImagePath(null);
-		
-		return confirmJobReturnCode;
 	}
 	
 	protected boolean shouldWaitBeforeRender() {
-		int concurrent_job = this.jobsToValidate.size();
-		if (this.isValidatingJob) {
-			concurrent_job++;
-		}
-		return (concurrent_job >= this.configuration.getMaxUploadingJob());
+		return (this.uploadQueueSize >= this.uploadQueueDepth());
+	}
+	
+	/**
+	 * @return how many rendered frames can wait for upload, at least maxUploadingJob (a setting of the client, not a limit of the server) and
+	 * more if the uploads are slower than the renders
+	 */
+	protected int uploadQueueDepth() {
+		return this.uploadScheduler.queueDepth(this.configuration.getMaxUploadingJob(), this.slots.size());
 	}
 	
 	/****************
 	 * Inner class that will hold the queued jobs. The constructor accepts two parameters:
 	 * @int checkpoint - the checkpoint associated with the job (to add any additional log to the render output)
 	 * @Job job - the job to be validated
+	 * A job whose upload has failed is queued again with a retry delay, it's only taken from the queue once the delay is over.
 	 */
-	@AllArgsConstructor class QueuedJob {
+	class QueuedJob implements Delayed {
 		final private int checkpoint;
 		final private Job job;
+		private int attempts;
+		private long retryAt; // timestamp in ms
+		
+		QueuedJob(int checkpoint_, Job job_) {
+			this.checkpoint = checkpoint_;
+			this.job = job_;
+			this.attempts = 0;
+			this.retryAt = 0;
+		}
+		
+		@Override public long getDelay(TimeUnit unit) {
+			return unit.convert(this.retryAt - new Date().getTime(), TimeUnit.MILLISECONDS);
+		}
+		
+		@Override public int compareTo(Delayed other) {
+			return Long.compare(this.getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+		}
 	}
 }
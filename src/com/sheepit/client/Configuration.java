@@ -60,6 +60,9 @@ import lombok.Data;
 	private int renderbucketSize;
 	private boolean detectGPUs;
 	private boolean printLog;
+	private File logFile; // null if the log is not written in a file
+	private long rendererSampleInterval; // in ms, between two measures of the resources used by the renderer, 0 to disable
+	private boolean useCGroups; // each render in its own cgroup, with hard limits
 	private List<Pair<Calendar, Calendar>> requestTime;
 	private long shutdownTime;
 	private String shutdownMode;
@@ -69,6 +72,16 @@ import lombok.Data;
 	private String UIType;
 	private String hostname;
 	private String theme;
+	private boolean prefetchNextJob; // request and prepare the next job while the current one is rendering
+	private int renderSlots; // number of frames rendered at the same time
+	private long sceneCacheSize; // in bytes, max size of the extracted scenes kept between frames
+	private MD5Index md5Index;
+	private long archiveCacheSize; // in bytes, max size of the archives and extracted directories of each cache directory
+	private ArchiveCache.Policy archiveCachePolicy;
+	private ArchiveCache archiveCache; // created by the client, null before
+	private RendererStore rendererStore;
+	private BandwidthLimiter downloadLimiter; // shared by all the downloads
+	private BandwidthLimiter uploadLimiter; // shared by all the uploads
 	
 	public Configuration(File cache_dir_, String login_, String password_) {
 		this.configFilePath = null;
@@ -92,6 +105,9 @@ import lombok.Data;
 		this.storageDirectory = null;
 		this.setCacheDir(cache_dir_);
 		this.printLog = false;
+		this.logFile = null;
+		this.rendererSampleInterval = 2000;
+		this.useCGroups = false;
 		this.requestTime = null;
 		this.shutdownTime = -1;
 		this.shutdownMode = "soft";
@@ -100,6 +116,16 @@ import lombok.Data;
 		this.useSysTray = true;
 		this.UIType = null;
 		this.theme = null;
+		this.prefetchNextJob = false;
+		this.renderSlots = 1;
+		this.sceneCacheSize = -1; // ie not set
+		this.archiveCacheSize = -1; // ie no limit
+		this.archiveCachePolicy = ArchiveCache.Policy.LRU;
+		this.archiveCache = null;
+		this.rendererStore = null;
+		this.downloadLimiter = new BandwidthLimiter(); // ie no limit
+		this.uploadLimiter = new BandwidthLimiter(); // ie no limit
+		this.md5Index = null;
 	}
 	
 	public String toString() {
@@ -176,6 +202,27 @@ import lombok.Data;
 		}
 	}
 	
+	/**
+	 * Directory of the rendered frames waiting for upload, it's kept when the working directory is cleaned
+	 */
+	public File getUploadQueueDir() {
+		return new File(this.getStorageDir().getAbsolutePath() + File.separator + "upload_queue");
+	}
+	
+	/**
+	 * Directory of the extracted renderers, it's kept when the working directory is cleaned
+	 */
+	public File getRendererStoreDir() {
+		return new File(this.getStorageDir().getAbsolutePath() + File.separator + RendererStore.DIRECTORY);
+	}
+	
+	public synchronized RendererStore getRendererStore() {
+		if (this.rendererStore == null || this.rendererStore.getDirectory().equals(this.getRendererStoreDir()) == false) {
+			this.rendererStore = new RendererStore(this.getRendererStoreDir(), Log.getInstance(this));
+		}
+		return this.rendererStore;
+	}
+	
 	public File getCacheDirForSettings() {
 		if (this.userHasSpecifiedACacheDir == false) {
 			return null;
@@ -209,7 +256,10 @@ import lombok.Data;
 		if (files != null) {
 			for (File file : files) {
 				if (file.isDirectory()) {
-					Utils.delete(file);
+					if (file.getAbsolutePath().equals(this.getUploadQueueDir().getAbsolutePath()) == false
+							&& file.getAbsolutePath().equals(this.getRendererStoreDir().getAbsolutePath()) == false) {
+						Utils.delete(file);
+					}
 				}
 				else {
 					try {
@@ -217,15 +267,21 @@ import lombok.Data;
 						String name = file.getName().substring(0, file.getName().length() - 1 * extension.length());
 						if (extension.equals(".zip")) {
 							// check if the md5 of the file is ok
-							String md5_local = Utils.md5(file.getAbsolutePath());
+							String md5_local = this.md5(file);
 							
 							if (md5_local.equals(name) == false) {
 								file.delete();
 							}
-							
-							// TODO: remove old one
+							// the old ones are removed by the ArchiveCache, once it's over its quota
 						}
-						else {
+						else if (extension.equals(".partial") || extension.equals(".state")) {
+							// interrupted download, kept to be continued
+							File partial = extension.equals(".state") ? new File(dir, name) : file;
+							if (FileDownload.isResumable(partial) == false) {
+								file.delete();
+							}
+						}
+						else if (file.getName().equals(MD5Index.FILENAME) == false && file.getName().equals(ArchiveCache.INDEX_FILENAME) == false) {
 							file.delete();
 						}
 					}
@@ -247,6 +303,28 @@ import lombok.Data;
 		}
 	}
 	
+	/**
+	 * @return the md5 of the file, from the index of the storage directory if the file hasn't changed since it was last hashed
+	 */
+	public String md5(File file_) {
+		return this.getMd5Index().md5(file_);
+	}
+	
+	/**
+	 * Record the md5 of a file computed by another way (while it was downloaded)
+	 */
+	public void addMd5(File file_, String md5_) {
+		this.getMd5Index().add(file_, md5_);
+	}
+	
+	private synchronized MD5Index getMd5Index() {
+		File index_file = new File(this.getStorageDir(), MD5Index.FILENAME);
+		if (this.md5Index == null || this.md5Index.getFile().equals(index_file) == false) {
+			this.md5Index = new MD5Index(index_file);
+		}
+		return this.md5Index;
+	}
+	
 	public List<File> getLocalCacheFiles() {
 		List<File> files_local = new LinkedList<File>();
 		List<File> files = new LinkedList<File>();
@@ -276,7 +354,7 @@ import lombok.Data;
 					String name = file.getName().substring(0, file.getName().length() - 1 * extension.length());
 					if (extension.equals(".zip")) {
 						// check if the md5 of the file is ok
-						String md5_local = Utils.md5(file.getAbsolutePath());
+						String md5_local = this.md5(file);
 						
 						if (md5_local.equals(name)) {
 							files_local.add(file);
@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Make sure a file (an archive of the shared downloads directory for example) is downloaded only once, by one slot of one client.
+ *
+ * The slots of this client wait for each other in memory. Between clients, the owner holds an advisory lock on "file.lock" and writes in
+ * it its pid, hostname and a heartbeat counter every 2 seconds. The other clients wait on the lock itself, so they are woken up as soon
+ * as it's released, or by the system if the owner dies. In case the lock is not released (a dead owner on a network file system), an
+ * owner whose heartbeat has not changed for 10 seconds is considered dead and the waiting client takes over: it removes the lock file and
+ * locks a new one. The heartbeat is flushed to the disk so the clients of other hosts see it.
+ */
+public class DownloadLock {
+	private static final String EXTENSION = ".lock";
+	private static final long HEARTBEAT_INTERVAL = 2 * 1000; // in ms
+	private static final long STALE_DELAY = 10 * 1000; // in ms
+	private static final Set<String> lockedPaths = new HashSet<String>(); // locked by a slot of this client
+	private static final Timer heartbeats = new Timer("DownloadLock", true);
+	private static final String OWNER = ManagementFactory.getRuntimeMXBean().getName(); // "pid@hostname"
+	
+	private File file;
+	private Log log;
+	private RandomAccessFile lockFile;
+	private FileLock lock;
+	private TimerTask heartbeat;
+	private long counter;
+	
+	private DownloadLock(File file_, Log log_) {
+		this.file = new File(file_.getAbsolutePath() + EXTENSION);
+		this.log = log_;
+		this.lockFile = null;
+		this.lock = null;
+		this.heartbeat = null;
+		this.counter = 0;
+	}
+	
+	/**
+	 * Wait until the file can be downloaded by this slot: no one else is downloading it, or the other client has been waited for timeout_
+	 * (in ms) or is dead. message_ is displayed if another client or slot is downloading the file.
+	 *
+	 * @return the lock, to release once the download is done (even if it failed)
+	 */
+	public static DownloadLock acquire(File file_, Log log_, long timeout_, Gui gui_, String message_) throws InterruptedException {
+		DownloadLock lock = new DownloadLock(file_, log_);
+		String path = lock.file.getAbsolutePath();
+		
+		synchronized (lockedPaths) {
+			if (lockedPaths.contains(path)) {
+				gui_.status(message_);
+			}
+			while (lockedPaths.contains(path)) {
+				lockedPaths.wait();
+			}
+			lockedPaths.add(path);
+		}
+		
+		try {
+			lock.lock(new Date().getTime() + timeout_, gui_, message_);
+		}
+		catch (InterruptedException e) {
+			lock.release();
+			throw e;
+		}
+		return lock;
+	}
+	
+	/**
+	 * Take the lock only if no one else (slot or client) is holding it, without waiting
+	 *
+	 * @return the lock, null if it's held by someone else
+	 */
+	public static DownloadLock tryAcquire(File file_, Log log_) {
+		DownloadLock lock = new DownloadLock(file_, log_);
+		synchronized (lockedPaths) {
+			if (lockedPaths.contains(lock.file.getAbsolutePath())) {
+				return null;
+			}
+			lockedPaths.add(lock.file.getAbsolutePath());
+		}
+		
+		try {
+			lock.lockFile = new RandomAccessFile(lock.file, "rw");
+			lock.lock = lock.lockFile.getChannel().tryLock();
+			if (lock.lock == null) {
+				lock.release();
+				return null;
+			}
+		}
+		catch (IOException e) {
+			// the directory is not writable or doesn't support locks, like acquire it goes on without the lock
+			lock.log.debug("DownloadLock::tryAcquire unable to lock " + lock.file + " (" + e + ")");
+			lock.closeFile();
+		}
+		return lock;
+	}
+	
+	/**
+	 * Release the lock, the waiting slots and clients are woken up
+	 */
+	public void release() {
+		if (this.heartbeat != null) {
+			this.heartbeat.cancel();
+			this.heartbeat = null;
+		}
+		try {
+			if (this.lock != null) {
+				this.file.delete(); // while it's still locked, the next owner checks it locked the file which is on the disk
+				this.lock.release();
+			}
+			if (this.lockFile != null) {
+				this.lockFile.close();
+			}
+		}
+		catch (IOException e) {
+		}
+		this.lock = null;
+		this.lockFile = null;
+		
+		synchronized (lockedPaths) {
+			lockedPaths.remove(this.file.getAbsolutePath());
+			lockedPaths.notifyAll();
+		}
+	}
+	
+	private void lock(long deadline_, Gui gui_, String message_) throws InterruptedException {
+		boolean displayed = false;
+		while (true) {
+			FileLock acquired;
+			Object key;
+			try {
+				this.lockFile = new RandomAccessFile(this.file, "rw");
+				key = this.fileKey();
+				acquired = this.lockFile.getChannel().tryLock();
+			}
+			catch (IOException e) {
+				// the directory is not writable or doesn't support locks, nothing better than downloading without the lock
+				this.log.debug("DownloadLock::lock unable to lock " + this.file + " (" + e + ")");
+				this.closeFile();
+				return;
+			}
+			
+			if (acquired == null) {
+				if (displayed == false) {
+					gui_.status(message_);
+					displayed = true;
+				}
+				acquired = this.waitForRelease(deadline_);
+				if (acquired == null) {
+					if (this.file.exists() == false) { // the lock file of the dead owner has been removed, lock a new one
+						continue;
+					}
+					// timeout, go on without the lock
+					this.closeFile();
+					return;
+				}
+			}
+			
+			if (key != null && key.equals(this.fileKey())) {
+				this.lock = acquired;
+				break;
+			}
+			
+			// the previous owner has removed the file before releasing it, lock the new one
+			try {
+				acquired.release();
+			}
+			catch (IOException e) {
+			}
+			this.closeFile();
+		}
+		
+		this.writeHeartbeat();
+		this.heartbeat = new TimerTask() {
+			@Override public void run() {
+				writeHeartbeat();
+			}
+		};
+		heartbeats.schedule(this.heartbeat, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL);
+	}
+	
+	/**
+	 * Block on the lock until it's released, while checking the heartbeat of the owner. The lock file of a dead owner is removed.
+	 *
+	 * @return the lock, or null if the owner is dead or the deadline has been reached
+	 */
+	private FileLock waitForRelease(long deadline_) throws InterruptedException {
+		final FileChannel channel = this.lockFile.getChannel();
+		final FileLock[] acquired = new FileLock[1];
+		Thread waiter = new Thread() {
+			@Override public void run() {
+				try {
+					FileLock lock = channel.lock(); // woken up by the system when the owner releases it or dies
+					synchronized (acquired) {
+						acquired[0] = lock;
+						acquired.notifyAll();
+					}
+				}
+				catch (IOException e) {
+					// channel closed, the waiting has been abandoned
+				}
+			}
+		};
+		waiter.setDaemon(true);
+		waiter.start();
+		
+		String owner = this.readOwner();
+		long lastChange = new Date().getTime();
+		try {
+			synchronized (acquired) {
+				while (acquired[0] == null) {
+					acquired.wait(HEARTBEAT_INTERVAL);
+					if (acquired[0] != null) {
+						break;
+					}
+					
+					long now = new Date().getTime();
+					String current = this.readOwner();
+					if (current == null || current.equals(owner) == false) {
+						owner = current;
+						lastChange = now;
+					}
+					else if (now - lastChange > STALE_DELAY) {
+						this.log.debug("DownloadLock::waitForRelease owner of " + this.file + " (" + owner + ") has stopped its heartbeat, taking over its lock");
+						if (this.file.delete() == false) {
+							this.log.debug("DownloadLock::waitForRelease unable to remove " + this.file);
+						}
+						return null;
+					}
+					
+					if (now > deadline_) {
+						this.log.debug("DownloadLock::waitForRelease timeout while waiting for " + this.file + " (owner " + owner + ")");
+						return null;
+					}
+				}
+				return acquired[0];
+			}
+		}
+		finally {
+			synchronized (acquired) {
+				if (acquired[0] == null) {
+					this.closeFile(); // stops the waiting thread
+				}
+			}
+		}
+	}
+	
+	private synchronized void writeHeartbeat() {
+		if (this.lock == null) {
+			return;
+		}
+		try {
+			this.counter++;
+			FileChannel channel = this.lockFile.getChannel();
+			ByteBuffer content = ByteBuffer.wrap((OWNER + "\t" + this.counter + "\n").getBytes(StandardCharsets.UTF_8));
+			channel.truncate(0);
+			while (content.hasRemaining()) {
+				channel.write(content, content.position());
+			}
+			channel.force(false); // visible to the clients of other hosts (network file system)
+		}
+		catch (IOException e) {
+			this.log.debug("DownloadLock::writeHeartbeat failed for " + this.file + " (" + e + ")");
+		}
+	}
+	
+	/**
+	 * @return the owner and its heartbeat, null if it can't be read (the file is locked on some systems)
+	 */
+	private String readOwner() {
+		try {
+			return new String(Files.readAllBytes(this.file.toPath()), StandardCharsets.UTF_8);
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return what identifies the file on the disk (the inode on unix), null if the file doesn't exist or the system doesn't tell
+	 */
+	private Object fileKey() {
+		try {
+			return Files.readAttributes(this.file.toPath(), BasicFileAttributes.class).fileKey();
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+	
+	private void closeFile() {
+		try {
+			if (this.lockFile != null) {
+				this.lockFile.close();
+			}
+		}
+		catch (IOException e) {
+		}
+		this.lockFile = null;
+	}
+}
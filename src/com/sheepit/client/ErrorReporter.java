@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.sheepit.client.Error.ServerCode;
+import com.sheepit.client.hardware.cpu.CPU;
+import com.sheepit.client.os.OS;
+
+/**
+ * Send the error reports to the server from a background thread, so a failed frame doesn't hold the render loop.
+ *
+ * The log of the report is copied (gzipped, on the disk) when the error happens and sent as plain text after a header. Reports waiting to be sent are coalesced:
+ * the same error on the same frame is only sent once, with the number of occurrences in the header. The queue is bounded (the oldest report is dropped) and a failed upload is
+ * retried with an increasing delay.
+ */
+public class ErrorReporter implements Runnable {
+	private static final int MAX_QUEUED_REPORTS = 10;
+	private static final int MAX_ATTEMPTS = 3;
+	private static final long FIRST_RETRY_DELAY = 30 * 1000; // in ms
+	
+	private Configuration configuration;
+	private Server server;
+	private Log log;
+	private Gui gui;
+	private LinkedList<Report> reports;
+	private boolean disabled;
+	
+	public ErrorReporter(Configuration configuration_, Server server_, Log log_, Gui gui_) {
+		this.configuration = configuration_;
+		this.server = server_;
+		this.log = log_;
+		this.gui = gui_;
+		this.reports = new LinkedList<Report>();
+		this.disabled = false;
+	}
+	
+	public void start() {
+		Thread thread = new Thread(this);
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Queue a report, the checkpoint's log is copied in a temporary file so the checkpoint can be removed right after
+	 */
+	public synchronized void report(int step_, Job job_, Error.Type error_) {
+		if (this.disabled) {
+			this.log.debug("Error sending is disabled, do not send log");
+			return;
+		}
+		
+		for (Report report : this.reports) {
+			if (report.isSameError(job_, error_)) {
+				report.occurrences++;
+				this.log.debug("ErrorReporter::report error " + error_ + " already waiting to be sent (" + report.occurrences + " times)");
+				return;
+			}
+		}
+		
+		if (this.reports.size() >= MAX_QUEUED_REPORTS) {
+			Report dropped = this.reports.removeFirst();
+			dropped.deleteLog();
+			this.log.debug("ErrorReporter::report too many errors waiting to be sent, dropping " + dropped.error);
+		}
+		
+		this.reports.add(new Report(step_, job_, error_, this.copyLog(step_)));
+		notifyAll();
+	}
+	
+	/**
+	 * @return a gzipped copy of the checkpoint's log, null if there is none
+	 */
+	private File copyLog(int step_) {
+		LogCheckPoint checkpoint = this.log.getForCheckPoint(step_);
+		if (checkpoint == null) {
+			return null;
+		}
+		
+		File copy = null;
+		try {
+			copy = File.createTempFile("farm_", ".log.gz");
+			copy.deleteOnExit();
+			OutputStream out = new GZIPOutputStream(new FileOutputStream(copy), 64 * 1024);
+			try {
+				checkpoint.writeTo(out);
+			}
+			finally {
+				out.close();
+			}
+			return copy;
+		}
+		catch (IOException e) {
+			this.log.debug("ErrorReporter::copyLog failed to copy the log of the checkpoint " + step_ + " (" + e + ")");
+			if (copy != null) {
+				copy.delete();
+			}
+			return null;
+		}
+	}
+	
+	/**
+	 * Send a report right away, even if the reporter has been disabled (to give a job back to the server when the client stops)
+	 *
+	 * @return false if it couldn't be sent
+	 */
+	public boolean sendNow(Job job_, Error.Type error_) {
+		return this.send(new Report(0, job_, error_, null));
+	}
+	
+	/**
+	 * Drop the queued reports and don't accept new ones (the client is stopping)
+	 */
+	public synchronized void disable() {
+		this.disabled = true;
+		for (Report report : this.reports) {
+			report.deleteLog();
+		}
+		this.reports.clear();
+		notifyAll();
+	}
+	
+	@Override public void run() {
+		while (true) {
+			Report report;
+			try {
+				report = this.next();
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+			if (report == null) {
+				return;
+			}
+			
+			report.attempts++;
+			if (this.send(report)) {
+				report.deleteLog();
+				continue;
+			}
+			
+			synchronized (this) {
+				if (report.attempts < MAX_ATTEMPTS && this.disabled == false) {
+					report.sendAfter = new Date().getTime() + (FIRST_RETRY_DELAY << (report.attempts - 1));
+					this.reports.addFirst(report);
+				}
+				else {
+					this.log.debug("ErrorReporter::run failed to send the error report " + report.error + " after " + report.attempts + " attempts");
+					report.deleteLog();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return the next report ready to be sent, null if the reporter has been disabled
+	 */
+	private synchronized Report next() throws InterruptedException {
+		while (this.disabled == false) {
+			long now = new Date().getTime();
+			long wait = 0;
+			Iterator<Report> it = this.reports.iterator();
+			while (it.hasNext()) {
+				Report report = it.next();
+				if (report.sendAfter <= now) {
+					it.remove();
+					return report;
+				}
+				wait = wait == 0 ? report.sendAfter - now : Math.min(wait, report.sendAfter - now);
+			}
+			wait(wait);
+		}
+		return null;
+	}
+	
+	private boolean send(Report report_) {
+		File temp_file = null;
+		try {
+			temp_file = File.createTempFile("farm_", ".txt");
+			temp_file.deleteOnExit();
+			OutputStream writer = new BufferedOutputStream(new FileOutputStream(temp_file));
+			
+			// Insert the info at the beginning of the error log
+			writer.write(this.header(report_).getBytes());
+			if (report_.log != null) {
+				InputStream in = new GZIPInputStream(new FileInputStream(report_.log));
+				try {
+					byte[] buffer = new byte[64 * 1024];
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						writer.write(buffer, 0, read);
+					}
+				}
+				finally {
+					in.close();
+				}
+			}
+			writer.close();
+			
+			Job job = report_.job;
+			String args = "?type=" + (report_.error == null ? "" : report_.error.getValue());
+			if (job != null) {
+				args += "&frame=" + job.getFrameNumber() + "&job=" + job.getId() + "&render_time=" + job.getProcessRender().getDuration() + "&memoryused="
+						+ job.getProcessRender().getMemoryUsed();
+				if (job.getExtras() != null && job.getExtras().isEmpty() == false) {
+					args += "&extras=" + job.getExtras();
+				}
+			}
+			this.log.debug("Sending error to server (type: " + report_.error + ")");
+			// the answer to an error report is not a validation, only a failed request (no answer or an unexpected one) is worth a retry
+			return this.server.HTTPSendFile(this.server.getPage("error") + args, temp_file.getAbsolutePath(), report_.step, this.gui) != ServerCode.UNKNOWN;
+		}
+		catch (IOException e) {
+			StringWriter sw = new StringWriter();
+			PrintWriter pw = new PrintWriter(sw);
+			e.printStackTrace(pw);
+			this.log.debug("ErrorReporter::send Exception " + e + " stacktrace: " + sw.toString());
+			return false;
+		}
+		finally {
+			if (temp_file != null) {
+				temp_file.delete();
+			}
+		}
+	}
+	
+	/**
+	 * @return a header with the information summarised for easier admin error analysis
+	 */
+	private String header(Report report_) {
+		Configuration conf = this.configuration;
+		CPU cpu = OS.getOS().getCPU();
+		
+		StringBuilder logHeader = new StringBuilder()
+			.append("====================================================================================================\n")
+			.append(String.format("%s  /  %s  /  %s  /  SheepIt v%s\n", conf.getLogin(), conf.getHostname(), OS.getOS().name(), conf.getJarVersion()))
+			.append(String.format("%s  x%d  %.1f GB RAM\n", cpu.name(), conf.getNbCores(), conf.getMaxMemory() / 1024.0 / 1024.0));
+		
+		if (conf.getComputeMethod() == Configuration.ComputeType.GPU || conf.getComputeMethod() == Configuration.ComputeType.CPU_GPU) {
+			logHeader
+				.append(String.format("%s   %.1f GB VRAM\n", conf.getGPUDevice().getModel(), conf.getGPUDevice().getMemory() / 1024.0 / 1024.0 / 1024.0));
+		}
+		
+		logHeader.append("====================================================================================================\n");
+		Job job = report_.job;
+		if (job != null) {
+			logHeader.append(String.format("Project ::: %s\n", job.getName())).append(String.format("Project id: %s  frame: %s\n", job.getId(), job.getFrameNumber()))
+					.append(String.format("blender ::: %s\n\n", job.getBlenderLongVersion())).append(String.format("ERROR Type :: %s\n", report_.error));
+		}
+		else {
+			logHeader.append("Project ::: No project allocated.\n")
+					.append(String.format("ERROR Type :: %s\n", (report_.error != null ? report_.error : "N/A")));
+		}
+		if (report_.occurrences > 1) {
+			logHeader.append(String.format("Occurrences :: %d (only the log of the first one is attached)\n", report_.occurrences));
+		}
+		if (job != null && job.getResourceSampler() != null && job.getResourceSampler().getSamples().isEmpty() == false) {
+			logHeader.append("Resources used by the renderer ::\n").append(job.getResourceSampler().summary());
+		}
+		logHeader.append("====================================================================================================\n\n");
+		return logHeader.toString();
+	}
+	
+	private static class Report {
+		private final int step;
+		private final Job job;
+		private final Error.Type error;
+		private final File log; // gzipped, null if there is none
+		private int occurrences;
+		private int attempts;
+		private long sendAfter; // timestamp in ms
+		
+		Report(int step_, Job job_, Error.Type error_, File log_) {
+			this.step = step_;
+			this.job = job_;
+			this.error = error_;
+			this.log = log_;
+			this.occurrences = 1;
+			this.attempts = 0;
+			this.sendAfter = 0;
+		}
+		
+		void deleteLog() {
+			if (this.log != null) {
+				this.log.delete();
+			}
+		}
+		
+		boolean isSameError(Job job_, Error.Type error_) {
+			if (this.error != error_) {
+				return false;
+			}
+			if (this.job == null || job_ == null) {
+				return this.job == job_;
+			}
+			return this.job.getId().equals(job_.getId()) && this.job.getFrameNumber().equals(job_.getFrameNumber());
+		}
+	}
+}
@@ -0,0 +1,865 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.DatatypeConverter;
+
+import okhttp3.Response;
+import okio.BufferedSource;
+
+import com.sheepit.client.os.OS;
+
+/**
+ * Download a file over several connections.
+ *
+ * The first request asks for the whole file with a "Range" header: if the server answers with a partial content, it supports ranges and
+ * gives the size of the file. Big files are then split in segments downloaded in parallel, each one written at its position in a
+ * preallocated file. A segment which fails is requested again from where it stopped, the other ones are not affected. If the server
+ * doesn't support ranges, the file is downloaded with the first request only, like before.
+ *
+ * When ranges are supported, the progress of the segments is saved next to the file (".state": size, ETag and position of each
+ * segment, only once the data is on the disk). An interrupted download is continued from there, as long as the file has not changed
+ * on the server ("If-Range" header), instead of starting again from the first byte.
+ *
+ * The md5 of the file is computed while it's downloaded, so the file doesn't have to be read again to be checked. The digest needs the
+ * bytes in order: the segment at the start of the non hashed part feeds it directly, the data of the following segments is read back
+ * (most likely from the page cache) once the previous ones are done. Only the part downloaded before a resume is read again from the disk.
+ *
+ * The hashed part of the file is also given, as it grows, to an optional extractor, so an archive can be extracted during its download.
+ *
+ * Once the size of the file is known (from the answer to the first request), and before writing anything, room is made for it in the archive
+ * cache and its blocks are allocated on the disk (if the file system can do it), so a download doesn't run out of space halfway.
+ *
+ * Each connection is taken from the budget of the TransferScheduler, shared by all the downloads of the client, and the data received goes
+ * through its download limiter.
+ */
+public class FileDownload {
+	private static final int MAX_CONNECTIONS = 4;
+	private static final long MIN_SEGMENT_SIZE = 16 * 1024 * 1024; // in bytes, not worth opening a connection for less
+	private static final int MAX_SEGMENT_ATTEMPTS = 3;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int CHUNK_SIZE = 256 * 1024; // in bytes, received before being written (the socket gives 8 kB at a time)
+	private static final long MAX_DIGEST_CATCH_UP = 64 * 1024 * 1024; // in bytes, read back between two progress updates
+	private static final long STATE_SAVE_INTERVAL = 5 * 1000; // in ms
+	private static final long CONNECTION_WAIT_INTERVAL = 200; // in ms, between two checks of the job while waiting for a connection
+	private static final long LIVE_STATS_INTERVAL = 10 * 1000; // in ms
+	private static final long STATE_MAX_AGE = 24 * 3600 * 1000; // in ms, the archive is most likely not needed anymore
+	private static final String STATE_EXTENSION = ".state";
+	private static final String SEPARATOR = "\t";
+	
+	private Server server;
+	private Log log;
+	private String url;
+	private File file;
+	private File stateFile;
+	private Gui gui;
+	private String status;
+	private Job job;
+	private ZipStreamExtractor extractor;
+	private ArchiveCache cache;
+	private ArchiveCache.Reservation reservation; // until the file is allocated on the disk
+	private TransferScheduler scheduler;
+	private BandwidthLimiter limiter;
+	
+	private long size; // -1 if unknown
+	private String etag; // or the modification date, to make sure a resumed file has not changed
+	private boolean rangeSupported;
+	private List<Segment> segments;
+	private long resumed; // bytes downloaded before this run
+	private AtomicLong written;
+	private volatile boolean stopped;
+	private FileChannel channel;
+	private MessageDigest digest;
+	private long hashed; // bytes fed to the digest, from the start of the file
+	private boolean finished;
+	private Error.Type result;
+	private String md5;
+	
+	/**
+	 * @param extractor_ extract the file while it's downloaded, can be null
+	 * @param cache_ make room for the file before downloading it, can be null
+	 */
+	public FileDownload(Server server_, Log log_, String url_, File file_, Gui gui_, String status_, Job job_, ZipStreamExtractor extractor_,
+			ArchiveCache cache_) {
+		this.server = server_;
+		this.log = log_;
+		this.url = url_;
+		this.file = file_;
+		this.stateFile = getStateFile(file_);
+		this.gui = gui_;
+		this.status = status_;
+		this.job = job_;
+		this.extractor = extractor_;
+		this.cache = cache_;
+		this.reservation = null;
+		this.scheduler = server_.getTransferScheduler();
+		this.limiter = this.scheduler.getDownloadLimiter();
+		this.size = -1;
+		this.etag = null;
+		this.rangeSupported = false;
+		this.segments = new ArrayList<Segment>();
+		this.resumed = 0;
+		this.written = new AtomicLong(0);
+		this.stopped = false;
+		this.channel = null;
+		this.digest = null;
+		this.hashed = 0;
+		this.finished = false;
+		this.result = Error.Type.DOWNLOAD_FILE;
+		this.md5 = "";
+	}
+	
+	public static File getStateFile(File file_) {
+		return new File(file_.getAbsolutePath() + STATE_EXTENSION);
+	}
+	
+	/**
+	 * @return true if the file is an interrupted download which can be continued
+	 */
+	public static boolean isResumable(File file_) {
+		File state = getStateFile(file_);
+		return file_.exists() && state.exists() && new Date().getTime() - state.lastModified() < STATE_MAX_AGE;
+	}
+	
+	/**
+	 * Remove the partially downloaded file and its state
+	 */
+	public static void discard(File file_) {
+		file_.delete();
+		getStateFile(file_).delete();
+	}
+	
+	/**
+	 * @return the number of bytes received (not counting the ones of a previous interrupted download)
+	 */
+	public long getWritten() {
+		return this.written.get();
+	}
+	
+	public long getSize() {
+		return this.size;
+	}
+	
+	/**
+	 * @return OK if the file has been downloaded
+	 */
+	public Error.Type getResult() {
+		return this.result;
+	}
+	
+	/**
+	 * @return the md5 of the downloaded file, empty string if the download didn't succeed
+	 */
+	public String getMd5() {
+		return this.md5;
+	}
+	
+	/**
+	 * @return OK once the file is complete, NO_SPACE_LEFT_ON_DEVICE if there is not enough room for it, or the reason the download has been
+	 * stopped (the file can then be resumed)
+	 * @throws IOException if a part of the file could not be downloaded
+	 */
+	public Error.Type run() throws IOException {
+		Response first = null;
+		Segment firstSegment = null;
+		boolean connection = false; // for the first request, given to its segment once it's started
+		try (RandomAccessFile output = new RandomAccessFile(this.file, "rw")) {
+			this.channel = output.getChannel();
+			this.digest = MessageDigest.getInstance("MD5");
+			
+			connection = this.acquireConnection();
+			if (connection == false) {
+				Error.Type status = this.jobStatus();
+				this.result = status != Error.Type.OK ? status : Error.Type.DOWNLOAD_FILE;
+				return this.result;
+			}
+			
+			if (this.loadState()) {
+				firstSegment = this.nextIncompleteSegment();
+				if (firstSegment != null) {
+					first = this.resume(firstSegment);
+					if (first == null) {
+						this.segments.clear();
+						this.resumed = 0;
+					}
+					else if (this.makeRoom(this.size - this.resumed) == false || this.allocate(this.size, true) == false) {
+						this.result = Error.Type.NO_SPACE_LEFT_ON_DEVICE;
+						return this.result;
+					}
+				}
+			}
+			
+			if (this.segments.isEmpty()) {
+				this.stateFile.delete();
+				first = this.server.HTTPRangeRequest(this.url, 0, -1, null);
+				this.channel.truncate(0);
+				if (this.split(first) == false) {
+					this.result = Error.Type.NO_SPACE_LEFT_ON_DEVICE;
+					return this.result;
+				}
+				firstSegment = this.segments.get(0);
+			}
+			
+			if (this.extractor != null) {
+				this.extractor.start(new OrderedInputStream());
+			}
+			
+			List<Thread> threads = new ArrayList<Thread>();
+			for (final Segment segment : this.segments) {
+				if (segment.position >= segment.end) {
+					continue;
+				}
+				final Response response = segment == firstSegment ? first : null; // this segment is read from the first request
+				final boolean hasConnection = segment == firstSegment && connection;
+				Thread thread = new Thread() {
+					@Override public void run() {
+						FileDownload.this.fetch(segment, response, hasConnection);
+					}
+				};
+				thread.setDaemon(true);
+				thread.start();
+				threads.add(thread);
+				if (hasConnection) {
+					connection = false; // now owned by its segment
+				}
+			}
+			first = null; // now owned by its segment
+			
+			Error.Type ret = this.waitFor(threads);
+			if (ret == Error.Type.OK) {
+				ret = this.jobStatus(); // the segments don't wait for a connection once the job is cancelled
+			}
+			
+			IOException error = null;
+			for (Segment segment : this.segments) {
+				if (segment.error != null) {
+					error = segment.error;
+				}
+			}
+			
+			if (ret == Error.Type.OK && error == null) {
+				this.stateFile.delete();
+			}
+			else {
+				this.saveState();
+			}
+			
+			if (ret != Error.Type.OK) {
+				this.result = ret;
+				return ret;
+			}
+			if (error != null) {
+				throw error;
+			}
+			
+			this.updateDigest(Long.MAX_VALUE);
+			long end = this.size >= 0 ? this.size : this.segments.get(this.segments.size() - 1).position;
+			if (this.hashed != end) {
+				throw new IOException("Only " + this.hashed + " bytes out of " + end + " have been hashed");
+			}
+			this.md5 = DatatypeConverter.printHexBinary(this.digest.digest()).toLowerCase();
+			this.result = Error.Type.OK;
+			return this.result;
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+		finally {
+			if (this.digest != null) {
+				synchronized (this.digest) {
+					this.finished = true;
+					this.digest.notifyAll();
+				}
+			}
+			if (first != null) {
+				first.close();
+			}
+			if (connection) {
+				this.scheduler.releaseConnection();
+			}
+			this.releaseReservation();
+			this.channel = null;
+		}
+	}
+	
+	/**
+	 * Continue an interrupted download, starting with the given segment
+	 *
+	 * @return the answer to use for the segment, null if the file has to be downloaded again from the start
+	 */
+	private Response resume(Segment segment_) {
+		try {
+			Response response = this.server.HTTPRangeRequest(this.url, segment_.position, segment_.end - 1, this.etag);
+			if (response.code() == HttpURLConnection.HTTP_PARTIAL && this.totalSize(response) == this.size) {
+				this.log.debug(this.job.getLogCheckPoint(), "FileDownload::resume " + this.file.getName() + " " + this.resumed + " bytes already downloaded out of " + this.size);
+				return response;
+			}
+			response.close();
+		}
+		catch (IOException e) {
+			this.log.debug(this.job.getLogCheckPoint(), "FileDownload::resume failed to resume " + this.file.getName() + " (" + e + ")");
+		}
+		this.log.debug(this.job.getLogCheckPoint(), "FileDownload::resume " + this.file.getName() + " can not be resumed (changed on the server?), downloading it again");
+		return null;
+	}
+	
+	private Segment nextIncompleteSegment() {
+		for (Segment segment : this.segments) {
+			if (segment.position < segment.end) {
+				return segment;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return the size of the file from the "Content-Range" header of a partial answer, -1 if unknown
+	 */
+	private long totalSize(Response response_) {
+		// Content-Range: bytes 0-1233/1234
+		String range = response_.header("Content-Range");
+		if (response_.code() != HttpURLConnection.HTTP_PARTIAL || range == null || range.lastIndexOf('/') == -1) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(range.substring(range.lastIndexOf('/') + 1).trim());
+		}
+		catch (NumberFormatException e) {
+			return -1; // size unknown ("*")
+		}
+	}
+	
+	/**
+	 * Use the answer of the first request to decide how the file will be downloaded
+	 *
+	 * @return false if there is not enough room for the file
+	 */
+	private boolean split(Response first_) throws IOException {
+		long total = this.totalSize(first_);
+		if (total > 0) {
+			this.rangeSupported = true;
+			this.size = total;
+			this.etag = first_.header("ETag") != null ? first_.header("ETag") : first_.header("Last-Modified");
+		}
+		else if (first_.code() == HttpURLConnection.HTTP_OK) {
+			this.size = first_.body().contentLength();
+		}
+		else {
+			throw new IOException("Unexpected code " + first_.code() + " for " + this.url);
+		}
+		
+		int nbSegments = 1;
+		if (this.rangeSupported) {
+			nbSegments = (int) Math.max(1, Math.min(MAX_CONNECTIONS, this.size / MIN_SEGMENT_SIZE));
+		}
+		
+		if (this.makeRoom(this.size) == false) {
+			return false;
+		}
+		
+		if (this.size > 0 && this.allocate(this.size, false) == false) {
+			return false;
+		}
+		
+		long segmentSize = this.size >= 0 ? this.size / nbSegments : Long.MAX_VALUE;
+		for (int i = 0; i < nbSegments; i++) {
+			long start = i * segmentSize;
+			long end = i == nbSegments - 1 ? (this.size >= 0 ? this.size : Long.MAX_VALUE) : start + segmentSize;
+			this.segments.add(new Segment(start, end));
+		}
+		
+		this.log.debug(this.job.getLogCheckPoint(), "FileDownload::split " + this.url + " size " + this.size + " bytes, ranges " + (this.rangeSupported ? "supported" : "not supported") + ", "
+				+ nbSegments + " segment(s)");
+		return true;
+	}
+	
+	/**
+	 * Reserve size_ bytes in the archive cache, it makes room for them if needed (nothing to do if the size is unknown)
+	 *
+	 * @return false if there is not enough room
+	 */
+	private boolean makeRoom(long size_) {
+		if (this.cache == null || size_ <= 0) {
+			return true;
+		}
+		this.reservation = this.cache.reserve(this.file.getParentFile(), size_);
+		return this.reservation != null;
+	}
+	
+	private void releaseReservation() {
+		if (this.reservation != null) {
+			this.reservation.release();
+			this.reservation = null;
+		}
+	}
+	
+	/**
+	 * Allocate the file on the disk right away, the segments are written at their own position. Once the blocks are allocated, the space
+	 * doesn't need to be reserved anymore.
+	 *
+	 * @param resumed_ the file already has its size, and some data
+	 * @return false if there is not enough space on the disk
+	 */
+	private boolean allocate(long size_, boolean resumed_) throws IOException {
+		try {
+			if (OS.getOS().preallocate(this.file, size_)) {
+				this.releaseReservation();
+				return true;
+			}
+		}
+		catch (IOException e) {
+			this.log.error(this.job.getLogCheckPoint(), "FileDownload::allocate " + e.getMessage());
+			return false;
+		}
+		
+		if (resumed_ == false) {
+			// the file system can't allocate the blocks, writing the last byte at least makes the file the right size without writing the whole
+			// file, the space stays reserved until the end of the download
+			ByteBuffer last = ByteBuffer.allocate(1);
+			this.channel.write(last, size_ - 1);
+		}
+		return true;
+	}
+	
+	/**
+	 * Wait for a connection from the scheduler
+	 *
+	 * @return false if the download has been stopped or the job cancelled in the meantime
+	 */
+	private boolean acquireConnection() {
+		while (this.stopped == false && this.jobStatus() == Error.Type.OK) {
+			try {
+				if (this.scheduler.acquireConnection(CONNECTION_WAIT_INTERVAL)) {
+					return true;
+				}
+			}
+			catch (InterruptedException e) {
+				return false;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return OK if the job has not been cancelled, otherwise who has cancelled it
+	 */
+	private Error.Type jobStatus() {
+		if (this.job.isServerBlockJob()) {
+			return Error.Type.RENDERER_KILLED_BY_SERVER;
+		}
+		else if (this.job.isUserBlockJob()) {
+			return Error.Type.RENDERER_KILLED_BY_USER;
+		}
+		return Error.Type.OK;
+	}
+	
+	/**
+	 * Download a segment with a connection of the scheduler
+	 *
+	 * @param hasConnection_ the connection has already been taken (for the first request)
+	 */
+	private void fetch(Segment segment_, Response response_, boolean hasConnection_) {
+		if (hasConnection_ == false && this.acquireConnection() == false) {
+			return;
+		}
+		try {
+			this.fetchWithRetries(segment_, response_);
+		}
+		finally {
+			this.scheduler.releaseConnection();
+		}
+	}
+	
+	/**
+	 * Download a segment, requesting again the part which is missing if the connection fails
+	 */
+	private void fetchWithRetries(Segment segment_, Response response_) {
+		Response response = response_;
+		while (this.stopped == false) {
+			try {
+				if (response == null) {
+					response = this.server.HTTPRangeRequest(this.url, segment_.position, segment_.end - 1, this.etag);
+					if (response.code() != HttpURLConnection.HTTP_PARTIAL) {
+						throw new IOException("Server did not answer with the requested range (code " + response.code() + ")");
+					}
+				}
+				segment_.response = response;
+				this.copy(response, segment_);
+				return;
+			}
+			catch (IOException e) {
+				segment_.attempts++;
+				if (this.stopped) {
+					return;
+				}
+				if (this.rangeSupported == false || segment_.attempts >= MAX_SEGMENT_ATTEMPTS) {
+					this.log.debug(this.job.getLogCheckPoint(), "FileDownload::fetch segment " + segment_.start + "-" + segment_.end + " failed after " + segment_.attempts + " attempt(s) (" + e + ")");
+					segment_.error = e;
+					this.stop();
+					return;
+				}
+				this.log.debug(this.job.getLogCheckPoint(), "FileDownload::fetch segment " + segment_.start + "-" + segment_.end + " failed at " + segment_.position + ", requesting the rest again ("
+						+ e + ")");
+			}
+			finally {
+				segment_.response = null;
+				if (response != null) {
+					response.close();
+					response = null;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Write the data of the answer at the position of the segment. The data is gathered in large chunks, so the disk, the digest and the
+	 * limiter are called once per chunk instead of once per network packet. A stopped download is not checked here: closing the answer
+	 * interrupts the read.
+	 */
+	private void copy(Response response_, Segment segment_) throws IOException {
+		BufferedSource source = response_.body().source();
+		ByteBuffer data = ByteBuffer.allocateDirect(CHUNK_SIZE); // written to the file without an intermediate copy
+		boolean end = false; // of the stream, it's the end of the file if its size is unknown
+		while (segment_.position < segment_.end && end == false) {
+			data.clear();
+			data.limit((int) Math.min(data.capacity(), segment_.end - segment_.position));
+			while (data.hasRemaining()) {
+				if (source.read(data) == -1) {
+					end = true;
+					break;
+				}
+			}
+			data.flip();
+			int len = data.remaining();
+			this.limiter.acquire(len);
+			
+			long position = segment_.position;
+			while (data.hasRemaining()) {
+				position += this.channel.write(data, position);
+			}
+			data.rewind();
+			synchronized (this.digest) {
+				if (this.hashed == segment_.position) { // nothing missing before this data
+					this.digest.update(data);
+					this.hashed += len;
+					this.digest.notifyAll();
+				}
+			}
+			segment_.position += len;
+			this.written.addAndGet(len);
+		}
+		
+		// what has been received is kept, the rest of the segment is requested again
+		if (end && this.size >= 0 && segment_.position < segment_.end) {
+			throw new IOException("Connection closed at " + segment_.position + " (end of segment " + segment_.end + ")");
+		}
+	}
+	
+	/**
+	 * Wait for the segments while updating the progress, stop them if the job is cancelled
+	 */
+	private Error.Type waitFor(List<Thread> threads_) {
+		long lastUpd = 0; // last GUI progress update
+		long lastSave = new Date().getTime();
+		long lastStats = new Date().getTime();
+		for (Thread thread : threads_) {
+			while (thread.isAlive()) {
+				try {
+					thread.join(200);
+				}
+				catch (InterruptedException e) {
+				}
+				
+				Error.Type ret = this.jobStatus();
+				if (ret != Error.Type.OK) {
+					this.stop();
+					this.join(threads_);
+					return ret;
+				}
+				
+				long current = this.resumed + this.written.get();
+				if ((current - lastUpd) > 1000000) { // only update the gui every 1MB
+					this.gui.status(this.status, this.size > 0 ? (int) (100.0 * current / this.size) : 0, current);
+					lastUpd = current;
+				}
+				
+				if (new Date().getTime() - lastSave > STATE_SAVE_INTERVAL) {
+					this.saveState();
+					lastSave = new Date().getTime();
+				}
+				
+				if (new Date().getTime() - lastStats > LIVE_STATS_INTERVAL) {
+					this.server.displayLiveTransferStats(this.gui);
+					lastStats = new Date().getTime();
+				}
+				
+				try {
+					this.updateDigest(MAX_DIGEST_CATCH_UP);
+				}
+				catch (IOException e) {
+					// will be done again at the end of the download
+				}
+			}
+		}
+		return Error.Type.OK;
+	}
+	
+	/**
+	 * Feed the digest with the data written after the hashed part, read back from the file
+	 */
+	private void updateDigest(long max_) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(16 * BUFFER_SIZE);
+		long done = 0;
+		while (done < max_) {
+			long from;
+			synchronized (this.digest) {
+				from = this.hashed;
+			}
+			long available = 0;
+			for (Segment segment : this.segments) {
+				if (segment.start <= from && from < segment.end) {
+					available = segment.position - from;
+					break;
+				}
+			}
+			if (available <= 0) {
+				return;
+			}
+			
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), available));
+			int len = this.channel.read(buffer, from);
+			if (len <= 0) {
+				return;
+			}
+			synchronized (this.digest) {
+				if (this.hashed == from) { // otherwise the segment has fed the digest in the meantime
+					this.digest.update(buffer.array(), 0, len);
+					this.hashed += len;
+					this.digest.notifyAll();
+				}
+			}
+			done += len;
+		}
+	}
+	
+	/**
+	 * Stop all the segments, the pending reads are interrupted by closing their connection
+	 */
+	private void stop() {
+		this.stopped = true;
+		for (Segment segment : this.segments) {
+			Response response = segment.response;
+			if (response != null) {
+				try {
+					response.close();
+				}
+				catch (Exception e) {
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return true if the state of a previous download has been read back, the segments are then ready to be continued
+	 */
+	private boolean loadState() {
+		if (this.stateFile.exists() == false) {
+			return false;
+		}
+		
+		long size = -1;
+		String etag = null;
+		List<Segment> segments = new ArrayList<Segment>();
+		try (BufferedReader reader = Files.newBufferedReader(this.stateFile.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] values = line.split(SEPARATOR, -1);
+				if (values.length == 2 && "size".equals(values[0])) {
+					size = Long.parseLong(values[1]);
+				}
+				else if (values.length == 2 && "etag".equals(values[0])) {
+					etag = values[1].isEmpty() ? null : values[1];
+				}
+				else if (values.length == 4 && "segment".equals(values[0])) {
+					Segment segment = new Segment(Long.parseLong(values[1]), Long.parseLong(values[3]));
+					segment.position = Long.parseLong(values[2]);
+					segments.add(segment);
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e) {
+			this.log.debug(this.job.getLogCheckPoint(), "FileDownload::loadState failed to read " + this.stateFile + " (" + e + ")");
+			return false;
+		}
+		
+		if (size <= 0 || segments.isEmpty() || this.file.length() != size) {
+			return false;
+		}
+		long resumed = 0;
+		for (Segment segment : segments) {
+			if (segment.start < 0 || segment.position < segment.start || segment.end < segment.position || segment.end > size) {
+				return false;
+			}
+			resumed += segment.position - segment.start;
+		}
+		
+		this.size = size;
+		this.etag = etag;
+		this.rangeSupported = true;
+		this.segments.addAll(segments);
+		this.resumed = resumed;
+		return true;
+	}
+	
+	/**
+	 * Save the progress of the segments, only what is on the disk is recorded
+	 */
+	private void saveState() {
+		if (this.rangeSupported == false || this.channel == null) {
+			return;
+		}
+		
+		// the positions are read before the flush, the data before them is on the disk once force() returns
+		StringBuilder content = new StringBuilder();
+		content.append("size").append(SEPARATOR).append(this.size).append("\n");
+		content.append("etag").append(SEPARATOR).append(this.etag == null ? "" : this.etag.replace(SEPARATOR, " ")).append("\n");
+		for (Segment segment : this.segments) {
+			content.append("segment").append(SEPARATOR).append(segment.start).append(SEPARATOR).append(segment.position).append(SEPARATOR).append(segment.end)
+					.append("\n");
+		}
+		
+		File temp = new File(this.stateFile.getAbsolutePath() + ".partial");
+		try {
+			this.channel.force(false);
+			try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+				writer.write(content.toString());
+			}
+			Files.move(temp.toPath(), this.stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			this.log.debug(this.job.getLogCheckPoint(), "FileDownload::saveState failed to save the state of " + this.file + " (" + e + ")");
+			temp.delete();
+		}
+	}
+	
+	private void join(List<Thread> threads_) {
+		for (Thread thread : threads_) {
+			try {
+				thread.join(5000);
+			}
+			catch (InterruptedException e) {
+			}
+		}
+	}
+	
+	/**
+	 * Read the file in order, as it's downloaded: a read waits for the data to be hashed, the end of the stream is the end of a successful
+	 * download
+	 */
+	private class OrderedInputStream extends InputStream {
+		private final RandomAccessFile input;
+		private long position;
+		
+		OrderedInputStream() throws IOException {
+			this.input = new RandomAccessFile(FileDownload.this.file, "r");
+			this.position = 0;
+		}
+		
+		@Override public int read() throws IOException {
+			byte[] buffer = new byte[1];
+			return this.read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xff;
+		}
+		
+		@Override public int read(byte[] buffer_, int offset_, int length_) throws IOException {
+			if (length_ == 0) {
+				return 0;
+			}
+			
+			long available;
+			synchronized (FileDownload.this.digest) {
+				while (FileDownload.this.hashed <= this.position && FileDownload.this.finished == false) {
+					try {
+						FileDownload.this.digest.wait();
+					}
+					catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+				available = FileDownload.this.hashed - this.position;
+				if (available <= 0) {
+					if (FileDownload.this.result == Error.Type.OK) {
+						return -1;
+					}
+					throw new IOException("Download of " + FileDownload.this.file.getName() + " stopped");
+				}
+			}
+			
+			this.input.seek(this.position);
+			int len = this.input.read(buffer_, offset_, (int) Math.min(length_, available));
+			if (len > 0) {
+				this.position += len;
+			}
+			return len;
+		}
+		
+		@Override public void close() throws IOException {
+			this.input.close();
+		}
+	}
+	
+	private static class Segment {
+		private final long start;
+		private final long end; // excluded
+		private volatile long position; // next byte to write
+		private volatile Response response;
+		private int attempts;
+		private IOException error;
+		
+		Segment(long start_, long end_) {
+			this.start = start_;
+			this.end = end_;
+			this.position = start_;
+			this.response = null;
+			this.attempts = 0;
+			this.error = null;
+		}
+	}
+}
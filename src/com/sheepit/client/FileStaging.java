@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.sheepit.client.os.OS;
+
+/**
+ * Put a file of the shared downloads directory in the working directory without copying its data if possible. The cheapest way available is
+ * used: a copy-on-write clone (reflink, on btrfs, xfs, APFS, ...), a hard link (same file system), a symbolic link (the archive is then
+ * extracted straight from the shared directory, it's never written through the link) and only as the last resort a full copy.
+ *
+ * A clone or a hard link keeps the data readable even if the file is removed from the shared directory by another client.
+ */
+public class FileStaging {
+	public enum Strategy {
+		REFLINK, HARD_LINK, SYMBOLIC_LINK, COPY
+	}
+	
+	private static final Map<Strategy, long[]> stats = new EnumMap<Strategy, long[]>(Strategy.class); // number of files and bytes, by strategy
+	
+	/**
+	 * Create destination_ with the content of source_, it's only visible once complete
+	 *
+	 * @return how the file has been staged
+	 * @throws IOException if even the copy failed
+	 */
+	public static Strategy stage(File source_, File destination_, Log log_) throws IOException {
+		File temp = new File(destination_.getAbsolutePath() + ".staging");
+		temp.delete();
+		
+		Strategy strategy = stageTo(source_, temp, log_);
+		try {
+			Files.move(temp.toPath(), destination_.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+		
+		long size = source_.length();
+		synchronized (stats) {
+			long[] values = stats.get(strategy);
+			if (values == null) {
+				values = new long[2];
+				stats.put(strategy, values);
+			}
+			values[0]++;
+			values[1] += size;
+		}
+		log_.debug("FileStaging::stage " + source_ + " to " + destination_ + " with " + strategy + " (" + size + " bytes), " + getSummary());
+		return strategy;
+	}
+	
+	/**
+	 * @return for each strategy used, the number of files and bytes staged since the start of the client
+	 */
+	public static String getSummary() {
+		StringBuilder summary = new StringBuilder();
+		synchronized (stats) {
+			for (Map.Entry<Strategy, long[]> entry : stats.entrySet()) {
+				if (summary.length() > 0) {
+					summary.append(", ");
+				}
+				summary.append(String.format("%s: %d files %d bytes", entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+			}
+		}
+		return summary.toString();
+	}
+	
+	private static Strategy stageTo(File source_, File temp_, Log log_) throws IOException {
+		if (OS.getOS().cloneFile(source_, temp_)) {
+			return Strategy.REFLINK;
+		}
+		
+		try {
+			Files.createLink(temp_.toPath(), source_.toPath());
+			return Strategy.HARD_LINK;
+		}
+		catch (IOException | UnsupportedOperationException | SecurityException e) {
+			log_.debug("FileStaging::stageTo unable to create a hard link to " + source_ + " (" + e + ")");
+		}
+		
+		try {
+			Files.createSymbolicLink(temp_.toPath(), source_.getAbsoluteFile().toPath());
+			return Strategy.SYMBOLIC_LINK;
+		}
+		catch (IOException | UnsupportedOperationException | SecurityException e) { // needs a privilege on Windows
+			log_.debug("FileStaging::stageTo unable to create a symbolic link to " + source_ + " (" + e + ")");
+		}
+		
+		Files.copy(source_.toPath(), temp_.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return Strategy.COPY;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.util.Date;
+
+import com.sheepit.client.Error.Type;
+
+/**
+ * Decide how long the client waits before requesting a new job after an error.
+ *
+ * An error of the renderer (crash, render killed) is specific to the job, so a new job can be requested right away. Any other error might
+ * come from the machine or the network: the delay doubles on each consecutive error, up to 5 minutes, and is reset once a frame has been
+ * rendered.
+ */
+public class JobRequestPolicy {
+	private static final long FIRST_DELAY = 15 * 1000; // in ms
+	private static final long MAX_DELAY = 5 * 60 * 1000; // in ms
+	
+	private int consecutiveErrors;
+	private long nextRequestTime; // timestamp in ms
+	
+	public JobRequestPolicy() {
+		this.consecutiveErrors = 0;
+		this.nextRequestTime = 0;
+	}
+	
+	public synchronized void errorOccurred(Error.Type error_) {
+		if (error_ == Type.RENDERER_CRASHED || error_ == Type.RENDERER_KILLED_BY_USER || error_ == Type.RENDERER_KILLED_BY_USER_OVER_TIME
+				|| error_ == Type.RENDERER_KILLED_BY_SERVER) {
+			return;
+		}
+		
+		long delay = Math.min(MAX_DELAY, FIRST_DELAY << Math.min(this.consecutiveErrors, 10));
+		this.consecutiveErrors++;
+		this.nextRequestTime = Math.max(this.nextRequestTime, new Date().getTime() + delay);
+	}
+	
+	public synchronized void frameRendered() {
+		this.consecutiveErrors = 0;
+		this.nextRequestTime = 0;
+	}
+	
+	/**
+	 * @return the time to wait (in ms) before requesting a new job, 0 if it can be done right away
+	 */
+	public synchronized long getWaitBeforeNextRequest() {
+		return Math.max(0, this.nextRequestTime - new Date().getTime());
+	}
+}
@@ -19,27 +19,107 @@
 
 package com.sheepit.client;
 
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * The log of the client, split by checkpoints (a render, an upload...) so the log of a failed one can be sent to the server.
+ *
+ * Each checkpoint has a bounded memory usage (see LogCheckPoint) and the oldest ones are removed when there are too many, in case an error
+ * path forgot to remove its checkpoint.
+ *
+ * Logging doesn't wait for the output: the threads only put the message and its time in a preallocated ring buffer, without lock nor
+ * allocation. A single thread formats the lines and writes them in the checkpoints, on the standard output (--verbose) and in the log file.
+ * If the ring buffer is full (a very slow standard output for example), the new messages are dropped and only their number is logged.
+ */
 public class Log {
+	private static final int MAX_CHECKPOINTS = 64;
+	private static final int BUFFER_SIZE = 16 * 1024; // in messages, a power of 2
+	private static final long IDLE_WAIT = 100; // in ms, how long the writing thread sleeps when there is nothing to write (it's woken up on new messages)
+	private static final long FLUSH_TIMEOUT = 2000; // in ms
+	private static final long LOG_FILE_MAX_SIZE = 10 * 1024 * 1024; // in bytes, then it's rotated
+	private static final int LOG_FILES = 3; // kept after rotation, file.1 being the most recent
+	private static final int STDOUT_BATCH = 64 * 1024; // in chars, the standard output is written by batches
+	
+	private static final String DEBUG = "debug";
+	private static final String INFO = "info";
+	private static final String ERROR = "error";
+	
 	private static Log instance = null;
 	
-	private Map<Integer, ArrayList<String>> checkpoints = new HashMap<Integer, ArrayList<String>>();
-	private int lastCheckPoint;
-	private DateFormat dateFormat;
+	private final Map<Integer, LogCheckPoint> checkpoints = new LinkedHashMap<Integer, LogCheckPoint>(); // oldest first
+	private volatile int lastCheckPoint;
 	
 	private boolean printStdOut;
+	private Configuration configuration;
+	
+	// the ring buffer, written by many threads and read by the writing thread only
+	private final Message[] messages;
+	private final AtomicLong claimed; // sequence of the next message to write in the buffer
+	private volatile long consumed; // sequence of the next message to read from the buffer
+	private final AtomicLong dropped;
+	private volatile boolean idle; // the writing thread is waiting for messages
+	private final Thread writer;
 	
-	private Log(boolean print_) {
+	// only used by the writing thread
+	private DateFormat dateFormat;
+	private long lastSecond;
+	private String lastDate;
+	private StringBuilder stdout;
+	private File logFile;
+	private Writer logFileWriter;
+	private long logFileSize;
+	
+	private Log(boolean print_, Configuration configuration_) {
 		this.printStdOut = print_;
+		this.configuration = configuration_;
 		this.lastCheckPoint = 0;
-		this.checkpoints.put(this.lastCheckPoint, new ArrayList<String>());
+		this.checkpoints.put(this.lastCheckPoint, new LogCheckPoint(this.spillDirectory()));
+		
+		this.messages = new Message[BUFFER_SIZE];
+		for (int i = 0; i < BUFFER_SIZE; i++) {
+			this.messages[i] = new Message();
+		}
+		this.claimed = new AtomicLong(0);
+		this.consumed = 0;
+		this.dropped = new AtomicLong(0);
+		this.idle = false;
+		
 		this.dateFormat = new SimpleDateFormat("dd-MM HH:mm:ss");
+		this.lastSecond = -1;
+		this.lastDate = null;
+		this.stdout = new StringBuilder(STDOUT_BATCH + 1024);
+		this.logFile = configuration_ != null ? configuration_.getLogFile() : null;
+		this.logFileWriter = null;
+		this.logFileSize = 0;
+		
+		this.writer = new Thread("Log") {
+			@Override public void run() {
+				write();
+			}
+		};
+		this.writer.setDaemon(true);
+		this.writer.start();
+		
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override public void run() {
+				waitForWriter(true); // the writing thread is a daemon, it doesn't prevent the exit
+			}
+		});
 	}
 	
 	public void debug(String msg_) {
@@ -47,7 +127,7 @@ public class Log {
 	}
 
 	public void debug(int point_, String msg_) {
-		this.append(point_, "debug", msg_);
+		this.append(point_, DEBUG, msg_);
 	}
 	
 	public void info(String msg_) {
@@ -55,7 +135,7 @@ public class Log {
 	}
 	
 	public void info(int point_, String msg_) {
-		this.append(point_, "info", msg_);
+		this.append(point_, INFO, msg_);
 	}
 	
 	public void error(String msg_) {
@@ -63,46 +143,222 @@ public class Log {
 	}
 
 	public void error(int point_, String msg_) {
-		this.append(point_, "error", msg_);
+		this.append(point_, ERROR, msg_);
 	}
 	
-	private synchronized void append(int point_, String level_, String msg_) {
-		String line = null;
+	private void append(int point_, String level_, String msg_) {
+		if (msg_ == null || msg_.isEmpty()) {
+			return;
+		}
 		
-		try {
-			int checkpointToWrite = (point_ > 0 ? point_ : this.lastCheckPoint);
+		long time = System.currentTimeMillis();
+		int checkpointToWrite = (point_ != 0 ? point_ : this.lastCheckPoint); // the ids come from the clock, they can be negative
+		long sequence;
+		do {
+			sequence = this.claimed.get();
+			if (sequence - this.consumed >= BUFFER_SIZE) {
+				this.dropped.incrementAndGet();
+				return;
+			}
+		}
+		while (this.claimed.compareAndSet(sequence, sequence + 1) == false);
+		
+		Message message = this.messages[(int) (sequence & (BUFFER_SIZE - 1))];
+		message.time = time;
+		message.checkpoint = checkpointToWrite;
+		message.level = level_;
+		message.text = msg_;
+		message.sequence = sequence; // published, the writing thread can read it
+		
+		if (this.idle) {
+			LockSupport.unpark(this.writer);
+		}
+	}
+	
+	/**
+	 * Wait until the messages logged so far are written (or for a few seconds)
+	 */
+	public void flush() {
+		this.waitForWriter(false);
+	}
+	
+	/**
+	 * @param idle_ also wait for the outputs to be flushed, it can take longer if other messages keep coming
+	 */
+	private void waitForWriter(boolean idle_) {
+		long target = this.claimed.get();
+		long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+		while ((this.consumed < target || (idle_ && this.idle == false)) && System.currentTimeMillis() < deadline && Thread.currentThread() != this.writer) {
+			LockSupport.unpark(this.writer);
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+		}
+	}
+	
+	public int newCheckPoint() {
+		synchronized (this.checkpoints) {
+			int time = (int) (new Date().getTime());
+			while (time == 0 || this.checkpoints.containsKey(time)) { // each slot has its own, even when two of them start in the same ms
+				time++;
+			}
+			this.checkpoints.put(time, new LogCheckPoint(this.spillDirectory()));
+			this.lastCheckPoint = time;
 			
-			if (msg_.equals("") == false) {
-				line = this.dateFormat.format(new java.util.Date()) + " (" + level_ + ") " + msg_;
-				if (this.checkpoints.containsKey(checkpointToWrite) && this.checkpoints.get(checkpointToWrite) != null) {
-					this.checkpoints.get(checkpointToWrite).add(line);
+			Iterator<Map.Entry<Integer, LogCheckPoint>> it = this.checkpoints.entrySet().iterator();
+			while (this.checkpoints.size() > MAX_CHECKPOINTS && it.hasNext()) {
+				Map.Entry<Integer, LogCheckPoint> oldest = it.next();
+				if (oldest.getKey() != time) {
+					oldest.getValue().close();
+					it.remove();
 				}
-				if (this.printStdOut == true) {
-					System.out.println(line);
+			}
+			return time;
+		}
+	}
+	
+	/**
+	 * @return the log of the checkpoint, to stream with LogCheckPoint.writeTo, null if it doesn't exist (anymore). The messages logged so
+	 * far are in it.
+	 */
+	public LogCheckPoint getForCheckPoint(int point_) {
+		this.flush();
+		synchronized (this.checkpoints) {
+			return this.checkpoints.get(point_);
+		}
+	}
+	
+	public void removeCheckPoint(int point_) {
+		LogCheckPoint checkpoint;
+		synchronized (this.checkpoints) {
+			checkpoint = this.checkpoints.remove(point_);
+		}
+		if (checkpoint != null) {
+			checkpoint.close();
+		}
+	}
+	
+	private File spillDirectory() {
+		return this.configuration != null ? this.configuration.getWorkingDirectory() : null;
+	}
+	
+	/**
+	 * Loop of the writing thread
+	 */
+	private void write() {
+		while (true) {
+			long sequence = this.consumed;
+			Message message = this.messages[(int) (sequence & (BUFFER_SIZE - 1))];
+			if (message.sequence != sequence) { // nothing new
+				this.writeDropped();
+				this.flushOutputs();
+				this.idle = true;
+				if (message.sequence != sequence) { // a message published before the flag was set would not wake us up
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(IDLE_WAIT));
 				}
+				this.idle = false;
+				continue;
+			}
+			
+			try {
+				this.writeLine(message.checkpoint, this.format(message.time, message.level, message.text));
 			}
+			catch (Exception e) {
+				// Nothing to do here. Just allow the thread to continue
+			}
+			message.text = null;
+			this.consumed = sequence + 1; // the slot can be reused
 		}
-		catch (Exception e) {
-			// Nothing to do here. Just allow the thread to continue
+	}
+	
+	private String format(long time_, String level_, String text_) {
+		long second = time_ / 1000;
+		if (second != this.lastSecond) {
+			this.lastDate = this.dateFormat.format(new Date(time_));
+			this.lastSecond = second;
 		}
+		return this.lastDate + " (" + level_ + ") " + text_;
 	}
 	
-	public int newCheckPoint() {
-		int time = (int) (new Date().getTime());
-		this.checkpoints.put(time, new ArrayList<String>());
-		this.lastCheckPoint = time;
-		return this.lastCheckPoint;
+	private void writeLine(int point_, String line_) {
+		LogCheckPoint checkpoint;
+		synchronized (this.checkpoints) {
+			checkpoint = this.checkpoints.get(point_);
+		}
+		if (checkpoint != null) {
+			checkpoint.add(line_);
+		}
+		if (this.printStdOut) {
+			this.stdout.append(line_).append(System.lineSeparator());
+			if (this.stdout.length() > STDOUT_BATCH) {
+				this.flushOutputs();
+			}
+		}
+		if (this.logFile != null) {
+			this.writeInLogFile(line_);
+		}
 	}
 	
-	public ArrayList<String> getForCheckPoint(int point_) {
-		return this.checkpoints.get(point_);
+	private void writeDropped() {
+		long count = this.dropped.getAndSet(0);
+		if (count > 0) {
+			this.writeLine(this.lastCheckPoint, this.format(System.currentTimeMillis(), ERROR, "Log::write the log was too slow, " + count + " messages dropped"));
+		}
 	}
 	
-	public void removeCheckPoint(int point_) {
+	private void writeInLogFile(String line_) {
 		try {
-			this.checkpoints.remove(point_);
+			if (this.logFileWriter == null) {
+				this.logFileSize = this.logFile.length();
+				this.logFileWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.logFile, true), StandardCharsets.UTF_8));
+			}
+			this.logFileWriter.write(line_);
+			this.logFileWriter.write('\n');
+			this.logFileSize += line_.length() + 1;
+			if (this.logFileSize > LOG_FILE_MAX_SIZE) {
+				this.rotateLogFile();
+			}
+		}
+		catch (IOException e) {
+			System.err.println("Log::writeInLogFile failed to write in " + this.logFile + " (" + e + "), the log file is disabled");
+			this.closeLogFile();
+			this.logFile = null;
+		}
+	}
+	
+	private void rotateLogFile() throws IOException {
+		this.closeLogFile();
+		new File(this.logFile.getPath() + "." + LOG_FILES).delete();
+		for (int i = LOG_FILES - 1; i >= 1; i--) {
+			new File(this.logFile.getPath() + "." + i).renameTo(new File(this.logFile.getPath() + "." + (i + 1)));
+		}
+		if (this.logFile.renameTo(new File(this.logFile.getPath() + ".1")) == false) {
+			throw new IOException("failed to rotate the log file");
+		}
+	}
+	
+	private void closeLogFile() {
+		if (this.logFileWriter != null) {
+			try {
+				this.logFileWriter.close();
+			}
+			catch (IOException e) {
+			}
+			this.logFileWriter = null;
 		}
-		catch (UnsupportedOperationException e) {
+	}
+	
+	private void flushOutputs() {
+		if (this.stdout.length() > 0) {
+			System.out.print(this.stdout);
+			System.out.flush();
+			this.stdout.setLength(0);
+		}
+		if (this.logFileWriter != null) {
+			try {
+				this.logFileWriter.flush();
+			}
+			catch (IOException e) {
+				this.closeLogFile();
+			}
 		}
 	}
 	
@@ -112,16 +368,32 @@ public class Log {
 			if (config != null) {
 				print = config.isPrintLog();
 			}
-			instance = new Log(print);
+			instance = new Log(print, config);
 		}
 		return instance;
 	}
 	
 	public static synchronized void printCheckPoint(int point_) {
 		Log log = Log.getInstance(null);
-		ArrayList<String> logs = log.getForCheckPoint(point_);
-		for (String alog : logs) {
-			System.out.println(alog);
+		LogCheckPoint logs = log.getForCheckPoint(point_);
+		if (logs != null) {
+			try {
+				logs.writeTo(System.out);
+				System.out.flush();
+			}
+			catch (IOException e) {
+			}
 		}
 	}
+	
+	/**
+	 * A slot of the ring buffer, reused
+	 */
+	private static class Message {
+		private volatile long sequence = -1; // of the message in the slot, written last
+		private long time; // in ms
+		private int checkpoint;
+		private String level;
+		private String text;
+	}
 }
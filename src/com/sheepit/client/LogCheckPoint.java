@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The lines logged for a checkpoint, with a bounded memory usage.
+ *
+ * The first lines (what was started) and the last ones (how it ended) are kept in memory. The lines in between are spilled to a file in
+ * batches, each batch is a gzip member of its own so the file can be read back while it's still written. The file is opened once and read
+ * from the same descriptor, it doesn't matter if the working directory is cleaned in the meantime (on unix). If the file can't be written,
+ * the lines in between are dropped and only their number is kept.
+ */
+public class LogCheckPoint {
+	private static final int HEAD_LINES = 500;
+	private static final int TAIL_LINES = 2000;
+	private static final int SEGMENT_LINES = 1000; // spilled together
+	private static final byte[] NEW_LINE = { '\n' };
+	
+	private File directory;
+	private List<String> head;
+	private String[] tail; // ring buffer
+	private int tailStart;
+	private int tailSize;
+	private List<String> pending; // out of the tail, waiting to be spilled
+	
+	private File spillFile;
+	private RandomAccessFile spill;
+	private List<long[]> segments; // offset and length in the spill file
+	private long spillSize;
+	private boolean spillFailed;
+	private long dropped; // lines that couldn't be spilled
+	private boolean closed;
+	
+	/**
+	 * @param directory_ where to spill the lines, the temporary directory of the system if null
+	 */
+	public LogCheckPoint(File directory_) {
+		this.directory = directory_;
+		this.head = new ArrayList<String>();
+		this.tail = new String[TAIL_LINES];
+		this.tailStart = 0;
+		this.tailSize = 0;
+		this.pending = new ArrayList<String>();
+		this.spillFile = null;
+		this.spill = null;
+		this.segments = new ArrayList<long[]>();
+		this.spillSize = 0;
+		this.spillFailed = false;
+		this.dropped = 0;
+		this.closed = false;
+	}
+	
+	public synchronized void add(String line_) {
+		if (this.closed) { // removed while the line was waiting to be written
+			return;
+		}
+		if (this.head.size() < HEAD_LINES) {
+			this.head.add(line_);
+			return;
+		}
+		
+		if (this.tailSize == TAIL_LINES) {
+			this.pending.add(this.tail[this.tailStart]);
+			this.tail[this.tailStart] = line_;
+			this.tailStart = (this.tailStart + 1) % TAIL_LINES;
+			if (this.pending.size() >= SEGMENT_LINES) {
+				this.spill();
+			}
+		}
+		else {
+			this.tail[(this.tailStart + this.tailSize) % TAIL_LINES] = line_;
+			this.tailSize++;
+		}
+	}
+	
+	/**
+	 * Write all the lines of the checkpoint, one per line
+	 */
+	public synchronized void writeTo(OutputStream out_) throws IOException {
+		for (String line : this.head) {
+			writeLine(out_, line);
+		}
+		
+		if (this.spill != null) {
+			FileChannel channel = this.spill.getChannel();
+			byte[] buffer = new byte[64 * 1024];
+			for (long[] segment : this.segments) {
+				ByteBuffer compressed = ByteBuffer.allocate((int) segment[1]);
+				while (compressed.hasRemaining()) {
+					if (channel.read(compressed, segment[0] + compressed.position()) < 0) {
+						throw new IOException("LogCheckPoint::writeTo spill file " + this.spillFile + " is truncated");
+					}
+				}
+				InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.array()));
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					out_.write(buffer, 0, read);
+				}
+				in.close();
+			}
+		}
+		if (this.dropped > 0) {
+			writeLine(out_, "... " + this.dropped + " lines not kept ...");
+		}
+		
+		for (String line : this.pending) {
+			writeLine(out_, line);
+		}
+		for (int i = 0; i < this.tailSize; i++) {
+			writeLine(out_, this.tail[(this.tailStart + i) % TAIL_LINES]);
+		}
+	}
+	
+	/**
+	 * Free the memory and remove the spill file, the checkpoint can't be used anymore
+	 */
+	public synchronized void close() {
+		if (this.spill != null) {
+			try {
+				this.spill.close();
+			}
+			catch (IOException e) {
+			}
+			this.spill = null;
+		}
+		if (this.spillFile != null) {
+			this.spillFile.delete();
+			this.spillFile = null;
+		}
+		this.head.clear();
+		this.pending.clear();
+		this.tail = new String[0];
+		this.tailStart = 0;
+		this.tailSize = 0;
+		this.segments.clear();
+		this.closed = true;
+	}
+	
+	private void spill() {
+		try {
+			if (this.spillFailed) {
+				throw new IOException("spill file not available");
+			}
+			if (this.spill == null) {
+				if (this.directory != null && this.directory.isDirectory() == false) {
+					this.directory = null;
+				}
+				this.spillFile = File.createTempFile("log_", ".gz", this.directory);
+				this.spill = new RandomAccessFile(this.spillFile, "rw");
+			}
+			
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+			OutputStream out = new GZIPOutputStream(bytes);
+			for (String line : this.pending) {
+				writeLine(out, line);
+			}
+			out.close();
+			
+			ByteBuffer segment = ByteBuffer.wrap(bytes.toByteArray());
+			FileChannel channel = this.spill.getChannel();
+			while (segment.hasRemaining()) {
+				channel.write(segment, this.spillSize + segment.position());
+			}
+			this.segments.add(new long[] { this.spillSize, segment.limit() });
+			this.spillSize += segment.limit();
+		}
+		catch (IOException e) {
+			// can't be logged, the caller is the log. Their number is written instead of the lines
+			this.spillFailed = true;
+			this.dropped += this.pending.size();
+		}
+		this.pending.clear();
+	}
+	
+	private static void writeLine(OutputStream out_, String line_) throws IOException {
+		out_.write(line_.getBytes(StandardCharsets.UTF_8));
+		out_.write(NEW_LINE);
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Persistent index of the md5 of the archives, so they are only hashed again when they have changed.
+ *
+ * An entry is only used if the path, size, modification date and file key (the inode on unix) of the file are still the same. The index is
+ * saved next to the archives each time a file had to be hashed.
+ */
+public class MD5Index {
+	public static final String FILENAME = "md5_index.txt";
+	private static final String SEPARATOR = "\t";
+	
+	private File file;
+	private Map<String, Entry> entries; // by absolute path
+	
+	public MD5Index(File file_) {
+		this.file = file_;
+		this.entries = new HashMap<String, Entry>();
+		this.load();
+	}
+	
+	public File getFile() {
+		return this.file;
+	}
+	
+	/**
+	 * @return the md5 of the file, only computed if the file is not in the index or has changed. Empty string if the file can't be read
+	 */
+	public String md5(File file_) {
+		String path = file_.getAbsolutePath();
+		Entry current;
+		synchronized (this) {
+			try {
+				current = new Entry(file_);
+			}
+			catch (IOException e) {
+				this.entries.remove(path);
+				return "";
+			}
+			
+			Entry known = this.entries.get(path);
+			if (known != null && known.isSameFile(current)) {
+				return known.md5;
+			}
+		}
+		
+		// not holding the lock, hashing a large archive would stall the other slots looking up theirs
+		current.md5 = Utils.md5(path);
+		if (current.md5.isEmpty() == false) {
+			synchronized (this) {
+				try {
+					if (current.isSameFile(new Entry(file_))) { // not modified while it was hashed
+						this.entries.put(path, current);
+						this.save();
+					}
+				}
+				catch (IOException e) {
+				}
+			}
+		}
+		return current.md5;
+	}
+	
+	/**
+	 * Record the md5 of a file which has just been written
+	 */
+	public synchronized void add(File file_, String md5_) {
+		try {
+			Entry entry = new Entry(file_);
+			entry.md5 = md5_;
+			this.entries.put(file_.getAbsolutePath(), entry);
+			this.save();
+		}
+		catch (IOException e) {
+			// it will be hashed when needed
+		}
+	}
+	
+	private void load() {
+		if (this.file.exists() == false) {
+			return;
+		}
+		
+		try (BufferedReader reader = Files.newBufferedReader(this.file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] values = line.split(SEPARATOR, -1);
+				if (values.length == 5) {
+					try {
+						this.entries.put(values[4], new Entry(values[0], Long.parseLong(values[1]), Long.parseLong(values[2]), values[3]));
+					}
+					catch (NumberFormatException e) {
+						// broken line, the file will be hashed again
+					}
+				}
+			}
+		}
+		catch (IOException e) {
+			this.entries.clear();
+		}
+	}
+	
+	private void save() {
+		// no need to keep the files which have been removed
+		Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+		while (it.hasNext()) {
+			if (new File(it.next().getKey()).exists() == false) {
+				it.remove();
+			}
+		}
+		
+		File temp = new File(this.file.getAbsolutePath() + ".partial");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+					Entry value = entry.getValue();
+					writer.write(value.md5 + SEPARATOR + value.size + SEPARATOR + value.lastModified + SEPARATOR + value.key + SEPARATOR + entry.getKey());
+					writer.newLine();
+				}
+			}
+			Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			// the index is only an optimization, the files will be hashed again next time
+			temp.delete();
+		}
+	}
+	
+	private static class Entry {
+		private String md5;
+		private final long size;
+		private final long lastModified;
+		private final String key;
+		
+		Entry(String md5_, long size_, long lastModified_, String key_) {
+			this.md5 = md5_;
+			this.size = size_;
+			this.lastModified = lastModified_;
+			this.key = key_;
+		}
+		
+		Entry(File file_) throws IOException {
+			BasicFileAttributes attributes = Files.readAttributes(file_.toPath(), BasicFileAttributes.class);
+			this.md5 = null;
+			this.size = attributes.size();
+			this.lastModified = attributes.lastModifiedTime().toMillis();
+			this.key = attributes.fileKey() == null ? "" : attributes.fileKey().toString().replace(SEPARATOR, " ");
+		}
+		
+		boolean isSameFile(Entry other_) {
+			return this.size == other_.size && this.lastModified == other_.lastModified && this.key.equals(other_.key);
+		}
+	}
+}
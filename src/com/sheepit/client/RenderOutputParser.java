@@ -0,0 +1,618 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import com.sheepit.client.Error.Type;
+import lombok.Getter;
+
+/**
+ * Parse the output of the renderer, one line at a time.
+ *
+ * All the information (version, progress, memory peak, remaining time and errors) is extracted in a single scan of the line, without regex
+ * nor date parsing: at high sample counts the renderer prints thousands of lines per second and their parsing competes with it for the cpu.
+ * The results are only valid for the last parsed line, except the version which is kept once found.
+ */
+public class RenderOutputParser {
+	private static final String VERSION = "Blender ";
+	private static final String[] PROGRESS = { "Rendered ", "Path Tracing Tile ", "Rendering " };
+	private static final String[] PROGRESS_END = { " Tiles", " samples", "," };
+	private static final String PEAK = "peak";
+	private static final String REMAINING = "remaining:";
+	private static final String PART = " Part ";
+	private static final String TILE = " Tile ";
+	
+	// in order of priority, the first one found in the line is reported, with samples of the renderer's output they come from
+	private static final ErrorSignature[] ERRORS = {
+			// Fra:151 Mem:405.91M (0.00M, Peak 633.81M) | Mem:470.26M, Peak:470.26M | Scene, RenderLayer | Updating Device | Writing constant memory
+			// Fra:151 Mem:405.91M (0.00M, Peak 633.81M) | Mem:470.26M, Peak:470.26M | Scene, RenderLayer | Path Tracing Tile 0/135, Sample 0/200
+			// Fra:151 Mem:405.91M (0.00M, Peak 633.81M) | Mem:470.82M, Peak:470.82M | Scene, RenderLayer | Path Tracing Tile 1/135, Sample 0/200
+			// CUDA error: Out of memory in cuLaunchKernel(cuPathTrace, xblocks , yblocks, 1, xthreads, ythreads, 1, 0, 0, args, 0)
+			// Refer to the Cycles GPU rendering documentation for possible solutions:
+			// http://www.blender.org/manual/render/cycles/gpu_rendering.html
+			// Fra:151 Mem:405.91M (0.00M, Peak 633.81M) | Remaining:09:26.57 | Mem:470.26M, Peak:470.82M | Scene, RenderLayer | Path Tracing Tile 1/135, Sample 200/200
+			// Fra:151 Mem:405.91M (0.00M, Peak 633.81M) | Remaining:00:00.06 | Mem:470.50M, Peak:470.82M | Scene, RenderLayer | Path Tracing Tile 134/135, Sample 0/200
+			// Fra:151 Mem:405.91M (0.00M, Peak 633.81M) | Remaining:00:00.03 | Mem:470.26M, Peak:470.82M | Scene, RenderLayer | Path Tracing Tile 134/135, Sample 200/200
+			// Fra:151 Mem:405.91M (0.00M, Peak 633.81M) | Remaining:00:00.03 | Mem:470.50M, Peak:470.82M | Scene, RenderLayer | Path Tracing Tile 135/135, Sample 0/200
+			// Fra:151 Mem:405.91M (0.00M, Peak 633.81M) | Mem:470.26M, Peak:470.82M | Scene, RenderLayer | Path Tracing Tile 135/135, Sample 200/200
+			// Error: CUDA error: Out of memory in cuLaunchKernel(cuPathTrace, xblocks , yblocks, 1, xthreads, ythreads, 1, 0, 0, args, 0)
+			// Fra:151 Mem:405.91M (0.00M, Peak 633.81M) | Mem:470.26M, Peak:470.82M | Scene, RenderLayer | Cancel | CUDA error: Out of memory in cuLaunchKernel(cuPathTrace, xblocks , yblocks, 1, xthreads, ythreads, 1, 0, 0, args, 0)
+			// Fra:151 Mem:405.89M (0.00M, Peak 633.81M) Sce: Scene Ve:0 Fa:0 La:0
+			// Saved: /tmp/xx/26885_0151.png Time: 00:04.67 (Saving: 00:00.22)
+			// Blender quit
+			new ErrorSignature("CUDA error: Out of memory", Type.RENDERER_OUT_OF_VIDEO_MEMORY),
+			
+			// renderer output
+			// CUDA error at cuCtxCreate: Out of memory
+			// Refer to the Cycles GPU rendering documentation for possible solutions:
+			// http://www.blender.org/manual/render/cycles/gpu_rendering.html
+			// found bundled python: /tmp/aaaa/bbbb/2.78/python
+			// read blend: /tmp/aaaa/bbbb/compute-method.blend
+			// Fra:340 Mem:7.25M (0.00M, Peak 7.25M) | Time:00:00.13 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Sun
+			// Fra:340 Mem:7.25M (0.00M, Peak 7.25M) | Time:00:00.13 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Plane
+			// Fra:340 Mem:7.25M (0.00M, Peak 7.26M) | Time:00:00.13 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Cube
+			// Fra:340 Mem:7.25M (0.00M, Peak 7.26M) | Time:00:00.13 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Camera
+			// Fra:340 Mem:7.25M (0.00M, Peak 7.26M) | Time:00:00.13 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Initializing
+			// Fra:340 Mem:7.25M (0.00M, Peak 7.26M) | Time:00:00.13 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Loading render kernels (may take a few minutes the first time)
+			// Fra:340 Mem:7.25M (0.00M, Peak 7.26M) | Time:00:00.13 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Error | CUDA error at cuCtxCreate: Out of memory
+			// Error: CUDA error at cuCtxCreate: Out of memory
+			// Fra:340 Mem:7.25M (0.00M, Peak 7.26M) | Time:00:00.13 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Waiting for render to start
+			// Fra:340 Mem:7.25M (0.00M, Peak 7.26M) | Time:00:00.13 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Cancel | CUDA error at cuCtxCreate: Out of memory
+			// CUDA error: Invalid value in cuCtxDestroy(cuContext)
+			// Fra:340 Mem:7.25M (0.00M, Peak 7.26M) | Time:00:00.13 | Sce: Scene Ve:0 Fa:0 La:0
+			// Blender quit
+			// end of rendering
+			new ErrorSignature("CUDA error at cuCtxCreate: Out of memory", Type.RENDERER_OUT_OF_VIDEO_MEMORY),
+			
+			// Fra:420 Mem:102.41M (0.00M, Peak 215.18M) | Remaining:01:08.44 | Mem:176.04M, Peak:199.23M | Scene, RenderLayer | Path Tracing Tile 2/24, Sample 10/14
+			// Fra:420 Mem:102.41M (0.00M, Peak 215.18M) | Remaining:01:07.08 | Mem:175.48M, Peak:199.23M | Scene, RenderLayer | Path Tracing Tile 2/24, Sample 14/14
+			// Fra:420 Mem:102.41M (0.00M, Peak 215.18M) | Remaining:01:07.11 | Mem:176.04M, Peak:199.23M | Scene, RenderLayer | Path Tracing Tile 3/24, Sample 0/14
+			// CUDA error: Launch exceeded timeout in cuCtxSynchronize()
+			// Refer to the Cycles GPU rendering documentation for possible solutions:
+			// http://www.blender.org/manual/render/cycles/gpu_rendering.html
+			// CUDA error: Launch exceeded timeout in cuMemcpyDtoH((uchar*)mem.data_pointer + offset, (CUdeviceptr)(mem.device_pointer + offset), size)
+			// Fra:420 Mem:102.41M (0.00M, Peak 215.18M) | Remaining:03:04.30 | Mem:176.04M, Peak:199.23M | Scene, RenderLayer | Path Tracing Tile 3/24, Sample 1/14
+			// CUDA error: Launch exceeded timeout in cuMemcpyDtoH((uchar*)mem.data_pointer + offset, (CUdeviceptr)(mem.device_pointer + offset), size)
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// Fra:420 Mem:102.41M (0.00M, Peak 215.18M) | Remaining:02:01.87 | Mem:175.48M, Peak:199.23M | Scene, RenderLayer | Path Tracing Tile 3/24, Sample 14/14
+			// CUDA error: Launch exceeded timeout in cuMemAlloc(&device_pointer, size)
+			// CUDA error: Launch exceeded timeout in cuMemAlloc(&device_pointer, size)
+			// Fra:420 Mem:102.41M (0.00M, Peak 215.18M) | Remaining:02:01.87 | Mem:176.04M, Peak:199.23M | Scene, RenderLayer | Path Tracing Tile 4/24, Sample 0/14
+			// Fra:420 Mem:102.41M (0.00M, Peak 215.18M) | Remaining:01:27.05 | Mem:176.04M, Peak:199.23M | Scene, RenderLayer | Path Tracing Tile 4/24, Sample 14/14
+			// CUDA error: Launch exceeded timeout in cuMemAlloc(&device_pointer, size)
+			// CUDA error: Launch exceeded timeout in cuMemAlloc(&device_pointer, size)
+			// Fra:420 Mem:102.41M (0.00M, Peak 215.18M) | Remaining:00:00.75 | Mem:185.66M, Peak:199.23M | Scene, RenderLayer | Path Tracing Tile 24/24, Sample 0/14
+			// Fra:420 Mem:102.41M (0.00M, Peak 215.18M) | Mem:185.66M, Peak:199.23M | Scene, RenderLayer | Path Tracing Tile 24/24, Sample 14/14
+			// Error: CUDA error: Launch exceeded timeout in cuCtxSynchronize()
+			// Fra:420 Mem:102.41M (0.00M, Peak 215.18M) | Mem:185.66M, Peak:199.23M | Scene, RenderLayer | Cancel | CUDA error: Launch exceeded timeout in cuCtxSynchronize()
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// CUDA error: Launch exceeded timeout in cuMemFree(cuda_device_ptr(mem.device_pointer))
+			// Mem:109.00M (0.00M, Peak 215.18M) | Elapsed 00:00.00 | Tree Compositing Nodetree, Tile 1-6
+			// Mem:109.00M (0.00M, Peak 215.18M) | Elapsed 00:00.00 | Tree Compositing Nodetree, Tile 2-6
+			// Mem:109.00M (0.00M, Peak 215.18M) | Elapsed 00:00.00 | Tree Compositing Nodetree, Tile 3-6
+			// Mem:109.00M (0.00M, Peak 215.18M) | Elapsed 00:00.00 | Tree Compositing Nodetree, Tile 4-6
+			// Mem:109.00M (0.00M, Peak 215.18M) | Elapsed 00:00.00 | Tree Compositing Nodetree, Tile 5-6
+			// Mem:109.00M (0.00M, Peak 215.18M) | Elapsed 00:00.00 | Tree Compositing Nodetree, Tile 6-6
+			// Fra:420 Mem:109.00M (0.00M, Peak 215.18M) Sce: Scene Ve:0 Fa:0 La:0
+			// Saved: /tmp/xx/1234_0420.bmp Time: 00:18.29 (Saving: 00:00.06)
+			// Blender quit
+			// end of rendering
+			new ErrorSignature("CUDA error: Launch exceeded timeout in", Type.RENDERER_OUT_OF_VIDEO_MEMORY),
+			
+			// Fra:83 Mem:1201.77M (0.00M, Peak 1480.94M) | Time:00:59.30 | Mem:894.21M, Peak:894.21M | color 3, RenderLayer | Updating Mesh | Copying Strands to device
+			// Fra:83 Mem:1316.76M (0.00M, Peak 1480.94M) | Time:01:02.84 | Mem:1010.16M, Peak:1010.16M | color 3, RenderLayer | Cancel | CUDA error: Invalid value in cuTexRefSetAddress(NULL, texref, cuda_device_ptr(mem.device_pointer), size)
+			// Error: CUDA error: Invalid value in cuTexRefSetAddress(NULL, texref, cuda_device_ptr(mem.device_pointer), size)
+			// Fra:83 Mem:136.82M (0.00M, Peak 1480.94M) | Time:01:03.40 | Sce: color 3 Ve:0 Fa:0 La:0
+			// Blender quit
+			// CUDA error: Invalid value in cuTexRefSetAddress(NULL, texref, cuda_device_ptr(mem.device_pointer), size)
+			// Refer to the Cycles GPU rendering documentation for possible solutions:
+			// http://www.blender.org/manual/render/cycles/gpu_rendering.html
+			new ErrorSignature("CUDA error: Invalid value in cuTexRefSetAddress(", Type.RENDERER_OUT_OF_VIDEO_MEMORY),
+			
+			// Fra:60 Mem:278.24M (0.00M, Peak 644.01M) | Time:05:08.95 | Remaining:00:03.88 | Mem:210.79M, Peak:210.79M | Scene, W Laser | Path Tracing Tile 16/18, Sample 36/36
+			// Fra:60 Mem:278.24M (0.00M, Peak 644.01M) | Time:05:08.96 | Remaining:00:00.82 | Mem:211.04M, Peak:211.04M | Scene, W Laser | Path Tracing Tile 17/18, Sample 36/36
+			// Fra:60 Mem:278.24M (0.00M, Peak 644.01M) | Time:05:08.96 | Mem:211.11M, Peak:211.11M | Scene, W Laser | Path Tracing Tile 18/18
+			// Error: CUDA error: Launch failed in cuCtxSynchronize(), line 1372
+			// Fra:60 Mem:278.24M (0.00M, Peak 644.01M) | Time:05:08.96 | Mem:211.11M, Peak:211.11M | Scene, W Laser | Cancel | CUDA error: Launch failed in cuCtxSynchronize(), line 1372
+			// Cycles shader graph connect: can only connect closure to closure (Invert.Color to Mix Shader.Closure1).
+			// Cycles shader graph connect: can only connect closure to closure (Mix Shader.Closure to Bump.Normal).
+			// CUDA error: Launch failed in cuCtxSynchronize(), line 1372
+			// Refer to the Cycles GPU rendering documentation for possible solutions:
+			// https://docs.blender.org/manual/en/dev/render/cycles/gpu_rendering.html
+			// CUDA error: Launch failed in cuMemcpyDtoH((uchar*)mem.data_pointer + offset, (CUdeviceptr)(mem.device_pointer + offset), size), line 591
+			// CUDA error: Launch failed in cuMemcpyDtoH((uchar*)mem.data_pointer + offset, (CUdeviceptr)(mem.device_pointer + offset), size), line 591
+			// CUDA error: Launch failed in cuMemFree(cuda_device_ptr(mem.device_pointer)), line 615
+			new ErrorSignature("CUDA error: Launch failed in cuCtxSynchronize()", Type.RENDERER_OUT_OF_VIDEO_MEMORY),
+			
+			// Fra:124 Mem:434.77M (0.00M, Peak 435.34M) | Time:25:50.81 | Remaining:01:10:05.16 | Mem:175.14M, Peak:265.96M | Scene, RenderLayer | Path Tracing Tile 34/135, Sample 800/800, Denoised 17 tiles
+			// Fra:124 Mem:432.71M (0.00M, Peak 435.34M) | Time:25:50.81 | Remaining:01:10:04.95 | Mem:264.84M, Peak:266.90M | Scene, RenderLayer | Path Tracing Tile 34/135, Sample 800/800, Denoised 18 tiles
+			// Fra:124 Mem:434.77M (0.00M, Peak 435.34M) | Time:25:50.82 | Remaining:01:07:20.83 | Mem:266.90M, Peak:266.90M | Scene, RenderLayer | Path Tracing Tile 35/135, Sample 800/800, Denoised 18 tiles
+			// Fra:124 Mem:432.71M (0.00M, Peak 435.34M) | Time:25:50.82 | Remaining:01:07:20.63 | Mem:356.60M, Peak:358.67M | Scene, RenderLayer | Path Tracing Tile 35/135, Sample 800/800, Denoised 19 tiles
+			// Fra:124 Mem:434.77M (0.00M, Peak 435.34M) | Time:25:50.82 | Remaining:01:04:45.63 | Mem:358.67M, Peak:358.67M | Scene, RenderLayer | Path Tracing Tile 36/135, Sample 800/800, Denoised 19 tiles
+			// Fra:124 Mem:432.71M (0.00M, Peak 435.34M) | Time:25:50.82 | Remaining:01:04:45.45 | Mem:448.37M, Peak:450.43M | Scene, RenderLayer | Path Tracing Tile 36/135, Sample 800/800, Denoised 20 tiles
+			// Fra:124 Mem:434.77M (0.00M, Peak 435.34M) | Time:25:50.83 | Remaining:01:02:18.83 | Mem:450.43M, Peak:450.43M | Scene, RenderLayer | Path Tracing Tile 37/135, Sample 800/800, Denoised 20 tiles
+			// CUDA error: Illegal address in cuCtxSynchronize(), line 1372
+			// Refer to the Cycles GPU rendering documentation for possible solutions:
+			new ErrorSignature("CUDA error: Illegal address in cuCtxSynchronize()", Type.RENDERER_OUT_OF_VIDEO_MEMORY),
+			
+			// found bundled python: /tmp/xx/2.73/python
+			// read blend: /tmp/xx/compute-method.blend
+			// Fra:340 Mem:7.64M (0.00M, Peak 8.23M) | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Sun
+			// Fra:340 Mem:7.64M (0.00M, Peak 8.23M) | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Plane
+			// Fra:340 Mem:7.64M (0.00M, Peak 8.23M) | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Cube
+			// Fra:340 Mem:7.64M (0.00M, Peak 8.23M) | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Camera
+			// Fra:340 Mem:7.64M (0.00M, Peak 8.23M) | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Initializing
+			// Fra:340 Mem:7.64M (0.00M, Peak 8.23M) | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Loading render kernels (may take a few minutes the first time)
+			// CUDA device supported only with compute capability 2.0 or up, found 1.2.
+			// Refer to the Cycles GPU rendering documentation for possible solutions:
+			// http://www.blender.org/manual/render/cycles/gpu_rendering.html
+			// Fra:340 Mem:7.64M (0.00M, Peak 8.23M) | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Error | CUDA device supported only with compute capability 2.0 or up, found 1.2.
+			// Error: CUDA device supported only with compute capability 2.0 or up, found 1.2.
+			// Fra:340 Mem:7.64M (0.00M, Peak 8.23M) | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Waiting for render to start
+			// Fra:340 Mem:7.64M (0.00M, Peak 8.23M) | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Cancel | CUDA device supported only with compute capability 2.0 or up, found 1.2.
+			// Fra:340 Mem:7.64M (0.00M, Peak 8.23M) Sce: Scene Ve:0 Fa:0 La:0
+			// Saved: /tmp/xx/0_0340.png Time: 00:00.12 (Saving: 00:00.03)
+			// Blender quit
+			new ErrorSignature("CUDA device supported only with compute capability", Type.GPU_NOT_SUPPORTED),
+			
+			// Fra:2103 Mem:29.54M (0.00M, Peak 29.54M) | Time:00:00.24 | Mem:1.64M, Peak:1.64M | Scene, RenderLayer | Updating Mesh | Computing attributes
+			// Fra:2103 Mem:29.54M (0.00M, Peak 29.54M) | Time:00:00.24 | Mem:1.64M, Peak:1.64M | Scene, RenderLayer | Updating Mesh | Copying Attributes to device
+			// Fra:2103 Mem:29.54M (0.00M, Peak 29.54M) | Time:00:00.24 | Mem:1.97M, Peak:1.97M | Scene, RenderLayer | Updating Scene BVH | Building
+			// Fra:2103 Mem:29.54M (0.00M, Peak 29.54M) | Time:00:00.24 | Mem:1.97M, Peak:1.97M | Scene, RenderLayer | Updating Scene BVH | Building BVH
+			// Fra:2103 Mem:29.54M (0.00M, Peak 29.54M) | Time:00:00.24 | Mem:1.97M, Peak:1.97M | Scene, RenderLayer | Updating Scene BVH | Looking in BVH cache
+			// Fra:2103 Mem:29.54M (0.00M, Peak 29.54M) | Time:00:00.27 | Mem:1.97M, Peak:1.97M | Scene, RenderLayer | Updating Scene BVH | Packing BVH triangles and strands
+			// Fra:2103 Mem:29.54M (0.00M, Peak 29.54M) | Time:00:00.27 | Mem:1.97M, Peak:1.97M | Scene, RenderLayer | Updating Scene BVH | Packing BVH nodes
+			// Fra:2103 Mem:29.54M (0.00M, Peak 29.54M) | Time:00:00.27 | Mem:1.97M, Peak:1.97M | Scene, RenderLayer | Updating Scene BVH | Writing BVH cache
+			// terminate called after throwing an instance of 'boost::filesystem::filesystem_error'
+			//   what():  boost::filesystem::create_directory: Permission denied: "/var/local/cache"
+			new ErrorSignature("terminate called after throwing an instance of 'boost::filesystem::filesystem_error'", Type.NOOUTPUTFILE),
+			
+			// Fra:80 Mem:1333.02M (0.00M, Peak 1651.23M) | Mem:780.37M, Peak:780.37M | Scene, RenderLayer | Updating Mesh BVH Plane.083 171/2 | Building BVH
+			// Fra:80 Mem:1333.02M (0.00M, Peak 1651.23M) | Mem:780.37M, Peak:780.37M | Scene, RenderLayer | Updating Mesh BVH Mesh 172/2 | Building BVH
+			// Fra:80 Mem:1333.02M (0.00M, Peak 1651.23M) | Mem:780.37M, Peak:780.37M | Scene, RenderLayer | Updating Mesh BVH Mesh 172/2 | Packing BVH triangles and strands
+			// Fra:80 Mem:1333.02M (0.00M, Peak 1651.23M) | Mem:780.37M, Peak:780.37M | Scene, RenderLayer | Updating Mesh BVH Mesh 172/2 | Packing BVH nodes
+			// Fra:80 Mem:1333.02M (0.00M, Peak 1651.23M) | Mem:780.37M, Peak:780.37M | Scene, RenderLayer | Updating Scene BVH | Building
+			// Fra:80 Mem:1333.02M (0.00M, Peak 1651.23M) | Mem:780.37M, Peak:780.37M | Scene, RenderLayer | Updating Scene BVH | Building BVH
+			// terminate called after throwing an instance of 'std::bad_alloc'
+			//   what():  std::bad_alloc
+			new ErrorSignature("terminate called after throwing an instance of 'std::bad_alloc'", Type.RENDERER_OUT_OF_MEMORY),
+			
+			// Fra:7 Mem:1247.01M (0.00M, Peak 1247.01M) | Time:00:28.84 | Mem:207.63M, Peak:207.63M | Scene, RenderLayer | Updating Scene BVH | Building BVH 93%, duplicates 0%terminate called recursively
+			// terminate called after throwing an instance of 'St9bad_alloc'
+			// what(): std::bad_alloc
+			// scandir: Cannot allocate memory
+			new ErrorSignature("what(): std::bad_alloc", Type.RENDERER_OUT_OF_MEMORY),
+			
+			// Fra:638 Mem:342.17M (63.28M, Peak 735.33M) | Time:00:07.65 | Remaining:02:38.28 | Mem:246.91M, Peak:262.16M | scene_top_01_90, chip_top_view_scene_01 | Path Tracing Tile 57/2040, Denoised 0 tiles
+			// Fra:638 Mem:342.32M (63.28M, Peak 735.33M) | Time:00:07.70 | Remaining:02:38.20 | Mem:247.05M, Peak:262.16M | scene_top_01_90, chip_top_view_scene_01 | Path Tracing Tile 58/2040, Denoised 0 tiles
+			// Error: EXCEPTION_ACCESS_VIOLATION
+			new ErrorSignature("EXCEPTION_ACCESS_VIOLATION", Type.RENDERER_CRASHED),
+			
+			// Fatal Python error: Py_Initialize: unable to load the file system codec
+			// ImportError: No module named 'encodings'
+			// Current thread 0x0000388c (most recent call first):
+			new ErrorSignature("Fatal Python error: Py_Initialize", Type.RENDERER_CRASHED_PYTHON_ERROR),
+			
+			// Fra:1 Mem:976.60M (0.00M, Peak 1000.54M) | Time:00:01.34 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Left
+			// Calloc returns null: len=7186416 in CDMLoopUV, total 2145859048
+			// Calloc returns null: len=7186416 in CDMLoopUV, total 2145859048
+			// Malloc returns null: len=3190672 in CDMTexPoly, total 2149293176
+			// Writing: /home/user/.sheepit/LEFT packed.crash.txt
+			new ErrorSignature("Calloc returns null", Type.RENDERER_OUT_OF_MEMORY),
+			
+			// Fra:1 Mem:976.60M (0.00M, Peak 1000.54M) | Time:00:01.34 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Left
+			// Calloc returns null: len=7186416 in CDMLoopUV, total 2145859048
+			// Calloc returns null: len=7186416 in CDMLoopUV, total 2145859048
+			// Malloc returns null: len=3190672 in CDMTexPoly, total 2149293176
+			// Writing: /home/user/.sheepit/LEFT packed.crash.txt
+			new ErrorSignature("Malloc returns null", Type.RENDERER_OUT_OF_MEMORY),
+			
+			// Fra:1 Mem:200.70M (0.00M, Peak 378.15M) | Time:00:01.02 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Sun.001
+			// Fra:1 Mem:200.70M (0.00M, Peak 378.15M) | Time:00:01.02 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Synchronizing object | Sun.002
+			// Fra:1 Mem:200.70M (0.00M, Peak 378.15M) | Time:00:01.02 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Initializing
+			// Fra:1 Mem:200.70M (0.00M, Peak 378.15M) | Time:00:01.02 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Loading render kernels (may take a few minutes the first time)
+			// nvcc fatal   : Value 'sm_61' is not defined for option 'gpu-architecture'
+			// CUDA kernel compilation failed, see console for details.
+			// Refer to the Cycles GPU rendering documentation for possible solutions:
+			// http://www.blender.org/manual/render/cycles/gpu_rendering.html
+			// Compiling CUDA kernel ...
+			// "nvcc" -arch=sm_61 -m64 --cubin "/tmp/cache/c36db40aa5e59f5ea4ff139180353dbc/2.77/scripts/addons/cycles/kernel/kernels/cuda/kernel.cu" -o "/tmp/cache/cycles_kernel_sm61_079195D400571E023CC499D037AB6EE5.cubin" --ptxas-options="-v" --use_fast_math -I"/tmp/cache/c36db40aa5e59f5ea4ff139180353dbc/2.77/scripts/addons/cycles/kernel" -DNVCC -D__KERNEL_CUDA_VERSION__=75
+			// Fra:1 Mem:200.70M (0.00M, Peak 378.15M) | Time:00:01.08 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Error | CUDA kernel compilation failed, see console for details.
+			// Error: CUDA kernel compilation failed, see console for details.
+			// Fra:1 Mem:200.70M (0.00M, Peak 378.15M) | Time:00:01.08 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Waiting for render to start
+			// Fra:1 Mem:200.70M (0.00M, Peak 378.15M) | Time:00:01.08 | Mem:0.00M, Peak:0.00M | Scene, RenderLayer | Cancel | CUDA kernel compilation failed, see console for details.
+			// Fra:1 Mem:147.74M (0.00M, Peak 378.15M) | Time:00:01.12 | Sce: Scene Ve:0 Fa:0 La:0
+			// Saved: '/tmp/cache/8_0001.png'
+			new ErrorSignature("CUDA kernel compilation failed", Type.GPU_NOT_SUPPORTED) };
+	private static final int[][] ERRORS_BY_FIRST_CHAR = new int[128][]; // indexes in ERRORS
+	
+	static {
+		for (int i = 0; i < ERRORS.length; i++) {
+			char c = ERRORS[i].text.charAt(0);
+			int[] previous = ERRORS_BY_FIRST_CHAR[c];
+			int[] indexes = new int[previous == null ? 1 : previous.length + 1];
+			if (previous != null) {
+				System.arraycopy(previous, 0, indexes, 0, previous.length);
+			}
+			indexes[indexes.length - 1] = i;
+			ERRORS_BY_FIRST_CHAR[c] = indexes;
+		}
+	}
+	
+	private String statusKeyword; // " Part " or " Tile ", null if the status is the remaining time
+	private char statusSeparator;
+	private boolean parseRemainingTime;
+	
+	@Getter private String longVersion;
+	@Getter private String shortVersion;
+	@Getter private int progress; // in percent, -1 if not in the line
+	@Getter private long memoryPeak; // in kB, -1 if not in the line
+	@Getter private int remainingTime; // in seconds, -1 if not in the line
+	@Getter private int statusDone; // part or tile just rendered, -1 if not in the line
+	@Getter private int statusTotal;
+	@Getter private Type error;
+	
+	/**
+	 * @param updateRenderingStatusMethod_ how the status is given by the renderer, one of the Job.UPDATE_METHOD_*
+	 */
+	public RenderOutputParser(String updateRenderingStatusMethod_) {
+		this.statusKeyword = null;
+		this.statusSeparator = 0;
+		this.parseRemainingTime = false;
+		if (updateRenderingStatusMethod_ == null || updateRenderingStatusMethod_.equals(Job.UPDATE_METHOD_BY_REMAINING_TIME)) {
+			this.parseRemainingTime = true;
+		}
+		else if (updateRenderingStatusMethod_.equals(Job.UPDATE_METHOD_BLENDER_INTERNAL_BY_PART)) {
+			this.statusKeyword = PART;
+			this.statusSeparator = '-';
+		}
+		else if (updateRenderingStatusMethod_.equals(Job.UPDATE_METHOD_BY_TILE)) {
+			this.statusKeyword = TILE;
+			this.statusSeparator = '/';
+		}
+		this.longVersion = null;
+		this.shortVersion = null;
+		this.reset();
+	}
+	
+	public void parse(String line) {
+		this.reset();
+		
+		boolean remainingSeen = false;
+		int status = -1;
+		int errorIndex = ERRORS.length;
+		int length = line.length();
+		for (int i = 0; i < length; i++) {
+			char c = line.charAt(i);
+			switch (c) {
+				case ' ':
+					if (this.progress == -1) {
+						this.parseProgress(line, i + 1);
+					}
+					if (this.statusKeyword != null && line.startsWith(this.statusKeyword, i)) {
+						status = i + this.statusKeyword.length(); // only the last one counts
+					}
+					break;
+				case 'B':
+					if (this.longVersion == null && line.startsWith(VERSION, i)) {
+						this.parseVersion(line, i + VERSION.length());
+					}
+					break;
+				case 'P':
+				case 'p':
+					if (line.regionMatches(true, i, PEAK, 0, PEAK.length())) {
+						this.parseMemoryPeak(line, i + PEAK.length());
+					}
+					break;
+				case 'R':
+				case 'r':
+					if (this.parseRemainingTime && remainingSeen == false && line.regionMatches(true, i, REMAINING, 0, REMAINING.length())) {
+						remainingSeen = true;
+						this.parseRemainingTime(line, i + REMAINING.length());
+					}
+					break;
+			}
+			
+			if (c < ERRORS_BY_FIRST_CHAR.length && ERRORS_BY_FIRST_CHAR[c] != null) {
+				for (int index : ERRORS_BY_FIRST_CHAR[c]) {
+					if (index < errorIndex && line.startsWith(ERRORS[index].text, i)) {
+						errorIndex = index;
+					}
+				}
+			}
+		}
+		
+		if (status != -1) {
+			this.parseStatus(line, status);
+		}
+		if (errorIndex < ERRORS.length) {
+			this.error = ERRORS[errorIndex].type;
+		}
+	}
+	
+	private void reset() {
+		this.progress = -1;
+		this.memoryPeak = -1;
+		this.remainingTime = -1;
+		this.statusDone = -1;
+		this.statusTotal = -1;
+		this.error = Type.OK;
+	}
+	
+	/**
+	 * "Blender 2.83.4 (hash ...)"
+	 */
+	private void parseVersion(String line, int start) {
+		int end = skipDigits(line, start);
+		if (end == start || end - start > 3 || end == line.length() || line.charAt(end) != '.') {
+			return;
+		}
+		int minor = end + 1;
+		end = Math.min(skipDigits(line, minor), minor + 3);
+		this.longVersion = line.substring(start);
+		this.shortVersion = line.substring(start, end);
+	}
+	
+	/**
+	 * "Path Tracing Tile 34/135, Sample 800/800", "Rendered 12/120 Tiles" or "Rendering 12 / 128 samples"
+	 */
+	private void parseProgress(String line, int start) {
+		for (String keyword : PROGRESS) {
+			if (line.startsWith(keyword, start)) {
+				int position = start + keyword.length();
+				int end = skipDigits(line, position);
+				long done = parseInt(line, position, end);
+				if (done == -1) {
+					return;
+				}
+				position = skipOneWhitespace(line, end);
+				if (position == line.length() || line.charAt(position) != '/') {
+					return;
+				}
+				position = skipOneWhitespace(line, position + 1);
+				end = skipDigits(line, position);
+				long total = parseInt(line, position, end);
+				if (total <= 0) {
+					return;
+				}
+				for (String suffix : PROGRESS_END) {
+					if (line.startsWith(suffix, end)) {
+						this.progress = (int) (done * 100 / total);
+						return;
+					}
+				}
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * "Peak 633.81M)" or "Peak:470.26M |"
+	 */
+	private void parseMemoryPeak(String line, int start) {
+		if (start == line.length()) {
+			return;
+		}
+		int end;
+		if (line.charAt(start) == ' ') {
+			end = line.indexOf(')', start);
+		}
+		else if (line.charAt(start) == ':') {
+			end = line.indexOf('|', start);
+		}
+		else {
+			return;
+		}
+		if (end == -1) {
+			return;
+		}
+		
+		long memory = parseSize(line, start + 1, end);
+		if (memory != -1) {
+			memory /= 1000; // internal use of ram is in kB
+			if (memory > this.memoryPeak) {
+				this.memoryPeak = memory;
+			}
+		}
+	}
+	
+	/**
+	 * "Remaining:09:26.57 |" or "Remaining:01:10:05.16 |"
+	 */
+	private void parseRemainingTime(String line, int start) {
+		int end = line.indexOf(' ', start);
+		if (end == -1) {
+			return;
+		}
+		
+		int duration = 0;
+		int fields = 0;
+		int position = start;
+		while (position < end) {
+			int fieldEnd = skipDigits(line, position);
+			long value = parseInt(line, position, fieldEnd);
+			if (value == -1) {
+				return;
+			}
+			duration = duration * 60 + (int) value;
+			fields++;
+			if (fieldEnd == end || line.charAt(fieldEnd) == '.') { // the hundredths of second are ignored
+				break;
+			}
+			if (line.charAt(fieldEnd) != ':') {
+				return;
+			}
+			position = fieldEnd + 1;
+		}
+		if (fields == 2 || fields == 3) {
+			this.remainingTime = duration;
+		}
+	}
+	
+	/**
+	 * "Part 12-35" or "Tile 34/135", at the end of the line
+	 */
+	private void parseStatus(String line, int start) {
+		int end = skipDigits(line, start);
+		long done = parseInt(line, start, end);
+		if (done == -1 || end == line.length() || line.charAt(end) != this.statusSeparator) {
+			return;
+		}
+		long total = parseInt(line, end + 1, line.length());
+		if (total == -1) {
+			return;
+		}
+		this.statusDone = (int) done;
+		this.statusTotal = (int) total;
+	}
+	
+	private static int skipDigits(String line, int start) {
+		int end = start;
+		while (end < line.length() && line.charAt(end) >= '0' && line.charAt(end) <= '9') {
+			end++;
+		}
+		return end;
+	}
+	
+	private static int skipOneWhitespace(String line, int position) {
+		if (position < line.length() && Character.isWhitespace(line.charAt(position))) {
+			return position + 1;
+		}
+		return position;
+	}
+	
+	/**
+	 * @return the value of the digits between start and end, -1 if there is none, something else or if it's too large
+	 */
+	private static long parseInt(String line, int start, int end) {
+		if (start == end || end - start > 9) {
+			return -1;
+		}
+		long value = 0;
+		for (int i = start; i < end; i++) {
+			char c = line.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+	
+	/**
+	 * Same as Utils.parseNumber on a part of the line ("633.81M" or "1,5 G" for example)
+	 *
+	 * @return the size in bytes, -1 if it's not a number
+	 */
+	private static long parseSize(String line, int start, int end) {
+		int position = start;
+		while (position < end && Character.isWhitespace(line.charAt(position))) {
+			position++;
+		}
+		
+		double value = 0;
+		double decimal = 0; // weight of the next digit after the decimal separator, 0 before it
+		boolean digits = false;
+		for (; position < end; position++) {
+			char c = line.charAt(position);
+			if (c >= '0' && c <= '9') {
+				digits = true;
+				if (decimal == 0) {
+					value = value * 10 + (c - '0');
+				}
+				else {
+					value += (c - '0') * decimal;
+					decimal /= 10;
+				}
+			}
+			else if (c == '.' || c == ',') {
+				if (decimal != 0) {
+					return -1;
+				}
+				decimal = 0.1;
+			}
+			else {
+				break;
+			}
+		}
+		if (digits == false) {
+			return -1;
+		}
+		
+		while (position < end && Character.isWhitespace(line.charAt(position))) {
+			position++;
+		}
+		long scale = 1;
+		if (position < end) {
+			switch (line.charAt(position)) {
+				case 'T':
+				case 't':
+					scale = 1000L * 1000 * 1000 * 1000;
+					break;
+				case 'G':
+				case 'g':
+					scale = 1000 * 1000 * 1000;
+					break;
+				case 'M':
+				case 'm':
+					scale = 1000 * 1000;
+					break;
+				case 'K':
+				case 'k':
+					scale = 1000;
+					break;
+			}
+		}
+		return Math.round(value * scale);
+	}
+	
+	private static class ErrorSignature {
+		private final String text;
+		private final Type type;
+		
+		ErrorSignature(String text_, Type type_) {
+			this.text = text_;
+			this.type = type_;
+		}
+	}
+}
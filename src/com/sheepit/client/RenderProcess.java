@@ -19,6 +19,7 @@
 
 package com.sheepit.client;
 
+import com.sheepit.client.os.CGroup;
 import lombok.Data;
 
 import java.util.Date;
@@ -28,15 +29,19 @@ import java.util.Date;
 	private long endTime;
 	private int remainingDuration; // in seconds
 	private long memoryUsed; // in kB
+	private long cpuTime; // in ms, of the renderer and its children, -1 if unknown
 	private int coresUsed;
 	private Process process;
+	private CGroup cgroup; // null if the renderer is not in its own cgroup
 	
 	public RenderProcess() {
 		process = null;
 		startTime = -1;
 		endTime = -1;
 		memoryUsed = 0;
+		cpuTime = -1;
 		coresUsed = 0;
+		cgroup = null;
 		remainingDuration = 0;
 	}
 	
@@ -56,6 +61,28 @@ import java.util.Date;
 	public void finish() {
 		endTime = new Date().getTime();
 		process = null;
+		if (cgroup != null) {
+			updateFromCGroup();
+			cgroup.remove(); // the children left by the renderer are killed
+			cgroup = null;
+		}
+	}
+	
+	/**
+	 * Update the memory (the highest measured) and cpu time used with the accounting of the cgroup of the renderer
+	 */
+	public void updateFromCGroup() {
+		CGroup group = cgroup;
+		if (group != null) {
+			long memory = group.getMemoryUsed();
+			if (memory > memoryUsed) {
+				memoryUsed = memory;
+			}
+			long cpu = group.getCpuTime();
+			if (cpu != -1) {
+				cpuTime = cpu;
+			}
+		}
 	}
 	
 	public void start() {
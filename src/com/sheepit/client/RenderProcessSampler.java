@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.sheepit.client.os.OS;
+import com.sheepit.client.os.ProcessSample;
+
+/**
+ * Measure at a regular interval the resources used by the renderer and its children processes while it's rendering.
+ *
+ * The memory measured updates the memory used by the render, and the renderer is killed as soon as it's over the maximum memory of the
+ * slot, even if it prints nothing. The measures are kept for the error report: when the series is full, one measure out of two is removed
+ * and the next ones are kept less often, so it covers the whole render with a bounded size.
+ */
+public class RenderProcessSampler {
+	private static final int MAX_SAMPLES = 240;
+	
+	private Log log;
+	private RenderProcess process;
+	private long maxMemory; // in kB, -1 if there is no limit
+	private long interval; // in ms, 0 if disabled
+	private Timer timer;
+	private List<ProcessSample> samples;
+	private int stride; // one measure out of stride is kept
+	private int skipped;
+	private volatile boolean memoryExceeded;
+	
+	public RenderProcessSampler(Log log_, RenderProcess process_, long maxMemory_, long interval_) {
+		this.log = log_;
+		this.process = process_;
+		this.maxMemory = maxMemory_;
+		this.interval = interval_;
+		this.timer = null;
+		this.samples = new ArrayList<ProcessSample>();
+		this.stride = 1;
+		this.skipped = 0;
+		this.memoryExceeded = false;
+	}
+	
+	public synchronized void start() {
+		if (this.interval <= 0 || this.timer != null) {
+			return;
+		}
+		this.timer = new Timer("RenderProcessSampler", true);
+		this.timer.schedule(new TimerTask() {
+			@Override public void run() {
+				if (sample() == false) {
+					cancel();
+				}
+			}
+		}, this.interval, this.interval);
+	}
+	
+	public synchronized void stop() {
+		if (this.timer != null) {
+			this.timer.cancel();
+			this.timer = null;
+		}
+	}
+	
+	/**
+	 * @return true if the renderer has been killed because it was using too much memory
+	 */
+	public boolean isMemoryExceeded() {
+		return this.memoryExceeded;
+	}
+	
+	public synchronized List<ProcessSample> getSamples() {
+		return new ArrayList<ProcessSample>(this.samples);
+	}
+	
+	/**
+	 * @return the measures, one per line, for the error report
+	 */
+	public synchronized String summary() {
+		StringBuilder summary = new StringBuilder("time (s)  processes  memory (MB)  swap (MB)  read (MB)  written (MB)\n");
+		for (ProcessSample sample : this.samples) {
+			summary.append(String.format("%8d  %9d  %11.1f  %9.1f  %9.1f  %12.1f\n", (sample.getTime() - this.process.getStartTime()) / 1000, sample.getProcesses(),
+					sample.getMemory() / 1024.0, sample.getSwap() / 1024.0, sample.getReadBytes() / 1024.0 / 1024.0, sample.getWrittenBytes() / 1024.0 / 1024.0));
+		}
+		return summary.toString();
+	}
+	
+	/**
+	 * @return false if the renderer can't be measured (anymore)
+	 */
+	private boolean sample() {
+		Process renderer = this.process.getProcess();
+		if (renderer == null) {
+			return false;
+		}
+		ProcessSample sample = OS.getOS().sample(renderer);
+		if (sample == null) {
+			return false;
+		}
+		
+		if (sample.getMemory() > this.process.getMemoryUsed()) {
+			this.process.setMemoryUsed(sample.getMemory());
+		}
+		this.process.updateFromCGroup();
+		this.record(sample);
+		
+		if (this.maxMemory != -1 && sample.getMemory() > this.maxMemory && this.memoryExceeded == false) {
+			this.log.debug("Blocking render because process ram used (" + sample.getMemory() + "k, " + sample.getSwap() + "k swapped, " + sample.getProcesses()
+					+ " processes) is over user setting (" + this.maxMemory + "k)");
+			this.memoryExceeded = true;
+			OS.getOS().kill(renderer);
+			return false;
+		}
+		return true;
+	}
+	
+	private synchronized void record(ProcessSample sample_) {
+		this.skipped++;
+		if (this.skipped < this.stride) {
+			return;
+		}
+		this.skipped = 0;
+		
+		if (this.samples.size() >= MAX_SAMPLES) {
+			List<ProcessSample> kept = new ArrayList<ProcessSample>(MAX_SAMPLES);
+			for (int i = 0; i < this.samples.size(); i += 2) {
+				kept.add(this.samples.get(i));
+			}
+			this.samples = kept;
+			this.stride *= 2;
+		}
+		this.samples.add(sample_);
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.File;
+
+import com.sheepit.client.Configuration.ComputeType;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A render slot renders one frame at a time with its own share of the host's cores and memory, in its own working directory.
+ * All the slots of a client share the same server session, upload queue and archive cache.
+ */
+@Getter @Setter public class RenderSlot {
+	private int id;
+	private int nbSlots;
+	private int cores; // -1 when not set, ie the renderer will use every core
+	private long maxMemory; // in kB, -1 when not set
+	private ComputeType computeMethod;
+	private File workingDirectory;
+	private Gui gui;
+	private Job renderingJob;
+	private Job prefetchingJob; // the job being prepared by the prefetch thread, null once it's ready (or has failed)
+	private Job prefetchedJob;
+	private boolean prefetchedSceneAcquired; // the SceneCache keeps the scene of the prefetched job until the job is started
+	private Thread prefetchThread;
+	
+	public RenderSlot(int id_, int nbSlots_, int cores_, long maxMemory_, ComputeType computeMethod_, File workingDirectory_, Gui gui_) {
+		this.id = id_;
+		this.nbSlots = nbSlots_;
+		this.cores = cores_;
+		this.maxMemory = maxMemory_;
+		this.computeMethod = computeMethod_;
+		this.workingDirectory = workingDirectory_;
+		this.gui = gui_;
+		this.renderingJob = null;
+		this.prefetchingJob = null;
+		this.prefetchedJob = null;
+		this.prefetchedSceneAcquired = false;
+		this.prefetchThread = null;
+	}
+	
+	public String toString() {
+		return String.format("RenderSlot (id %d/%d, cores %d, maxMemory %dk, computeMethod %s, workingDirectory '%s')", this.id, this.nbSlots, this.cores,
+				this.maxMemory, this.computeMethod, this.workingDirectory.getAbsolutePath());
+	}
+}
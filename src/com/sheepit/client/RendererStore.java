@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sheepit.client.exception.FermeExceptionNoSpaceLeftOnDevice;
+import com.sheepit.client.os.OS;
+
+/**
+ * Extracted renderers, kept in the storage directory so they survive the restarts of the client and are shared by the projects (and the
+ * clients using the same storage directory).
+ *
+ * A renderer is extracted in a staging directory, with a manifest of its files (size, modification time and md5), then renamed to its md5. A
+ * directory is either missing or complete, and it's never modified once installed so it can be used by several clients at the same time. The
+ * sizes and modification times of the manifest are checked the first time a renderer is used by this client, the md5 only after a failed render
+ * (see invalidate). A damaged renderer is removed and installed again. The installation is done by
+ * one client at a time (DownloadLock), the others wait for it and reuse the result.
+ *
+ * A client holds a shared lock on "md5.use" while it renders with a renderer (see acquire), a renderer is only removed with the exclusive
+ * lock, ie when no client is using it.
+ */
+public class RendererStore {
+	public static final String DIRECTORY = "renderers";
+	private static final String MANIFEST = "sheepit_manifest.txt";
+	private static final int MANIFEST_VERSION = 2;
+	private static final String SEPARATOR = "\t";
+	private static final String USE_EXTENSION = ".use";
+	private static final long LOCK_TIMEOUT = 30 * 60 * 1000; // in ms
+	
+	private File directory;
+	private Log log;
+	private Set<String> verified; // md5 of the renderers checked since the start of the client
+	private Set<String> suspected; // md5 of the renderers to check with the md5 of their files
+	private Map<String, Use> uses; // md5 of the renderers used by the slots of this client
+	
+	public RendererStore(File directory_, Log log_) {
+		this.directory = directory_;
+		this.log = log_;
+		this.verified = Collections.synchronizedSet(new HashSet<String>());
+		this.suspected = Collections.synchronizedSet(new HashSet<String>());
+		this.uses = new HashMap<String, Use>();
+		this.directory.mkdirs();
+		
+		// leftovers of removals interrupted by a crash
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().contains(".trash")) {
+					Utils.delete(file);
+				}
+			}
+		}
+	}
+	
+	public File getDirectory() {
+		return this.directory;
+	}
+	
+	public File getRendererDirectory(String md5_) {
+		return new File(this.directory, md5_);
+	}
+	
+	/**
+	 * @return true if the directory is a renderer of the store
+	 */
+	public boolean contains(File directory_) {
+		return this.directory.equals(directory_.getAbsoluteFile().getParentFile());
+	}
+	
+	/**
+	 * @return true if the renderer is installed and not damaged (checked with its manifest the first time), a damaged renderer is removed
+	 */
+	public boolean isInstalled(String md5_) {
+		File renderer = this.getRendererDirectory(md5_);
+		if (renderer.exists() == false) {
+			return false;
+		}
+		if (this.verified.contains(md5_)) {
+			return new File(renderer, OS.getOS().getRenderBinaryPath()).exists();
+		}
+		
+		long start = System.currentTimeMillis();
+		boolean full = this.suspected.contains(md5_);
+		String problem = this.check(renderer, full);
+		if (problem != null) {
+			this.log.error("RendererStore::isInstalled renderer " + md5_ + " is damaged (" + problem + "), removing it");
+			if (this.delete(md5_) == false) {
+				this.log.error("RendererStore::isInstalled renderer " + md5_ + " is used by another client, it can't be removed");
+			}
+			return false;
+		}
+		this.log.debug("RendererStore::isInstalled renderer " + md5_ + " checked in " + (System.currentTimeMillis() - start) + "ms" + (full ? " (md5)" : ""));
+		this.suspected.remove(md5_);
+		this.verified.add(md5_);
+		return true;
+	}
+	
+	/**
+	 * Extract the archive of the renderer into the store, unless another client has already done it
+	 *
+	 * @return 0 if the renderer is installed, the error of Utils.unzipFileIntoDirectory otherwise
+	 */
+	public int install(String md5_, File archive_, ArchiveCache cache_, Gui gui_) throws FermeExceptionNoSpaceLeftOnDevice {
+		DownloadLock lock = this.lock(md5_, gui_);
+		if (lock == null) {
+			return -1;
+		}
+		try {
+			if (this.isInstalled(md5_)) {
+				return 0;
+			}
+			
+			File staging = new File(this.directory, md5_ + ".partial");
+			Utils.delete(staging);
+			staging.mkdir();
+			int ret = Utils.unzipFileIntoDirectory(archive_.getAbsolutePath(), staging.getAbsolutePath(), null, cache_, this.log);
+			if (ret != 0) {
+				Utils.delete(staging);
+				return ret;
+			}
+			return this.commit(md5_, staging) ? 0 : -1;
+		}
+		finally {
+			lock.release();
+		}
+	}
+	
+	/**
+	 * Install a renderer already extracted (during its download) in directory_, which is removed if the renderer is already installed
+	 *
+	 * @return true if the renderer is installed
+	 */
+	public boolean adopt(String md5_, File directory_, Gui gui_) {
+		DownloadLock lock = this.lock(md5_, gui_);
+		if (lock == null) {
+			Utils.delete(directory_);
+			return false;
+		}
+		try {
+			if (this.isInstalled(md5_)) {
+				Utils.delete(directory_);
+				return true;
+			}
+			return this.commit(md5_, directory_);
+		}
+		finally {
+			lock.release();
+		}
+	}
+	
+	/**
+	 * Remove a renderer, unless it's being installed or used by a slot of this client or another client
+	 *
+	 * @return false if it's being installed or used
+	 */
+	public boolean remove(String md5_) {
+		DownloadLock lock = DownloadLock.tryAcquire(this.getRendererDirectory(md5_), this.log);
+		if (lock == null) {
+			return false;
+		}
+		try {
+			return this.delete(md5_);
+		}
+		finally {
+			lock.release();
+		}
+	}
+	
+	/**
+	 * Keep the renderer from being removed (by any client) until release is called. Each call must be followed by a release.
+	 */
+	public void acquire(String md5_) {
+		synchronized (this.uses) {
+			Use use = this.uses.get(md5_);
+			if (use == null) {
+				use = new Use();
+				try {
+					use.file = new RandomAccessFile(new File(this.directory, md5_ + USE_EXTENSION), "rw");
+					use.lock = use.file.getChannel().lock(0, Long.MAX_VALUE, true); // only waits for a removal being done
+				}
+				catch (IOException e) {
+					this.log.error("RendererStore::acquire failed to lock renderer " + md5_ + " (" + e + "), another client could remove it while it's used");
+				}
+				this.uses.put(md5_, use);
+			}
+			use.count++;
+		}
+	}
+	
+	public void release(String md5_) {
+		synchronized (this.uses) {
+			Use use = this.uses.get(md5_);
+			if (use == null) {
+				return;
+			}
+			use.count--;
+			if (use.count == 0) {
+				this.uses.remove(md5_);
+				use.close();
+			}
+		}
+	}
+	
+	/**
+	 * Check the renderer with its manifest again before its next use (a render has failed in a way a damaged renderer could explain)
+	 */
+	public void invalidate(String md5_) {
+		this.suspected.add(md5_);
+		this.verified.remove(md5_);
+	}
+	
+	/**
+	 * Remove a renderer nobody uses. It's first renamed, with the exclusive lock, so the other clients don't use a partially removed renderer.
+	 *
+	 * @return false if it's used by this client or another one
+	 */
+	private boolean delete(String md5_) {
+		File renderer = this.getRendererDirectory(md5_);
+		File trash = new File(this.directory, md5_ + ".trash" + System.nanoTime());
+		synchronized (this.uses) {
+			if (this.uses.containsKey(md5_)) {
+				return false;
+			}
+			try (RandomAccessFile file = new RandomAccessFile(new File(this.directory, md5_ + USE_EXTENSION), "rw")) {
+				FileLock lock = file.getChannel().tryLock();
+				if (lock == null) {
+					return false;
+				}
+				try {
+					this.verified.remove(md5_);
+					this.suspected.remove(md5_);
+					if (renderer.exists() && renderer.renameTo(trash) == false) {
+						return false;
+					}
+				}
+				finally {
+					lock.release();
+				}
+			}
+			catch (IOException | OverlappingFileLockException e) {
+				this.log.debug("RendererStore::delete failed to lock renderer " + md5_ + " (" + e + ")");
+				return false;
+			}
+		}
+		Utils.delete(trash);
+		return true;
+	}
+	
+	/**
+	 * @return the lock of the installation of the renderer, null if the wait has been interrupted
+	 */
+	private DownloadLock lock(String md5_, Gui gui_) {
+		try {
+			return DownloadLock.acquire(this.getRendererDirectory(md5_), this.log, LOCK_TIMEOUT, gui_, "Another client is extracting the renderer");
+		}
+		catch (InterruptedException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Write the manifest of an extracted renderer and move it to its final place
+	 */
+	private boolean commit(String md5_, File staging_) {
+		try {
+			new File(staging_, OS.getOS().getRenderBinaryPath()).setExecutable(true);
+		}
+		catch (SecurityException e) {
+		}
+		
+		File renderer = this.getRendererDirectory(md5_);
+		try {
+			List<String> files = new ArrayList<String>();
+			this.list(staging_, "", files);
+			try (BufferedWriter writer = Files.newBufferedWriter(new File(staging_, MANIFEST).toPath(), StandardCharsets.UTF_8)) {
+				writer.write("version" + SEPARATOR + MANIFEST_VERSION);
+				writer.newLine();
+				for (String path : files) {
+					File file = new File(staging_, path);
+					writer.write(file.length() + SEPARATOR + file.lastModified() + SEPARATOR + Utils.md5(file.getAbsolutePath()) + SEPARATOR + path);
+					writer.newLine();
+				}
+			}
+			
+			if (this.delete(md5_) == false) { // damaged, the check has failed to remove it
+				throw new IOException("the previous " + renderer + " is still used");
+			}
+			if (staging_.renameTo(renderer) == false) {
+				throw new IOException("unable to rename " + staging_ + " to " + renderer);
+			}
+		}
+		catch (IOException e) {
+			this.log.error("RendererStore::commit failed to install renderer " + md5_ + " (" + e + ")");
+			Utils.delete(staging_);
+			return false;
+		}
+		
+		this.verified.add(md5_);
+		this.log.debug("RendererStore::commit renderer " + md5_ + " installed");
+		return true;
+	}
+	
+	/**
+	 * @param full_ check the md5 of the files, otherwise only their size and modification time
+	 * @return why the renderer doesn't match its manifest, null if it does
+	 */
+	private String check(File renderer_, boolean full_) {
+		File manifest = new File(renderer_, MANIFEST);
+		if (manifest.exists() == false) {
+			return "no manifest";
+		}
+		
+		List<String[]> files = new ArrayList<String[]>();
+		try (BufferedReader reader = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+			if (line == null || line.equals("version" + SEPARATOR + MANIFEST_VERSION) == false) {
+				return "unknown manifest version";
+			}
+			while ((line = reader.readLine()) != null) {
+				String[] values = line.split(SEPARATOR, 4);
+				if (values.length != 4) {
+					return "broken manifest";
+				}
+				files.add(values);
+			}
+		}
+		catch (IOException e) {
+			return "unreadable manifest";
+		}
+		
+		// the sizes and modification times first, it's much faster than the md5
+		for (String[] values : files) {
+			File file = new File(renderer_, values[3]);
+			if (Long.toString(file.length()).equals(values[0]) == false) {
+				return "wrong size for " + values[3];
+			}
+			if (Long.toString(file.lastModified()).equals(values[1]) == false) {
+				return "wrong modification time for " + values[3];
+			}
+		}
+		if (full_) {
+			for (String[] values : files) {
+				if (Utils.md5(new File(renderer_, values[3]).getAbsolutePath()).equals(values[2]) == false) {
+					return "wrong md5 for " + values[3];
+				}
+			}
+		}
+		return null;
+	}
+	
+	private void list(File directory_, String prefix_, List<String> files_) {
+		File[] files = directory_.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory()) {
+				this.list(file, prefix_ + file.getName() + "/", files_);
+			}
+			else if ((prefix_ + file.getName()).equals(MANIFEST) == false) {
+				files_.add(prefix_ + file.getName());
+			}
+		}
+	}
+	
+	/**
+	 * Shared lock of the slots of this client on a renderer, the file locks are held by the whole jvm (they can't overlap)
+	 */
+	private static class Use {
+		private RandomAccessFile file;
+		private FileLock lock;
+		private int count;
+		
+		private void close() {
+			try {
+				if (this.lock != null) {
+					this.lock.release();
+				}
+				if (this.file != null) {
+					this.file.close();
+				}
+			}
+			catch (IOException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keep the extracted scenes between frames, so the next frame of the same project doesn't have to extract the archive again.
+ *
+ * The files of a cached scene are read-only and their size and modification date are recorded after the extraction. A scene is only
+ * reused if it's unchanged, otherwise it's removed and extracted again. The least recently used scenes are removed once the cache is over
+ * its size limit, except the ones used by a render.
+ */
+public class SceneCache {
+	private Log log;
+	private long maxSize; // in bytes
+	private LinkedHashMap<String, Entry> entries; // by scene directory, in access order
+	
+	public SceneCache(Log log_, long maxSize_) {
+		this.log = log_;
+		this.maxSize = maxSize_;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	}
+	
+	/**
+	 * @return true if the scene directory of the job is cached and unchanged, it's then marked as used until release() is called
+	 */
+	public synchronized boolean acquire(Job job_) {
+		String directory = job_.getSceneDirectory();
+		Entry entry = this.entries.get(directory);
+		if (entry == null) {
+			return false;
+		}
+		
+		if (entry.isUnchanged() == false) {
+			this.log.debug("SceneCache::acquire scene " + directory + " has been modified since its extraction, it will be extracted again");
+			this.remove(directory);
+			return false;
+		}
+		
+		entry.users++;
+		return true;
+	}
+	
+	/**
+	 * Add a freshly extracted scene directory to the cache (marked as used until release() is called)
+	 */
+	public synchronized void add(Job job_) {
+		String directory = job_.getSceneDirectory();
+		Entry entry = new Entry(new File(directory));
+		entry.users = 1;
+		this.entries.put(directory, entry);
+		this.log.debug("SceneCache::add " + directory + " (" + entry.size + " bytes)");
+		
+		this.evict();
+	}
+	
+	/**
+	 * The job is done with its scene directory, it can be evicted (or removed if it has been modified by the render)
+	 */
+	public synchronized void release(Job job_) {
+		String directory = job_.getSceneDirectory();
+		Entry entry = this.entries.get(directory);
+		if (entry == null) {
+			return;
+		}
+		
+		entry.users = Math.max(0, entry.users - 1);
+		if (entry.users == 0 && entry.isUnchanged() == false) {
+			this.log.debug("SceneCache::release scene " + directory + " has been modified by the render, removing it");
+			this.remove(directory);
+		}
+		this.evict();
+	}
+	
+	private void evict() {
+		long size = 0;
+		for (Entry entry : this.entries.values()) {
+			size += entry.size;
+		}
+		
+		// the iteration order is from the least recently used
+		Iterator<Map.Entry<String, Entry>> it = this.entries.entrySet().iterator();
+		while (size > this.maxSize && it.hasNext()) {
+			Map.Entry<String, Entry> entry = it.next();
+			if (entry.getValue().users > 0) {
+				continue;
+			}
+			this.log.debug("SceneCache::evict removing " + entry.getKey() + " (" + entry.getValue().size + " bytes)");
+			size -= entry.getValue().size;
+			it.remove();
+			Utils.delete(new File(entry.getKey()));
+		}
+	}
+	
+	private void remove(String directory_) {
+		this.entries.remove(directory_);
+		Utils.delete(new File(directory_));
+	}
+	
+	private static class Entry {
+		private final File directory;
+		private final Map<String, long[]> files; // size and modification date, by path
+		private final long size;
+		private int users;
+		
+		Entry(File directory_) {
+			this.directory = directory_;
+			this.files = new HashMap<String, long[]>();
+			this.users = 0;
+			this.size = this.scan(this.directory, this.files, true);
+		}
+		
+		boolean isUnchanged() {
+			Map<String, long[]> current = new HashMap<String, long[]>();
+			this.scan(this.directory, current, false);
+			if (current.size() != this.files.size()) {
+				return false;
+			}
+			for (Map.Entry<String, long[]> file : this.files.entrySet()) {
+				long[] attributes = current.get(file.getKey());
+				if (attributes == null || attributes[0] != file.getValue()[0] || attributes[1] != file.getValue()[1]) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * @return the total size of the files
+		 */
+		private long scan(File file_, Map<String, long[]> files_, boolean protect_) {
+			if (file_.isDirectory()) {
+				long size = 0;
+				File[] list = file_.listFiles();
+				if (list != null) {
+					for (File aFile : list) {
+						size += this.scan(aFile, files_, protect_);
+					}
+				}
+				return size;
+			}
+			else if (file_.isFile()) {
+				if (protect_) {
+					file_.setWritable(false); // a render should not modify the scene of the next one
+				}
+				files_.put(file_.getAbsolutePath(), new long[] { file_.length(), file_.lastModified() });
+				return file_.length();
+			}
+			return 0;
+		}
+	}
+}
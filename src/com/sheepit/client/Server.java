@@ -20,10 +20,7 @@
 package com.sheepit.client;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
@@ -49,6 +46,9 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.JavaNetCookieJar;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
 
 import com.sheepit.client.Configuration.ComputeType;
 import com.sheepit.client.Error.ServerCode;
@@ -74,6 +74,8 @@ import com.sheepit.client.os.OS;
 
 public class Server extends Thread {
 	final private String HTTP_USER_AGENT = "Java/" + System.getProperty("java.version");
+	private static final int UPLOAD_CHUNK_SIZE = 256 * 1024; // in bytes, given to the upload limiter at once
+	private static final long LIVE_STATS_INTERVAL = 10 * 1000; // in ms
 	private String base_url;
 	private final OkHttpClient httpClient;
 	
@@ -85,8 +87,9 @@ public class Server extends Thread {
 	private long lastRequestTime;
 	private int keepmealive_duration; // time in ms
 	
-	private TransferStats dlStats = new TransferStats();
-	private TransferStats ulStats = new TransferStats();
+	private TransferStats dlStats;
+	private TransferStats ulStats;
+	@Getter private TransferScheduler transferScheduler;
 	
 	public Server(String url_, Configuration user_config_, Client client_) {
 		super();
@@ -96,6 +99,10 @@ public class Server extends Thread {
 		this.log = Log.getInstance(this.user_config);
 		this.lastRequestTime = 0;
 		this.keepmealive_duration = 15 * 60 * 1000; // default 15min
+		this.transferScheduler = new TransferScheduler(this.log, TransferScheduler.MAX_CONNECTIONS, this.user_config.getDownloadLimiter(),
+				this.user_config.getUploadLimiter());
+		this.dlStats = new TransferStats(this.user_config.getDownloadLimiter());
+		this.ulStats = new TransferStats(this.user_config.getUploadLimiter());
 		
 		// OkHttp performs best when we create a single OkHttpClient instance and reuse it for all of the HTTP calls. This is because each client holds its own
 		// connection pool and thread pools.Reusing connections and threads reduces latency and saves memory. Conversely, creating a client for each request
@@ -111,58 +118,23 @@ public class Server extends Thread {
 		while (true) {
 			long current_time = new Date().getTime();
 			if ((current_time - this.lastRequestTime) > this.keepmealive_duration) {
-				try {
-					HttpUrl.Builder urlBuilder = Objects.requireNonNull(HttpUrl.parse(this.getPage("keepmealive"))).newBuilder();
-					
-					if (this.client != null && this.client.getRenderingJob() != null) {
-						Job job = this.client.getRenderingJob();
-						
-						urlBuilder.addQueryParameter("frame", job.getFrameNumber()).addQueryParameter("job", job.getId());
-						if (job.getExtras() != null && !job.getExtras().isEmpty()) {
-							urlBuilder.addQueryParameter("extras", job.getExtras());
-						}
-						
-						RenderProcess process = job.getProcessRender();
-						if (process != null) {
-							urlBuilder.addQueryParameter("rendertime", String.valueOf(process.getDuration()))
-								.addQueryParameter("remainingtime", String.valueOf(process.getRemainingDuration()));
-						}
-					}
-					
-					Response response = this.HTTPRequest(urlBuilder);
-					
-					if (response.code() == HttpURLConnection.HTTP_OK && response.body().contentType().toString().startsWith("text/xml")) {
-						String in = response.body().string();
-						
-						try {
-							HeartBeatInfos heartBeartInfos = new Persister().read(HeartBeatInfos.class, in);
-							ServerCode serverCode = ServerCode.fromInt(heartBeartInfos.getStatus());
-							if (serverCode == ServerCode.KEEPMEALIVE_STOP_RENDERING) {
-								this.log.debug("Server::stayAlive server asked to kill local render process");
-								// kill the current process, it will generate an error but it's okay
-								if (this.client != null && this.client.getRenderingJob() != null) {
-									this.client.getRenderingJob().setServerBlockJob(true);
-									
-									if (this.client.getRenderingJob().getProcessRender().getProcess() != null) {
-										this.client.getRenderingJob().setAskForRendererKill(true);
-										OS.getOS().kill(this.client.getRenderingJob().getProcessRender().getProcess());
-									}
-								}
-							}
-						}
-						catch (Exception e) { // for the read
-							this.log.debug("Server::stayAlive Exception " + e);
+				// one request per slot currently rendering, so the server knows about all the frames in progress
+				List<RenderSlot> busy_slots = new ArrayList<RenderSlot>();
+				if (this.client != null) {
+					for (RenderSlot slot : this.client.getSlots()) {
+						if (slot.getRenderingJob() != null) {
+							busy_slots.add(slot);
 						}
 					}
 				}
-				catch (NoRouteToHostException e) {
-					this.log.debug("Server::stayAlive can not connect to server");
+				
+				if (busy_slots.isEmpty()) {
+					this.keepMeAlive(null, null);
 				}
-				catch (IOException e) {
-					StringWriter sw = new StringWriter();
-					PrintWriter pw = new PrintWriter(sw);
-					e.printStackTrace(pw);
-					this.log.debug("Server::stayAlive IOException " + e + " stacktrace: " + sw.toString());
+				else {
+					for (RenderSlot slot : busy_slots) {
+						this.keepMeAlive(slot, slot.getRenderingJob());
+					}
 				}
 			}
 			try {
@@ -180,6 +152,64 @@ public class Server extends Thread {
 		}
 	}
 	
+	private void keepMeAlive(RenderSlot slot, Job job) {
+		try {
+			HttpUrl.Builder urlBuilder = Objects.requireNonNull(HttpUrl.parse(this.getPage("keepmealive"))).newBuilder();
+			
+			if (job != null) {
+				urlBuilder.addQueryParameter("frame", job.getFrameNumber()).addQueryParameter("job", job.getId());
+				if (job.getExtras() != null && !job.getExtras().isEmpty()) {
+					urlBuilder.addQueryParameter("extras", job.getExtras());
+				}
+				
+				RenderProcess process = job.getProcessRender();
+				if (process != null) {
+					urlBuilder.addQueryParameter("rendertime", String.valueOf(process.getDuration()))
+						.addQueryParameter("remainingtime", String.valueOf(process.getRemainingDuration()));
+				}
+				
+				if (slot.getNbSlots() > 1) {
+					urlBuilder.addQueryParameter("slot", String.valueOf(slot.getId()));
+				}
+			}
+			
+			Response response = this.HTTPRequest(urlBuilder);
+			
+			if (response.code() == HttpURLConnection.HTTP_OK && response.body().contentType().toString().startsWith("text/xml")) {
+				String in = response.body().string();
+				
+				try {
+					HeartBeatInfos heartBeartInfos = new Persister().read(HeartBeatInfos.class, in);
+					ServerCode serverCode = ServerCode.fromInt(heartBeartInfos.getStatus());
+					if (serverCode == ServerCode.KEEPMEALIVE_STOP_RENDERING) {
+						this.log.debug("Server::stayAlive server asked to kill local render process");
+						// kill the current process, it will generate an error but it's okay
+						if (job != null) {
+							job.setServerBlockJob(true);
+							
+							if (job.getProcessRender().getProcess() != null) {
+								job.setAskForRendererKill(true);
+								OS.getOS().kill(job.getProcessRender().getProcess());
+							}
+						}
+					}
+				}
+				catch (Exception e) { // for the read
+					this.log.debug("Server::stayAlive Exception " + e);
+				}
+			}
+		}
+		catch (NoRouteToHostException e) {
+			this.log.debug("Server::stayAlive can not connect to server");
+		}
+		catch (IOException e) {
+			StringWriter sw = new StringWriter();
+			PrintWriter pw = new PrintWriter(sw);
+			e.printStackTrace(pw);
+			this.log.debug("Server::stayAlive IOException " + e + " stacktrace: " + sw.toString());
+		}
+	}
+	
 	public String toString() {
 		return String.format("Server (base_url '%s', user_config %s", this.base_url, this.user_config);
 	}
@@ -255,14 +285,17 @@ public class Server extends Thread {
 		return Error.Type.OK;
 	}
 	
-	public Job requestJob() throws FermeException {
-		this.log.debug("Server::requestJob");
+	public Job requestJob(RenderSlot slot) throws FermeException {
+		this.log.debug("Server::requestJob " + slot);
 		String url_contents = "";
 		
 		try {
 			OS os = OS.getOS();
-			long maxMemory = this.user_config.getMaxMemory();
+			long maxMemory = slot.getMaxMemory();
 			long freeMemory = os.getFreeMemory();
+			if (freeMemory > 0) {
+				freeMemory /= slot.getNbSlots(); // the other slots will need their share
+			}
 			if (maxMemory < 0) {
 				maxMemory = freeMemory;
 			}
@@ -271,17 +304,21 @@ public class Server extends Thread {
 			}
 			
 			HttpUrl.Builder urlBuilder = Objects.requireNonNull(HttpUrl.parse(this.getPage("request-job"))).newBuilder()
-				.addQueryParameter("computemethod", String.valueOf(user_config.computeMethodToInt()))
-				.addQueryParameter("cpu_cores", String.valueOf(user_config.getNbCores() == -1 ? os.getCPU().cores() : user_config.getNbCores()))
+				.addQueryParameter("computemethod", String.valueOf(slot.getComputeMethod().ordinal()))
+				.addQueryParameter("cpu_cores", String.valueOf(slot.getCores() == -1 ? os.getCPU().cores() : slot.getCores()))
 				.addQueryParameter("ram_max", String.valueOf(maxMemory))
 				.addQueryParameter("rendertime_max", String.valueOf(user_config.getMaxRenderTime()));
 			
-			if (user_config.getComputeMethod() != ComputeType.CPU && user_config.getGPUDevice() != null) {
+			if (slot.getComputeMethod() != ComputeType.CPU && user_config.getGPUDevice() != null) {
 				urlBuilder.addQueryParameter("gpu_model", user_config.getGPUDevice().getModel())
 					.addQueryParameter("gpu_ram", String.valueOf(user_config.getGPUDevice().getMemory()))
 					.addQueryParameter("gpu_type", user_config.getGPUDevice().getType());
 			}
-
+			
+			if (slot.getNbSlots() > 1) {
+				urlBuilder.addQueryParameter("slot", String.valueOf(slot.getId())).addQueryParameter("slots", String.valueOf(slot.getNbSlots()));
+			}
+			
 			Response response = this.HTTPRequest(urlBuilder, RequestBody.create(MediaType.parse("application/xml"), this.generateXMLForMD5cache()));
 			
 			int r = response.code();
@@ -328,14 +365,14 @@ public class Server extends Thread {
 				String script = "import bpy\n";
 				// blender 2.7x
 				script += "try:\n";
-				script += "\tbpy.context.user_preferences.filepaths.temporary_directory = \"" + this.user_config.getWorkingDirectory().getAbsolutePath()
+				script += "\tbpy.context.user_preferences.filepaths.temporary_directory = \"" + slot.getWorkingDirectory().getAbsolutePath()
 						.replace("\\", "\\\\") + "\"\n";
 				script += "except AttributeError:\n";
 				script += "\tpass\n";
 				
 				// blender 2.80
 				script += "try:\n";
-				script += "\tbpy.context.preferences.filepaths.temporary_directory = \"" + this.user_config.getWorkingDirectory().getAbsolutePath()
+				script += "\tbpy.context.preferences.filepaths.temporary_directory = \"" + slot.getWorkingDirectory().getAbsolutePath()
 						.replace("\\", "\\\\") + "\"\n";
 				script += "except AttributeError:\n";
 				script += "\tpass\n";
@@ -344,7 +381,7 @@ public class Server extends Thread {
 				
 				String validationUrl = URLDecoder.decode(jobData.getRenderTask().getValidationUrl(), "UTF-8");
 				
-				Job a_job = new Job(this.user_config, this.client.getGui(), this.client.getLog(), jobData.getRenderTask().getId(),
+				Job a_job = new Job(this.user_config, slot.getGui(), this.client.getLog(), slot, jobData.getRenderTask().getId(),
 						jobData.getRenderTask().getFrame(), jobData.getRenderTask().getPath().replace("/", File.separator),
 						jobData.getRenderTask().getUseGpu() == 1, jobData.getRenderTask().getRendererInfos().getCommandline(), validationUrl, script,
 						jobData.getRenderTask().getArchive_md5(), jobData.getRenderTask().getRendererInfos().getMd5(), jobData.getRenderTask().getName(),
@@ -391,7 +428,7 @@ public class Server extends Thread {
 	public Response HTTPRequest(HttpUrl.Builder httpUrlBuilder) throws IOException {
 		return this.HTTPRequest(httpUrlBuilder, null);
 	}
-
+	
 	public Response HTTPRequest(HttpUrl.Builder httpUrlBuilder, RequestBody data_) throws IOException {
 		String url = httpUrlBuilder.build().toString();
 		Request.Builder builder = new Request.Builder().addHeader("User-Agent", HTTP_USER_AGENT).url(url);
@@ -420,45 +457,56 @@ public class Server extends Thread {
 		}
 	}
 	
-	public Error.Type HTTPGetFile(String url_, String destination_, Gui gui_, String status_) throws FermeExceptionNoSpaceLeftOnDevice {
-		InputStream is = null;
-		OutputStream output = null;
-
+	/**
+	 * Request the bytes from start_ to end_ (included) of a file, end_ -1 for the end of the file.
+	 * The server might ignore the range and answer with the whole file (HTTP 200 instead of 206), it always does if ifRange_ (an ETag or a
+	 * date, can be null) doesn't match the file anymore.
+	 */
+	public Response HTTPRangeRequest(String url_, long start_, long end_, String ifRange_) throws IOException {
+		String range = "bytes=" + start_ + "-" + (end_ < 0 ? "" : String.valueOf(end_));
+		Request.Builder builder = new Request.Builder().addHeader("User-Agent", HTTP_USER_AGENT).addHeader("Range", range).url(url_);
+		if (ifRange_ != null) {
+			builder.addHeader("If-Range", ifRange_);
+		}
+		Request request = builder.build();
+		
+		this.log.debug("Server::HTTPRangeRequest url(" + url_ + ") range(" + range + ")");
+		
+		Response response = httpClient.newCall(request).execute();
+		if (!response.isSuccessful()) {
+			response.close();
+			throw new IOException("Unexpected code " + response);
+		}
+		
+		this.lastRequestTime = new Date().getTime();
+		return response;
+	}
+	
+	/**
+	 * Download a file to destination_.partial, an interrupted download is continued if possible.
+	 * The caller has to check the file (with the md5 computed during the download) before renaming it to destination_.
+	 *
+	 * @param extractor_ extract the archive during the download, can be null
+	 * @return the download, with its result and the md5 of the file
+	 */
+	public FileDownload HTTPGetFile(String url_, String destination_, Gui gui_, String status_, Job job_, ZipStreamExtractor extractor_)
+			throws FermeExceptionNoSpaceLeftOnDevice {
+		FileDownload download = new FileDownload(this, this.log, url_, new File(destination_ + ".partial"), gui_, status_, job_, extractor_,
+				this.user_config.getArchiveCache());
 		try {
-			Response response = this.HTTPRequest(url_);
-			
-			if (response.code() != HttpURLConnection.HTTP_OK) {
-				this.log.error("Server::HTTPGetFile(" + url_ + ", ...) HTTP code is not " + HttpURLConnection.HTTP_OK + " it's " + response.code());
-				return Error.Type.DOWNLOAD_FILE;
-			}
-			
-			is = response.body().byteStream();
-			output = new FileOutputStream(destination_ + ".partial");
-			
-			long size = response.body().contentLength();
-			byte[] buffer = new byte[8 * 1024];
-			int len = 0;
-			long written = 0;
-			long lastUpd = 0;    // last GUI progress update
-			
 			LocalDateTime startRequestTime = LocalDateTime.now();
 			
-			while ((len = is.read(buffer)) != -1) {
-				if (this.client.getRenderingJob().isServerBlockJob()) {
-					return Error.Type.RENDERER_KILLED_BY_SERVER;
-				}
-				else if (this.client.getRenderingJob().isUserBlockJob()) {
-					return Error.Type.RENDERER_KILLED_BY_USER;
-				}
-				
-				output.write(buffer, 0, len);
-				written += len;
-				
-				if ((written - lastUpd) > 1000000) { // only update the gui every 1MB
-					gui_.status(status_, (int) (100.0 * written / size), written);
-					lastUpd = written;
-				}
+			Error.Type ret = download.run();
+			if (ret == Error.Type.NO_SPACE_LEFT_ON_DEVICE) {
+				FileDownload.discard(new File(destination_ + ".partial"));
+				throw new FermeExceptionNoSpaceLeftOnDevice();
 			}
+			if (ret != Error.Type.OK) {
+				return download;
+			}
+			
+			long size = download.getSize();
+			long written = download.getWritten();
 			
 			LocalDateTime endRequestTime = LocalDateTime.now();
 			Duration duration = Duration.between(startRequestTime, endRequestTime);
@@ -466,11 +514,14 @@ public class Server extends Thread {
 			gui_.displayTransferStats(dlStats, ulStats);
 			gui_.status(status_, 100, size);
 			
-			this.log.debug(String.format("File downloaded at %s/s, written %d bytes", new TransferStats(size, duration.getSeconds() + 1).getAverageSessionSpeed(), written));
-
+			this.log.debug(job_.getLogCheckPoint(), String.format("File downloaded at %s/s, written %d bytes", new TransferStats(size, duration.getSeconds() + 1).getAverageSessionSpeed(), written));
+			
 			this.lastRequestTime = new Date().getTime();
 			
-			return Error.Type.OK;
+			return download;
+		}
+		catch (FermeExceptionNoSpaceLeftOnDevice e) {
+			throw e;
 		}
 		catch (Exception e) {
 			if (Utils.noFreeSpaceOnDisk(new File(destination_).getParent())) {
@@ -479,37 +530,11 @@ public class Server extends Thread {
 			
 			StringWriter sw = new StringWriter();
 			e.printStackTrace(new PrintWriter(sw));
-			this.log.error("Server::HTTPGetFile Exception " + e + " stacktrace " + sw.toString());
-		}
-		finally {
-			try {
-				if (output != null) {
-					output.flush();
-					output.close();
-				}
-				
-				File downloadedFile = new File(destination_ + ".partial");
-				
-				if (downloadedFile.exists()) {
-					// Rename file (or directory)
-					boolean success = downloadedFile.renameTo(new File(destination_));
-					
-					if (!success) {
-						this.log.debug(String.format("Server::HTTPGetFile Error trying to rename the downloaded file to final name (%s)", destination_));
-					}
-				}
-
-				if (is != null) {
-					is.close();
-				}
-			}
-			catch (Exception e) {
-				this.log.debug(String.format("Server::HTTPGetFile Error trying to close the open streams (%s)", e.getMessage()));
-			}
+			this.log.error(job_.getLogCheckPoint(), "Server::HTTPGetFile Exception " + e + " stacktrace " + sw.toString());
 		}
 		
-		this.log.debug(String.format("Server::HTTPGetFile(%s) did fail", url_));
-		return Error.Type.DOWNLOAD_FILE;
+		this.log.debug(job_.getLogCheckPoint(), String.format("Server::HTTPGetFile(%s) did fail", url_));
+		return download;
 	}
 	
 	public ServerCode HTTPSendFile(String surl, String file1, int checkpoint, Gui gui) {
@@ -518,11 +543,11 @@ public class Server extends Thread {
 		try {
 			String fileMimeType = Utils.findMimeType(file1);
 			File fileHandler    = new File(file1);
-
+			
 			MediaType MEDIA_TYPE = MediaType.parse(fileMimeType); // e.g. "image/png"
 			
 			RequestBody uploadContent = new MultipartBody.Builder().setType(MultipartBody.FORM)
-				.addFormDataPart("file", fileHandler.getName(), RequestBody.create(fileHandler, MEDIA_TYPE)).build();
+				.addFormDataPart("file", fileHandler.getName(), this.limitedRequestBody(fileHandler, MEDIA_TYPE, gui)).build();
 			
 			Request request = new Request.Builder().addHeader("User-Agent", HTTP_USER_AGENT).url(surl).post(uploadContent).build();
 			
@@ -599,6 +624,48 @@ public class Server extends Thread {
 		}
 	}
 	
+	/**
+	 * Display the live usage of the network. Only when the transfers are limited, otherwise the stats are only displayed once a transfer is done.
+	 */
+	public void displayLiveTransferStats(Gui gui_) {
+		if (this.dlStats.isLimited() || this.ulStats.isLimited()) {
+			gui_.displayTransferStats(this.dlStats, this.ulStats);
+		}
+	}
+	
+	/**
+	 * @return the content of a file to upload, sent through the upload limiter
+	 */
+	private RequestBody limitedRequestBody(final File file_, final MediaType type_, final Gui gui_) {
+		final BandwidthLimiter limiter = this.transferScheduler.getUploadLimiter();
+		return new RequestBody() {
+			@Override public MediaType contentType() {
+				return type_;
+			}
+			
+			@Override public long contentLength() {
+				return file_.length();
+			}
+			
+			@Override public void writeTo(BufferedSink sink) throws IOException {
+				long lastStats = new Date().getTime();
+				try (BufferedSource source = Okio.buffer(Okio.source(file_))) {
+					while (source.exhausted() == false) {
+						source.request(UPLOAD_CHUNK_SIZE); // the file is read 8 kB at a time, the socket is written once per chunk
+						long len = source.getBuffer().size();
+						limiter.acquire(len);
+						sink.write(source.getBuffer(), len);
+						
+						if (new Date().getTime() - lastStats > LIVE_STATS_INTERVAL) {
+							displayLiveTransferStats(gui_);
+							lastStats = new Date().getTime();
+						}
+					}
+				}
+			}
+		};
+	}
+	
 	private String generateXMLForMD5cache() {
 		List<FileMD5> md5s = new ArrayList<>();
 		for (File local_file : this.user_config.getLocalCacheFiles()) {
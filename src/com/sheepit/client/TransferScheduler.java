@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sheepit.client.exception.FermeExceptionNoSpaceLeftOnDevice;
+
+/**
+ * Share the network between the transfers of the client: all the downloads (of every slot, prefetch included) draw their connections from
+ * one budget, so concurrent downloads split the bandwidth instead of each one opening as many connections as it wants. The data of the
+ * downloads and of the uploads goes through their BandwidthLimiter, which keeps them under the speed allowed at the time of the day.
+ *
+ * Independent transfers of a job (the renderer and the scene archives) are run at the same time, their progress is displayed as one. As soon
+ * as the job is cancelled (by the server or the user), the transfers still running are cancelled too.
+ */
+public class TransferScheduler {
+	public static final int MAX_CONNECTIONS = 8; // for the whole client
+	private static final long POLL_INTERVAL = 200; // in ms
+	
+	private Log log;
+	private Semaphore connections;
+	private BandwidthLimiter downloadLimiter;
+	private BandwidthLimiter uploadLimiter;
+	
+	public TransferScheduler(Log log_, int maxConnections_, BandwidthLimiter downloadLimiter_, BandwidthLimiter uploadLimiter_) {
+		this.log = log_;
+		this.connections = new Semaphore(maxConnections_, true);
+		this.downloadLimiter = downloadLimiter_;
+		this.uploadLimiter = uploadLimiter_;
+	}
+	
+	public BandwidthLimiter getDownloadLimiter() {
+		return this.downloadLimiter;
+	}
+	
+	public BandwidthLimiter getUploadLimiter() {
+		return this.uploadLimiter;
+	}
+	
+	/**
+	 * Wait for a free connection, it has to be given back with releaseConnection once the request is done
+	 *
+	 * @return false if no connection has been freed within timeout_ (in ms)
+	 */
+	public boolean acquireConnection(long timeout_) throws InterruptedException {
+		return this.connections.tryAcquire(timeout_, TimeUnit.MILLISECONDS);
+	}
+	
+	public void releaseConnection() {
+		this.connections.release();
+	}
+	
+	/**
+	 * Run the transfers of a job at the same time, the combined progress is displayed as status_
+	 *
+	 * @return OK if all the transfers have succeeded, otherwise the error of the first one which failed
+	 * @throws FermeExceptionNoSpaceLeftOnDevice if one of the transfers ran out of space
+	 */
+	public Error.Type run(Job job_, Gui gui_, String status_, List<Transfer> transfers_) throws FermeExceptionNoSpaceLeftOnDevice {
+		List<Thread> threads = new ArrayList<Thread>();
+		for (final Transfer transfer : transfers_) {
+			transfer.gui = new TransferGui(gui_, this.log, transfer);
+			Thread thread = new Thread() {
+				@Override public void run() {
+					transfer.execute();
+				}
+			};
+			thread.setDaemon(true);
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		
+		int lastProgress = -1;
+		boolean cancelled = false;
+		for (Thread thread : threads) {
+			while (thread.isAlive()) {
+				try {
+					thread.join(POLL_INTERVAL);
+				}
+				catch (InterruptedException e) {
+				}
+				
+				if (cancelled == false && (job_.isServerBlockJob() || job_.isUserBlockJob())) {
+					// the downloads stop by themselves, the transfers waiting for an archive (downloaded by another client) or for their next attempt don't
+					this.log.debug("TransferScheduler::run job " + job_.getId() + " cancelled, stopping its transfers");
+					cancelled = true;
+					for (Thread other : threads) {
+						other.interrupt();
+					}
+				}
+				
+				int progress = 0;
+				long size = 0;
+				for (Transfer transfer : transfers_) {
+					progress += transfer.progress;
+					size += transfer.size;
+				}
+				progress /= transfers_.size();
+				if (progress != lastProgress) {
+					gui_.status(status_, progress, size);
+					lastProgress = progress;
+				}
+			}
+		}
+		
+		for (Transfer transfer : transfers_) {
+			if (transfer.noSpaceLeft) {
+				throw new FermeExceptionNoSpaceLeftOnDevice();
+			}
+		}
+		if (cancelled) {
+			return job_.isServerBlockJob() ? Error.Type.RENDERER_KILLED_BY_SERVER : Error.Type.RENDERER_KILLED_BY_USER;
+		}
+		for (Transfer transfer : transfers_) {
+			if (transfer.result != Error.Type.OK) {
+				this.log.debug("TransferScheduler::run transfer of the " + transfer.name + " failed (" + transfer.result + ")");
+				return transfer.result;
+			}
+		}
+		return Error.Type.OK;
+	}
+	
+	/**
+	 * A transfer run by the scheduler, with its own thread
+	 */
+	public static abstract class Transfer {
+		private final String name;
+		private Gui gui;
+		private volatile int progress; // in percent
+		private volatile long size; // in bytes, transferred so far
+		private Error.Type result;
+		private boolean noSpaceLeft;
+		
+		public Transfer(String name_) {
+			this.name = name_;
+			this.gui = null;
+			this.progress = 0;
+			this.size = 0;
+			this.result = Error.Type.DOWNLOAD_FILE;
+			this.noSpaceLeft = false;
+		}
+		
+		/**
+		 * @param gui_ the progress given to it is combined with the other transfers, the other messages are displayed as they are
+		 */
+		protected abstract Error.Type run(Gui gui_) throws FermeExceptionNoSpaceLeftOnDevice;
+		
+		private void execute() {
+			try {
+				this.result = this.run(this.gui);
+			}
+			catch (FermeExceptionNoSpaceLeftOnDevice e) {
+				this.result = Error.Type.NO_SPACE_LEFT_ON_DEVICE;
+				this.noSpaceLeft = true;
+			}
+			this.progress = 100; // nothing left to do for this one
+		}
+	}
+	
+	/**
+	 * Record the progress of a transfer instead of displaying it
+	 */
+	private static class TransferGui extends BackgroundGui {
+		private Gui gui;
+		private Transfer transfer;
+		
+		TransferGui(Gui gui_, Log log_, Transfer transfer_) {
+			super(gui_, log_, "Transfer " + transfer_.name + ":");
+			this.gui = gui_;
+			this.transfer = transfer_;
+		}
+		
+		@Override public void status(String msg_) {
+			this.gui.status(msg_);
+		}
+		
+		@Override public void status(String msg_, int progress) {
+			this.transfer.progress = progress;
+		}
+		
+		@Override public void status(String msg_, int progress, long size) {
+			this.transfer.progress = progress;
+			this.transfer.size = size;
+		}
+		
+		@Override public void error(String err_) {
+			this.gui.error(err_);
+		}
+	}
+}
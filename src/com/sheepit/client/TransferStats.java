@@ -1,20 +1,31 @@
 package com.sheepit.client;
 
-import lombok.AllArgsConstructor;
-
 /****************
  * Holds the session traffic statistics. The constructor accepts two parameters:
  * @long bytes - bytes transferred in the session
  * @Job seconds - seconds spent transferring the data
+ * The live usage (current speed and limit) comes from the bandwidth limiter of the transfers, if any.
  */
-@AllArgsConstructor
 public class TransferStats {
 	private long bytes;
 	private long millis;
+	private BandwidthLimiter limiter;
 	
 	public TransferStats() {
 		this.bytes = 0;
 		this.millis = 0;
+		this.limiter = null;
+	}
+	
+	public TransferStats(long bytes, long millis) {
+		this.bytes = bytes;
+		this.millis = millis;
+		this.limiter = null;
+	}
+	
+	public TransferStats(BandwidthLimiter limiter) {
+		this();
+		this.limiter = limiter;
 	}
 	
 	public void calc(long bytes, long millis) {
@@ -33,4 +44,23 @@ public class TransferStats {
 			return Utils.formatDataConsumption((long) (this.bytes / (0.1f)));
 		}
 	}
+	
+	/**
+	 * @return true if the speed of the transfers is limited (at least at some time of the day), the live usage is then worth displaying
+	 */
+	public boolean isLimited() {
+		return this.limiter != null && this.limiter.isLimited();
+	}
+	
+	public String getCurrentSpeed() {
+		return Utils.formatDataConsumption(this.limiter != null ? this.limiter.getCurrentSpeed() : 0);
+	}
+	
+	/**
+	 * @return the speed allowed now, "unlimited" if there is no limit
+	 */
+	public String getCurrentLimit() {
+		long limit = this.limiter != null ? this.limiter.getCurrentLimit() : -1;
+		return limit < 0 ? "unlimited" : Utils.formatDataConsumption(limit) + "/s";
+	}
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Journal of the rendered frames waiting for upload, so they are not lost if the client or the computer stops before they are sent.
+ *
+ * The frames are moved to the upload queue directory (which is not removed by the cleaning of the working directory) and each frame is
+ * recorded with what is needed to validate it. The journal is append-only: a line "ADD" when a frame is queued, a line "DONE" once it has
+ * been uploaded (or rejected by the server). It's synced to the disk after each line, and rewritten with only the pending frames when the
+ * client starts.
+ */
+public class UploadJournal {
+	public static final String FILENAME = "upload_journal.txt";
+	private static final long MAX_AGE = 24 * 3600 * 1000; // older frames won't be accepted by the server anymore
+	private static final String SEPARATOR = "\t";
+	
+	private File directory;
+	private Log log;
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private FileLock lock;
+	private int pending;
+	
+	public UploadJournal(File directory_, Log log_) {
+		this.directory = directory_;
+		this.log = log_;
+		this.file = null;
+		this.channel = null;
+		this.lock = null;
+		this.pending = 0;
+	}
+	
+	/**
+	 * Open the journal and read back the frames which were not uploaded by the previous run of the client.
+	 *
+	 * @return the frames to upload, the journal is disabled (and the list empty) if it can't be opened or is used by another client
+	 */
+	public synchronized List<Job> open(Configuration config_, Gui gui_) {
+		List<Job> jobs = new ArrayList<Job>();
+		try {
+			this.directory.mkdirs();
+			this.file = new RandomAccessFile(new File(this.directory, FILENAME), "rw");
+			this.channel = this.file.getChannel();
+			this.lock = this.channel.tryLock();
+			if (this.lock == null) {
+				this.log.error("UploadJournal::open the upload journal is used by another client, the frames waiting for upload won't survive a restart");
+				this.close();
+				return jobs;
+			}
+			
+			for (String[] entry : this.read().values()) {
+				File frame = new File(this.directory, entry[1]);
+				if (frame.exists() == false || new Date().getTime() - frame.lastModified() > MAX_AGE) {
+					this.log.debug("UploadJournal::open frame " + entry[1] + " is too old or missing, it will not be uploaded");
+					frame.delete();
+					continue;
+				}
+				
+				Job job = new Job(config_, gui_, this.log, null, entry[4], entry[5], "", false, "", entry[8], "", "", "", entry[6], null, entry[7], false, null);
+				job.setOutputImagePath(frame.getAbsolutePath());
+				job.setOutputImageSize(frame.length());
+				job.getProcessRender().setStartTime(0);
+				job.getProcessRender().setEndTime(Long.parseLong(entry[2]) * 1000L);
+				job.getProcessRender().setMemoryUsed(Long.parseLong(entry[3]));
+				jobs.add(job);
+			}
+			
+			// start again with only the pending frames
+			this.channel.truncate(0);
+			this.pending = 0;
+			for (Job job : jobs) {
+				this.write("ADD", job);
+			}
+			this.channel.force(true);
+			
+			this.removeUnknownFrames(jobs);
+		}
+		catch (IOException | NumberFormatException e) {
+			this.log.error("UploadJournal::open failed to open the upload journal, the frames waiting for upload won't survive a restart (" + e + ")");
+			this.close();
+			jobs.clear();
+		}
+		return jobs;
+	}
+	
+	/**
+	 * Move the frame of the job to the upload queue directory and record it in the journal
+	 */
+	public synchronized void add(Job job_) {
+		if (this.channel == null) {
+			return;
+		}
+		
+		try {
+			File frame = new File(job_.getOutputImagePath());
+			File queued = new File(this.directory, frame.getName());
+			sync(frame.toPath(), StandardOpenOption.WRITE); // the record must not point to a frame which is not entirely on the disk
+			Files.move(frame.toPath(), queued.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			job_.setOutputImagePath(queued.getAbsolutePath());
+			try {
+				sync(this.directory.toPath(), StandardOpenOption.READ); // the entry created by the move
+			}
+			catch (IOException e) {
+				// a directory can't be opened on Windows, where the entry is written with the file anyway
+			}
+			
+			this.write("ADD", job_);
+			this.channel.force(false);
+		}
+		catch (IOException e) {
+			this.log.error("UploadJournal::add failed to record frame " + job_.getOutputImagePath() + " (" + e + ")");
+		}
+	}
+	
+	/**
+	 * Record that the frame of the job doesn't have to be uploaded anymore
+	 */
+	public synchronized void remove(Job job_) {
+		if (this.channel == null || job_.getOutputImagePath() == null) {
+			return;
+		}
+
+		File frame = new File(job_.getOutputImagePath());
+		if (this.directory.equals(frame.getParentFile()) == false) { // the frame has not been recorded
+			return;
+		}
+
+		try {
+			this.append("DONE" + SEPARATOR + frame.getName() + "\n");
+			this.pending--;
+			if (this.pending <= 0) {
+				// nothing left to upload, no need to keep the history
+				this.channel.truncate(0);
+				this.pending = 0;
+			}
+			this.channel.force(false);
+		}
+		catch (IOException e) {
+			this.log.error("UploadJournal::remove failed to record the upload of job " + job_.getId() + " (" + e + ")");
+		}
+	}
+	
+	private static void sync(Path path_, StandardOpenOption mode_) throws IOException {
+		FileChannel channel = FileChannel.open(path_, mode_);
+		try {
+			channel.force(true);
+		}
+		finally {
+			channel.close();
+		}
+	}
+	
+	public synchronized void close() {
+		try {
+			if (this.lock != null) {
+				this.lock.release();
+			}
+			if (this.file != null) {
+				this.file.close();
+			}
+		}
+		catch (IOException e) {
+		}
+		this.lock = null;
+		this.channel = null;
+		this.file = null;
+	}
+	
+	/**
+	 * @return the pending entries (in the "ADD" order), indexed by frame file name
+	 */
+	private Map<String, String[]> read() throws IOException {
+		Map<String, String[]> entries = new LinkedHashMap<String, String[]>();
+		this.channel.position(0);
+		BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(this.channel), StandardCharsets.UTF_8));
+		String line;
+		while ((line = reader.readLine()) != null) {
+			String[] entry = line.split(SEPARATOR, -1);
+			if (entry.length == 9 && "ADD".equals(entry[0])) {
+				entries.put(entry[1], entry);
+			}
+			else if (entry.length == 2 && "DONE".equals(entry[0])) {
+				entries.remove(entry[1]);
+			}
+			else {
+				// most likely the last line, written when the client has been killed
+				this.log.debug("UploadJournal::read ignoring corrupted line '" + line + "'");
+			}
+		}
+		return entries;
+	}
+	
+	private void write(String type_, Job job_) throws IOException {
+		String[] values = { new File(job_.getOutputImagePath()).getName(), String.valueOf(job_.getProcessRender().getDuration()),
+				String.valueOf(job_.getProcessRender().getMemoryUsed()), job_.getId(), job_.getFrameNumber(), job_.getName(), job_.getExtras(),
+				job_.getValidationUrl() };
+		StringBuilder line = new StringBuilder(type_);
+		for (String value : values) {
+			line.append(SEPARATOR).append(value == null ? "" : value.replace(SEPARATOR, " ").replace("\n", " "));
+		}
+		this.append(line.append("\n").toString());
+		this.pending++;
+	}
+	
+	private void append(String line_) throws IOException {
+		this.channel.position(this.channel.size());
+		ByteBuffer buffer = ByteBuffer.wrap(line_.getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			this.channel.write(buffer);
+		}
+	}
+	
+	/**
+	 * Remove the frames left in the directory which are not in the journal anymore
+	 */
+	private void removeUnknownFrames(List<Job> jobs_) {
+		List<String> known = new ArrayList<String>();
+		known.add(FILENAME);
+		for (Job job : jobs_) {
+			known.add(new File(job.getOutputImagePath()).getName());
+		}
+		
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File aFile : files) {
+				if (known.contains(aFile.getName()) == false) {
+					Utils.delete(aFile);
+				}
+			}
+		}
+	}
+}
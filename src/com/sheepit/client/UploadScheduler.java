@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+/**
+ * Decide how many frames are uploaded at the same time and how many rendered frames can wait for upload before the renderer has to pause.
+ *
+ * The number of parallel uploads is adapted to the measured upload throughput: one more upload is allowed as long as it increases the total
+ * throughput, and one less when it doesn't (or when an upload fails).
+ * The depth of the upload queue is derived from the average upload and render times, so with a slow uplink more frames wait for upload
+ * instead of pausing the renderer.
+ */
+public class UploadScheduler {
+	public static final int MAX_CONCURRENT_UPLOADS = 4;
+	public static final int MAX_QUEUE_DEPTH = 16;
+	
+	private static final double GAIN_TO_KEEP_A_CONNECTION = 1.1; // an extra upload must bring at least 10% more throughput
+	private static final int UPLOADS_BEFORE_PROBING_AGAIN = 20;
+	private static final double SMOOTHING = 0.3; // weight of the last measure in the averages
+	
+	private int allowedUploads;
+	private int activeUploads;
+	private double[] throughput; // total throughput in bytes/ms measured for each number of parallel uploads, 0 when unknown
+	private int uploadsSinceProbe;
+	private double averageUploadDuration; // in ms, 0 when unknown
+	private double averageRenderDuration; // in ms, 0 when unknown
+	
+	public UploadScheduler() {
+		this.allowedUploads = 1;
+		this.activeUploads = 0;
+		this.throughput = new double[MAX_CONCURRENT_UPLOADS + 1];
+		this.uploadsSinceProbe = 0;
+		this.averageUploadDuration = 0;
+		this.averageRenderDuration = 0;
+	}
+	
+	/**
+	 * Wait until one more upload is allowed to start
+	 */
+	public synchronized void acquire() throws InterruptedException {
+		while (this.activeUploads >= this.allowedUploads) {
+			wait();
+		}
+		this.activeUploads++;
+	}
+	
+	/**
+	 * Give back a slot taken by acquire() without uploading anything
+	 */
+	public synchronized void cancel() {
+		this.activeUploads--;
+		notifyAll();
+	}
+	
+	/**
+	 * Report the end of an upload started by acquire()
+	 *
+	 * @param bytes size of the frame
+	 * @param duration_ time spent on the upload, in ms
+	 * @param success_ false if the upload has failed (the frame will be retried or dropped)
+	 * @param backlog_ true if other frames are waiting to be uploaded
+	 */
+	public synchronized void release(long bytes, long duration_, boolean success_, boolean backlog_) {
+		int parallel_uploads = this.activeUploads;
+		this.activeUploads--;
+		
+		if (success_ == false) {
+			this.allowedUploads = Math.max(1, this.allowedUploads / 2);
+			notifyAll();
+			return;
+		}
+		
+		if (duration_ > 0) {
+			this.averageUploadDuration = smooth(this.averageUploadDuration, duration_);
+			if (parallel_uploads <= MAX_CONCURRENT_UPLOADS) {
+				this.throughput[parallel_uploads] = smooth(this.throughput[parallel_uploads], (double) bytes / duration_ * parallel_uploads);
+			}
+		}
+		
+		// the network might have changed since the last time more uploads have been tried
+		this.uploadsSinceProbe++;
+		if (this.uploadsSinceProbe >= UPLOADS_BEFORE_PROBING_AGAIN && this.allowedUploads < MAX_CONCURRENT_UPLOADS) {
+			this.throughput[this.allowedUploads + 1] = 0;
+			this.uploadsSinceProbe = 0;
+		}
+		
+		double current = this.throughput[this.allowedUploads];
+		if (this.allowedUploads > 1 && current < this.throughput[this.allowedUploads - 1] * GAIN_TO_KEEP_A_CONNECTION) {
+			this.allowedUploads--;
+		}
+		else if (backlog_ && current > 0 && this.allowedUploads < MAX_CONCURRENT_UPLOADS) {
+			double next = this.throughput[this.allowedUploads + 1];
+			if (next == 0 || next > current * GAIN_TO_KEEP_A_CONNECTION) {
+				this.allowedUploads++;
+			}
+		}
+		
+		notifyAll();
+	}
+	
+	/**
+	 * Report the duration of a render, in ms
+	 */
+	public synchronized void renderFinished(long duration_) {
+		if (duration_ > 0) {
+			this.averageRenderDuration = smooth(this.averageRenderDuration, duration_);
+		}
+	}
+	
+	/**
+	 * @param minimum_ depth used until the upload and render times are known
+	 * @param nb_slots_ number of frames rendered at the same time
+	 * @return how many frames can be rendered and not yet uploaded before the renderer has to wait
+	 */
+	public synchronized int queueDepth(int minimum_, int nb_slots_) {
+		if (this.averageUploadDuration == 0 || this.averageRenderDuration == 0) {
+			return minimum_;
+		}
+		
+		// enough frames to keep every upload busy, plus the frames rendered while they are uploaded
+		int depth = this.allowedUploads + (int) Math.ceil(this.averageUploadDuration * nb_slots_ / this.averageRenderDuration);
+		return Math.min(MAX_QUEUE_DEPTH, Math.max(minimum_, depth));
+	}
+	
+	private static double smooth(double average_, double value_) {
+		if (average_ == 0) {
+			return value_;
+		}
+		return average_ * (1 - SMOOTHING) + value_ * SMOOTHING;
+	}
+	
+	public String toString() {
+		return String.format("UploadScheduler (allowedUploads %d, activeUploads %d, averageUploadDuration %.0fms, averageRenderDuration %.0fms)",
+				this.allowedUploads, this.activeUploads, this.averageUploadDuration, this.averageRenderDuration);
+	}
+}
@@ -40,8 +40,6 @@ import java.util.regex.Pattern;
 
 import javax.xml.bind.DatatypeConverter;
 
-import net.lingala.zip4j.model.UnzipParameters;
-import net.lingala.zip4j.core.ZipFile;
 import net.lingala.zip4j.exception.ZipException;
 
 import org.w3c.dom.Document;
@@ -52,25 +50,36 @@ import com.sheepit.client.Error.ServerCode;
 import com.sheepit.client.exception.FermeExceptionNoSpaceLeftOnDevice;
 
 public class Utils {
-	public static int unzipFileIntoDirectory(String zipFileName_, String destinationDirectory, String password, Log log)
+	public static int unzipFileIntoDirectory(String zipFileName_, String destinationDirectory, String password, ArchiveCache cache, Log log)
 			throws FermeExceptionNoSpaceLeftOnDevice {
+		ArchiveCache.Reservation reservation = null;
 		try {
-			ZipFile zipFile = new ZipFile(zipFileName_);
-			UnzipParameters unzipParameters = new UnzipParameters();
-			unzipParameters.setIgnoreDateTimeAttributes(true);
-			
-			if (password != null && zipFile.isEncrypted()) {
-				zipFile.setPassword(password);
+			ZipExtractor extractor = new ZipExtractor(new File(zipFileName_));
+			if (cache != null) {
+				// room is made for the extracted files before writing any
+				reservation = cache.reserve(new File(destinationDirectory), extractor.getUncompressedSize());
+				if (reservation == null) {
+					throw new FermeExceptionNoSpaceLeftOnDevice();
+				}
 			}
-			zipFile.extractAll(destinationDirectory, unzipParameters);
+			extractor.extract(new File(destinationDirectory), password);
 		}
-		catch (ZipException e) {
+		catch (ZipException | IOException e) {
+			if (noFreeSpaceOnDisk(destinationDirectory)) {
+				throw new FermeExceptionNoSpaceLeftOnDevice();
+			}
+			
 			StringWriter sw = new StringWriter();
 			PrintWriter pw = new PrintWriter(sw);
 			e.printStackTrace(pw);
 			log.debug("Utils::unzipFileIntoDirectory(" + zipFileName_ + "," + destinationDirectory + ") exception " + e + " stacktrace: " + sw.toString());
 			return -1;
 		}
+		finally {
+			if (reservation != null) {
+				reservation.release();
+			}
+		}
 		return 0;
 	}
 	
@@ -145,7 +154,11 @@ public class Utils {
 				}
 			}
 		}
-		file.delete();
+		if (file.delete() == false && file.canWrite() == false) {
+			// read-only files can't be removed on Windows
+			file.setWritable(true);
+			file.delete();
+		}
 	}
 	
 	/**
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import net.lingala.zip4j.core.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.io.ZipInputStream;
+import net.lingala.zip4j.model.FileHeader;
+
+/**
+ * Extract a zip archive with several threads. The central directory is read once, when the extractor is created (the size of the archive
+ * once extracted is known before extracting it), the directories are created, then the files are extracted in parallel, the biggest ones first
+ * so a big file doesn't end up alone at the end.
+ *
+ * Each entry is read by zip4j with its own handle on the archive, with the same decryption (ZipCrypto or AES) and decompression as
+ * ZipFile.extractAll, and its crc (or AES authentication code) is checked once it's extracted.
+ */
+public class ZipExtractor {
+	private static final int MAX_THREADS = 8; // the disk is the limit after that
+	private static final int BUFFER_SIZE = 1024 * 1024;
+	private static final int MIN_BUFFER_SIZE = 8 * 1024;
+	
+	private ZipFile zipFile;
+	private List<FileHeader> headers;
+	
+	/**
+	 * Read the central directory of the archive
+	 *
+	 * @throws ZipException if the archive is broken
+	 */
+	public ZipExtractor(File archive_) throws ZipException {
+		this.zipFile = new ZipFile(archive_);
+		this.headers = new ArrayList<FileHeader>();
+		for (Object object : this.zipFile.getFileHeaders()) { // zip4j parses the central directory on each call
+			this.headers.add((FileHeader) object);
+		}
+	}
+	
+	/**
+	 * @return the size of the files of the archive once extracted, in bytes
+	 * @throws ZipException if the archive is broken
+	 */
+	public static long getUncompressedSize(File archive_) throws ZipException {
+		return new ZipExtractor(archive_).getUncompressedSize();
+	}
+	
+	/**
+	 * @throws ZipException if the archive is broken or the password is wrong
+	 * @throws IOException if a file can't be written
+	 */
+	public static void extract(File archive_, File destination_, String password_) throws ZipException, IOException {
+		new ZipExtractor(archive_).extract(destination_, password_);
+	}
+	
+	/**
+	 * @return the size of the files of the archive once extracted, in bytes
+	 */
+	public long getUncompressedSize() {
+		long size = 0;
+		for (FileHeader header : this.headers) {
+			size += header.getUncompressedSize();
+		}
+		return size;
+	}
+	
+	/**
+	 * @throws ZipException if the archive is broken or the password is wrong
+	 * @throws IOException if a file can't be written
+	 */
+	public void extract(File destination_, String password_) throws ZipException, IOException {
+		final ZipFile zipFile = this.zipFile;
+		if (password_ != null && zipFile.isEncrypted()) {
+			zipFile.setPassword(password_);
+		}
+		
+		String root = destination_.getCanonicalPath() + File.separator;
+		List<FileHeader> files = new ArrayList<FileHeader>();
+		for (FileHeader header : this.headers) {
+			File target = new File(destination_, header.getFileName());
+			if ((target.getCanonicalPath() + File.separator).startsWith(root) == false) {
+				throw new ZipException("Entry outside of the destination directory " + header.getFileName());
+			}
+			
+			if (header.isDirectory()) {
+				target.mkdirs();
+			}
+			else {
+				target.getParentFile().mkdirs();
+				files.add(header);
+			}
+		}
+		
+		Collections.sort(files, new Comparator<FileHeader>() {
+			@Override public int compare(FileHeader a, FileHeader b) {
+				return Long.compare(b.getUncompressedSize(), a.getUncompressedSize());
+			}
+		});
+		
+		int threads = Math.min(Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS), files.size());
+		if (threads <= 1) {
+			for (FileHeader header : files) {
+				extractEntry(zipFile, header, new File(destination_, header.getFileName()));
+			}
+			return;
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (final FileHeader header : files) {
+				final File target = new File(destination_, header.getFileName());
+				results.add(pool.submit(new Callable<Void>() {
+					@Override public Void call() throws Exception {
+						extractEntry(zipFile, header, target);
+						return null;
+					}
+				}));
+			}
+			
+			for (Future<Void> result : results) {
+				try {
+					result.get();
+				}
+				catch (ExecutionException e) {
+					// the fork-join pool wraps the checked exceptions in RuntimeException
+					Throwable cause = e.getCause();
+					while (cause instanceof RuntimeException && cause.getCause() != null) {
+						cause = cause.getCause();
+					}
+					if (cause instanceof ZipException) {
+						throw (ZipException) cause;
+					}
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					throw new IOException(cause);
+				}
+				catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+	
+	private static void extractEntry(ZipFile zipFile_, FileHeader header_, File target_) throws ZipException, IOException {
+		ZipInputStream input = zipFile_.getInputStream(header_);
+		boolean complete = false;
+		try (FileOutputStream output = new FileOutputStream(target_)) {
+			byte[] buffer = new byte[(int) Math.max(MIN_BUFFER_SIZE, Math.min(BUFFER_SIZE, header_.getUncompressedSize()))];
+			int length;
+			while ((length = input.read(buffer)) != -1) {
+				output.write(buffer, 0, length);
+			}
+			complete = true;
+		}
+		finally {
+			input.close(complete == false); // checks the crc of a complete entry
+		}
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import net.lingala.zip4j.crypto.engine.ZipCryptoEngine;
+
+/**
+ * Extract a zip archive while it's downloaded, by reading the local headers of the entries in order instead of the central directory at
+ * the end of the file.
+ *
+ * The entries are written to a staging directory, the caller decides what to do with it once the md5 of the archive is known. Only the
+ * stored and deflated entries, optionally encrypted with the standard zip encryption, are supported: anything else (AES encryption, stored
+ * entry of unknown size, ...) stops the extraction and the archive is extracted the usual way once downloaded.
+ */
+public class ZipStreamExtractor implements Runnable {
+	private static final int LOCAL_FILE_HEADER = 0x04034b50;
+	private static final int DATA_DESCRIPTOR = 0x08074b50;
+	private static final int CENTRAL_DIRECTORY = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+	private static final int ZIP64_EXTRA = 0x0001;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private File directory;
+	private String password;
+	private Log log;
+	private PushbackInputStream input;
+	private Thread thread;
+	private boolean success;
+	
+	public ZipStreamExtractor(File directory_, String password_, Log log_) {
+		this.directory = directory_;
+		this.password = password_;
+		this.log = log_;
+		this.input = null;
+		this.thread = null;
+		this.success = false;
+	}
+	
+	public File getDirectory() {
+		return this.directory;
+	}
+	
+	/**
+	 * Start the extraction in the background, input_ gives the bytes of the archive in order (and blocks until they are downloaded)
+	 */
+	public void start(InputStream input_) {
+		this.input = new PushbackInputStream(new BufferedInputStream(input_, BUFFER_SIZE), BUFFER_SIZE);
+		Utils.delete(this.directory);
+		this.directory.mkdirs();
+		
+		this.thread = new Thread(this);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+	
+	/**
+	 * Wait for the end of the extraction
+	 *
+	 * @return true if all the entries of the archive have been extracted
+	 */
+	public boolean await() {
+		if (this.thread == null) {
+			return false;
+		}
+		
+		while (this.thread.isAlive()) {
+			try {
+				this.thread.join();
+			}
+			catch (InterruptedException e) {
+			}
+		}
+		return this.success;
+	}
+	
+	/**
+	 * Wait for the end of the extraction and remove what has been extracted
+	 */
+	public void discard() {
+		this.await();
+		Utils.delete(this.directory);
+	}
+	
+	@Override public void run() {
+		try {
+			this.extract();
+			this.success = true;
+		}
+		catch (IOException e) {
+			this.log.debug("ZipStreamExtractor::run extraction to " + this.directory + " stopped (" + e + "), the archive will be extracted once downloaded");
+			Utils.delete(this.directory);
+		}
+		finally {
+			try {
+				this.input.close();
+			}
+			catch (IOException e) {
+			}
+		}
+	}
+	
+	private void extract() throws IOException {
+		String root = this.directory.getCanonicalPath() + File.separator;
+		
+		while (true) {
+			int signature = this.readInt();
+			if (signature == CENTRAL_DIRECTORY || signature == END_OF_CENTRAL_DIRECTORY) {
+				return; // all the entries are before the central directory
+			}
+			if (signature != LOCAL_FILE_HEADER) {
+				throw new IOException("Unexpected zip signature " + Integer.toHexString(signature));
+			}
+			
+			byte[] header = this.readFully(26);
+			int flags = this.readShort(header, 2);
+			int method = this.readShort(header, 4);
+			int time = this.readShort(header, 6);
+			long crc = this.readInt(header, 10) & 0xffffffffL;
+			long compressed = this.readInt(header, 14) & 0xffffffffL;
+			long size = this.readInt(header, 18) & 0xffffffffL;
+			String name = new String(this.readFully(this.readShort(header, 22)), (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : Charset.forName("Cp437"));
+			byte[] extra = this.readFully(this.readShort(header, 24));
+			boolean encrypted = (flags & 0x1) != 0;
+			boolean descriptor = (flags & 0x8) != 0;
+			
+			// with a Zip64 field the sizes of the entry are 8 bytes long, in the field and in the data descriptor
+			int zip64 = this.findZip64Field(extra);
+			if (zip64 != -1) {
+				if (size == 0xffffffffL) {
+					size = this.readLong(extra, zip64 + 4);
+				}
+				if (compressed == 0xffffffffL) {
+					compressed = this.readLong(extra, zip64 + 12);
+				}
+			}
+			else if (compressed == 0xffffffffL) {
+				throw new IOException("Zip64 entry without its sizes " + name);
+			}
+			
+			if ((flags & 0x40) != 0 || (method != STORED && method != DEFLATED)) {
+				throw new IOException("Unsupported compression or encryption (method " + method + ") for " + name);
+			}
+			// the sizes are usually written in the local header even with a data descriptor, but not always
+			if (method == STORED && descriptor && ((encrypted && compressed < 12) || (encrypted == false && compressed == 0 && size != 0))) {
+				throw new IOException("Stored entry of unknown size " + name);
+			}
+			
+			File target = new File(this.directory, name);
+			if (target.getCanonicalPath().startsWith(root) == false) {
+				throw new IOException("Entry outside of the extraction directory " + name);
+			}
+			boolean isDirectory = name.endsWith("/");
+			if (isDirectory) {
+				target.mkdirs();
+			}
+			else {
+				target.getParentFile().mkdirs();
+			}
+			
+			ZipCryptoEngine engine = null;
+			if (encrypted) {
+				// the last byte of the encryption header is the high byte of the crc, or of the time when the crc was not known yet
+				engine = this.initEncryption(name, (int) (crc >>> 24), (time >> 8) & 0xff);
+				compressed -= 12;
+			}
+			
+			CRC32 checksum = new CRC32();
+			long written;
+			try (OutputStream output = isDirectory ? new ByteArrayOutputStream() : new FileOutputStream(target)) {
+				if (method == STORED) {
+					this.copy(output, checksum, engine, compressed);
+					written = compressed;
+				}
+				else {
+					written = this.inflate(output, checksum, engine, descriptor ? -1 : compressed);
+				}
+			}
+			
+			if (descriptor) {
+				int value = this.readInt();
+				crc = (value == DATA_DESCRIPTOR ? this.readInt() : value) & 0xffffffffL;
+				// some writers (java.util.zip) use 8 bytes sizes for a big entry without a Zip64 field
+				this.readFully(zip64 != -1 || written >= 0xffffffffL ? 16 : 8); // compressed and uncompressed sizes
+			}
+			if (checksum.getValue() != crc) {
+				throw new IOException("CRC mismatch for " + name);
+			}
+		}
+	}
+	
+	/**
+	 * Read the 12 bytes header of an entry encrypted with the standard zip encryption
+	 */
+	private ZipCryptoEngine initEncryption(String name_, int check_, int otherCheck_) throws IOException {
+		if (this.password == null) {
+			throw new IOException("Encrypted entry without password " + name_);
+		}
+		
+		ZipCryptoEngine engine = new ZipCryptoEngine();
+		engine.initKeys(this.password.toCharArray());
+		byte[] header = this.readFully(12);
+		this.decrypt(engine, header, 0, header.length);
+		if ((header[11] & 0xff) != check_ && (header[11] & 0xff) != otherCheck_) {
+			throw new IOException("Wrong password for " + name_);
+		}
+		return engine;
+	}
+	
+	private void decrypt(ZipCryptoEngine engine_, byte[] buffer_, int offset_, int length_) {
+		for (int i = offset_; i < offset_ + length_; i++) {
+			byte value = (byte) (buffer_[i] ^ engine_.decryptByte());
+			engine_.updateKeys(value);
+			buffer_[i] = value;
+		}
+	}
+	
+	private void copy(OutputStream output_, CRC32 checksum_, ZipCryptoEngine engine_, long size_) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long remaining = size_;
+		while (remaining > 0) {
+			int len = this.input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if (len == -1) {
+				throw new EOFException();
+			}
+			if (engine_ != null) {
+				this.decrypt(engine_, buffer, 0, len);
+			}
+			output_.write(buffer, 0, len);
+			checksum_.update(buffer, 0, len);
+			remaining -= len;
+		}
+	}
+	
+	/**
+	 * @param compressed_ size of the compressed data, -1 if unknown (the end of the deflate stream is the end of the entry)
+	 * @return the size of the entry once inflated
+	 */
+	private long inflate(OutputStream output_, CRC32 checksum_, ZipCryptoEngine engine_, long compressed_) throws IOException {
+		byte[] raw = new byte[BUFFER_SIZE];
+		byte[] data = new byte[BUFFER_SIZE];
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long remaining = compressed_ < 0 ? Long.MAX_VALUE : compressed_;
+		int last = 0; // bytes given to the inflater on the last read
+		
+		Inflater inflater = new Inflater(true);
+		try {
+			while (inflater.finished() == false) {
+				if (inflater.needsInput()) {
+					if (remaining <= 0) {
+						throw new EOFException();
+					}
+					last = this.input.read(raw, 0, (int) Math.min(raw.length, remaining));
+					if (last == -1) {
+						throw new EOFException();
+					}
+					remaining -= last;
+					System.arraycopy(raw, 0, data, 0, last);
+					if (engine_ != null) {
+						this.decrypt(engine_, data, 0, last);
+					}
+					inflater.setInput(data, 0, last);
+				}
+				
+				int len = inflater.inflate(buffer);
+				if (len > 0) {
+					output_.write(buffer, 0, len);
+					checksum_.update(buffer, 0, len);
+				}
+				else if (inflater.needsDictionary()) {
+					throw new IOException("Deflate dictionary not supported");
+				}
+			}
+			
+			if (compressed_ < 0) {
+				// the bytes read after the end of the deflate stream belong to the data descriptor
+				this.input.unread(raw, last - inflater.getRemaining(), inflater.getRemaining());
+			}
+			else {
+				this.skip(remaining);
+			}
+			return inflater.getBytesWritten();
+		}
+		catch (DataFormatException e) {
+			throw new IOException(e);
+		}
+		finally {
+			inflater.end();
+		}
+	}
+	
+	/**
+	 * @return the offset of the Zip64 extended information in the extra field of a local header (its uncompressed then compressed sizes
+	 * follow the 4 bytes of id and length), -1 if there is none
+	 */
+	private int findZip64Field(byte[] extra_) throws IOException {
+		int offset = 0;
+		while (offset + 4 <= extra_.length) {
+			int id = this.readShort(extra_, offset);
+			int size = this.readShort(extra_, offset + 2);
+			if (id == ZIP64_EXTRA) {
+				if (size < 16 || offset + 4 + size > extra_.length) {
+					throw new IOException("Zip64 field without the sizes of the entry");
+				}
+				return offset;
+			}
+			offset += 4 + size;
+		}
+		return -1;
+	}
+	
+	private void skip(long length_) throws IOException {
+		long remaining = length_;
+		while (remaining > 0) {
+			long len = this.input.skip(remaining);
+			if (len <= 0) {
+				if (this.input.read() == -1) {
+					throw new EOFException();
+				}
+				len = 1;
+			}
+			remaining -= len;
+		}
+	}
+	
+	private byte[] readFully(int length_) throws IOException {
+		byte[] buffer = new byte[length_];
+		int offset = 0;
+		while (offset < length_) {
+			int len = this.input.read(buffer, offset, length_ - offset);
+			if (len == -1) {
+				throw new EOFException();
+			}
+			offset += len;
+		}
+		return buffer;
+	}
+	
+	private int readInt() throws IOException {
+		return this.readInt(this.readFully(4), 0);
+	}
+	
+	private long readLong(byte[] buffer_, int offset_) {
+		return (this.readInt(buffer_, offset_ + 4) & 0xffffffffL) << 32 | (this.readInt(buffer_, offset_) & 0xffffffffL);
+	}
+	
+	private int readInt(byte[] buffer_, int offset_) {
+		return (buffer_[offset_] & 0xff) | (buffer_[offset_ + 1] & 0xff) << 8 | (buffer_[offset_ + 2] & 0xff) << 16 | (buffer_[offset_ + 3] & 0xff) << 24;
+	}
+	
+	private int readShort(byte[] buffer_, int offset_) {
+		return (buffer_[offset_] & 0xff) | (buffer_[offset_ + 1] & 0xff) << 8;
+	}
+}
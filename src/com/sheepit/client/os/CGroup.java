@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client.os;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sheepit.client.Log;
+import com.sheepit.client.os.posix.CLib;
+import com.sun.jna.Native;
+
+/**
+ * A cgroup v2 (Linux) holding a renderer and all its children, with hard limits on the memory, cpu and disk access.
+ *
+ * The renders are put in sub groups of the client's own cgroup, which must have been delegated to the user running the client (for example
+ * with Delegate=yes in a systemd service, or in a container). As a cgroup can't both hold processes and share its controllers with its sub
+ * groups, the client moves itself into a "client" sub group first. If the cgroup can't be used (cgroup v1, not delegated, other processes in
+ * it...), create returns null and the renders are started as before.
+ */
+public class CGroup {
+	private static final String ROOT = "/sys/fs/cgroup";
+	private static final String CLIENT_GROUP = "client";
+	private static final String RENDER_GROUP_PREFIX = "render-";
+	private static final long REMOVE_TIMEOUT = 2000; // in ms, for the killed processes to exit
+	
+	private static File parent = null; // where the render groups are created, null if not set up yet
+	private static boolean unavailable = false;
+	private static final Set<File> created = new HashSet<File>(); // directories of the groups created and not removed yet
+	private static final Map<Process, CGroup> groups = new HashMap<Process, CGroup>(); // of the running renders
+	
+	private File directory;
+	private Process process;
+	
+	private CGroup(File directory_) {
+		this.directory = directory_;
+		this.process = null;
+	}
+	
+	/**
+	 * Create the cgroup of a render
+	 *
+	 * @param maxMemory_ in kB, -1 if there is no limit. The swap is included
+	 * @param cores_ number of cores the processes can use at the same time, -1 if there is no limit
+	 * @param priority_ from 19 (lowest) to -19 (highest), sets the share of cpu time and disk access of the group when they are used by other
+	 * processes
+	 * @return null if the cgroups can't be used
+	 */
+	public static synchronized CGroup create(String name_, long maxMemory_, int cores_, int priority_) {
+		Log log = Log.getInstance(null);
+		if (setUp(log) == false) {
+			return null;
+		}
+		removeStaleGroups(log);
+		
+		File directory = new File(parent, RENDER_GROUP_PREFIX + name_ + "-" + System.currentTimeMillis());
+		if (directory.mkdir() == false) {
+			log.error("CGroup::create failed to create " + directory + ", the render will not be limited");
+			return null;
+		}
+		CGroup group = new CGroup(directory);
+		try {
+			if (maxMemory_ > 0) {
+				group.write("memory.max", Long.toString(maxMemory_ * 1024));
+				if (new File(directory, "memory.swap.max").exists()) {
+					group.write("memory.swap.max", "0"); // swapping would only delay the limit
+				}
+			}
+			if (cores_ > 0) {
+				group.write("cpu.max", (cores_ * 100000) + " 100000");
+			}
+			group.write("cpu.weight.nice", Integer.toString(Math.max(-20, Math.min(19, priority_))));
+			if (new File(directory, "io.weight").exists()) {
+				// 10 for the lowest priority, 100 (the default) for 0 and 1000 for the highest
+				group.write("io.weight", "default " + Math.round(100 * Math.pow(10, -Math.max(-19, Math.min(19, priority_)) / 19.0)));
+			}
+		}
+		catch (IOException e) {
+			log.error("CGroup::create failed to set the limits of " + directory + " (" + e + "), the render will not be limited");
+			directory.delete();
+			return null;
+		}
+		created.add(directory); // from now on, it's not a stale group even if its renderer is not started yet
+		log.debug("CGroup::create render group " + directory + " (memory " + maxMemory_ + "k, cores " + cores_ + ", priority " + priority_ + ")");
+		return group;
+	}
+	
+	/**
+	 * @return the group of the process, null if it's not in one
+	 */
+	public static synchronized CGroup of(Process process_) {
+		return process_ != null ? groups.get(process_) : null;
+	}
+	
+	/**
+	 * @return the command, started in the group (before the command itself, so all its children are in it too)
+	 */
+	public List<String> wrap(List<String> command_) {
+		String procs = new File(this.directory, "cgroup.procs").getAbsolutePath().replace("'", "'\\''");
+		List<String> wrapped = new ArrayList<String>(command_.size() + 4);
+		wrapped.add("/bin/sh");
+		wrapped.add("-c");
+		wrapped.add("echo $$ > '" + procs + "' && exec \"$@\"");
+		wrapped.add("sh");
+		wrapped.addAll(command_);
+		return wrapped;
+	}
+	
+	/**
+	 * The process started with the wrapped command
+	 */
+	public void attach(Process process_) {
+		synchronized (CGroup.class) {
+			this.process = process_;
+			groups.put(process_, this);
+		}
+	}
+	
+	/**
+	 * Kill all the processes of the group at once
+	 *
+	 * @return false if they couldn't be killed
+	 */
+	public boolean kill() {
+		try {
+			if (new File(this.directory, "cgroup.kill").exists()) { // linux 5.14 and later
+				this.write("cgroup.kill", "1");
+				return true;
+			}
+			
+			CLib clib = (CLib) Native.load(CLib.path, CLib.class);
+			boolean killed = true;
+			for (String pid : this.read("cgroup.procs").split("\n")) {
+				if (pid.isEmpty() == false && clib.kill(Integer.parseInt(pid), CLib.SIGKILL) != 0) {
+					killed = false;
+				}
+			}
+			return killed;
+		}
+		catch (IOException | UnsatisfiedLinkError | NumberFormatException e) {
+			Log.getInstance(null).error("CGroup::kill failed to kill the processes of " + this.directory + " (" + e + ")");
+			return false;
+		}
+	}
+	
+	/**
+	 * @return the memory used by the processes of the group, in kB, -1 if it can't be read. Only the anonymous memory is counted, memory.current
+	 * and memory.peak include the page cache, which grows with the size of the files read by the renderer
+	 */
+	public long getMemoryUsed() {
+		long anon = this.readValue("memory.stat", "anon");
+		return anon != -1 ? anon / 1024 : -1;
+	}
+	
+	/**
+	 * @return the cpu time used by the group, in ms, -1 if it can't be read
+	 */
+	public long getCpuTime() {
+		long usage = this.readValue("cpu.stat", "usage_usec");
+		return usage != -1 ? usage / 1000 : -1;
+	}
+	
+	/**
+	 * @return the number of processes of the group killed by the system because the group was over its maximum memory
+	 */
+	public long getOutOfMemoryKills() {
+		return Math.max(this.readValue("memory.events", "oom_kill"), 0);
+	}
+	
+	/**
+	 * Kill the processes left in the group (the children of the renderer) and remove it
+	 */
+	public void remove() {
+		removeGroup(this.directory, Log.getInstance(null));
+		synchronized (CGroup.class) {
+			if (this.process != null) {
+				groups.remove(this.process);
+			}
+			created.remove(this.directory);
+		}
+	}
+	
+	private static boolean removeGroup(File directory_, Log log_) {
+		CGroup group = new CGroup(directory_);
+		long deadline = System.currentTimeMillis() + REMOVE_TIMEOUT;
+		boolean killed = false;
+		while (directory_.delete() == false) { // only possible once all its processes have exited
+			if (directory_.exists() == false) {
+				return true;
+			}
+			if (killed == false) {
+				killed = group.kill();
+			}
+			if (System.currentTimeMillis() > deadline) {
+				log_.error("CGroup::removeGroup failed to remove " + directory_ + ", processes are still running in it");
+				return false;
+			}
+			try {
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Remove the groups left by renders which were not cleaned up (for example a render stopped on an error while the renderer was running)
+	 */
+	private static void removeStaleGroups(Log log_) {
+		File[] files = parent.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			if (file.isDirectory() && file.getName().startsWith(RENDER_GROUP_PREFIX)) {
+				if (created.contains(file) == false) {
+					log_.debug("CGroup::removeStaleGroups removing " + file);
+					removeGroup(file, log_);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Find the client's cgroup and make its memory, cpu and io controllers available to the render groups
+	 */
+	private static boolean setUp(Log log_) {
+		if (parent != null) {
+			return true;
+		}
+		if (unavailable) {
+			return false;
+		}
+		
+		try {
+			if (new File(ROOT, "cgroup.controllers").exists() == false) {
+				throw new IOException("no cgroup v2 mounted on " + ROOT);
+			}
+			String path = null;
+			for (String line : new String(Files.readAllBytes(new File("/proc/self/cgroup").toPath()), StandardCharsets.UTF_8).split("\n")) {
+				if (line.startsWith("0::")) {
+					path = line.substring(3).trim();
+				}
+			}
+			if (path == null) {
+				throw new IOException("the client is not in a cgroup v2");
+			}
+			
+			File own = new File(ROOT + path);
+			CGroup group = new CGroup(own);
+			if (new File(own, "cgroup.procs").canWrite() == false || new File(own, "cgroup.subtree_control").canWrite() == false) {
+				throw new IOException(own + " is not delegated to the user of the client");
+			}
+			String controllers = " " + group.read("cgroup.controllers").trim() + " ";
+			if (controllers.contains(" memory ") == false || controllers.contains(" cpu ") == false) {
+				throw new IOException("the memory and cpu controllers are not available in " + own + " (" + controllers.trim() + ")");
+			}
+			
+			File root = new File(ROOT);
+			if (own.equals(root) == false && group.read("cgroup.procs").trim().isEmpty() == false) {
+				// a group with processes can't enable the controllers of its sub groups, move the client in one of them
+				String self = new File("/proc/self").getCanonicalFile().getName();
+				for (String pid : group.read("cgroup.procs").trim().split("\n")) {
+					if (pid.equals(self) == false) {
+						throw new IOException("other processes than the client are in " + own);
+					}
+				}
+				File client = new File(own, CLIENT_GROUP);
+				if (client.isDirectory() == false && client.mkdir() == false) {
+					throw new IOException("failed to create " + client);
+				}
+				new CGroup(client).write("cgroup.procs", self);
+			}
+			
+			group.write("cgroup.subtree_control", "+memory +cpu");
+			try {
+				group.write("cgroup.subtree_control", "+io");
+			}
+			catch (IOException e) {
+				log_.debug("CGroup::setUp io controller not available in " + own + ", the disk access of the renders will not be weighted");
+			}
+			parent = own;
+			log_.debug("CGroup::setUp the renders will be in sub groups of " + own);
+			return true;
+		}
+		catch (IOException | SecurityException e) {
+			log_.error("CGroup::setUp cgroups can't be used (" + e + "), the renders will not be limited");
+			unavailable = true;
+			return false;
+		}
+	}
+	
+	/**
+	 * @param key_ the line of the file to read ("usage_usec 1234" for example), null if the file only holds the value
+	 * @return -1 if the file or the line is not there
+	 */
+	private long readValue(String file_, String key_) {
+		try {
+			for (String line : this.read(file_).split("\n")) {
+				if (key_ == null) {
+					return Long.parseLong(line.trim());
+				}
+				if (line.startsWith(key_ + " ")) {
+					return Long.parseLong(line.substring(key_.length() + 1).trim());
+				}
+			}
+		}
+		catch (IOException | NumberFormatException e) {
+		}
+		return -1;
+	}
+	
+	private String read(String file_) throws IOException {
+		return new String(Files.readAllBytes(new File(this.directory, file_).toPath()), StandardCharsets.UTF_8);
+	}
+	
+	private void write(String file_, String value_) throws IOException {
+		Files.write(new File(this.directory, file_).toPath(), value_.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -23,6 +23,11 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,6 +35,9 @@ import java.util.Scanner;
 
 import com.sheepit.client.Log;
 import com.sheepit.client.hardware.cpu.CPU;
+import com.sheepit.client.os.posix.CLib;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
 
 public class Linux extends OS {
 	private final String NICE_BINARY_PATH = "nice";
@@ -149,6 +157,10 @@ public class Linux extends OS {
 	}
 	
 	@Override public Process exec(List<String> command, Map<String, String> env_overight) throws IOException {
+		return this.exec(command, env_overight, null);
+	}
+	
+	@Override public Process exec(List<String> command, Map<String, String> env_overight, CGroup cgroup) throws IOException {
 		Map<String, String> new_env = new HashMap<String, String>();
 		new_env.putAll(java.lang.System.getenv()); // clone the env
 		
@@ -183,6 +195,10 @@ public class Linux extends OS {
 			Log.getInstance(null).error("No low priority binary, will not launch renderer in normal priority");
 		}
 		
+		if (cgroup != null) {
+			actual_command = cgroup.wrap(actual_command);
+		}
+		
 		ProcessBuilder builder = new ProcessBuilder(actual_command);
 		builder.redirectErrorStream(true);
 		Map<String, String> env = builder.environment();
@@ -190,7 +206,246 @@ public class Linux extends OS {
 		if (env_overight != null) {
 			env.putAll(env_overight);
 		}
-		return builder.start();
+		Process process = builder.start();
+		if (cgroup != null) {
+			cgroup.attach(process);
+		}
+		return process;
+	}
+	
+	@Override public CGroup createCGroup(String name, long maxMemory, int cores, int priority) {
+		return CGroup.create(name, maxMemory, cores, priority);
+	}
+	
+	/**
+	 * Kill the process and all its children at once if it's in a cgroup, only the process otherwise
+	 */
+	@Override public boolean kill(Process process) {
+		CGroup cgroup = CGroup.of(process);
+		if (cgroup != null && cgroup.kill()) {
+			return true;
+		}
+		return super.kill(process);
+	}
+	
+	@Override public boolean preallocate(File file, long size) throws IOException {
+		CLib clib;
+		try {
+			clib = (CLib) Native.load(CLib.path, CLib.class);
+		}
+		catch (UnsatisfiedLinkError e) {
+			return false;
+		}
+		
+		int fd = clib.open(file.getAbsolutePath(), CLib.O_WRONLY, 0);
+		if (fd < 0) {
+			return false;
+		}
+		try {
+			if (clib.fallocate(fd, 0, 0, size) == 0) {
+				return true;
+			}
+			if (Native.getLastError() == CLib.ENOSPC) {
+				throw new IOException("No space left on device to allocate " + size + " bytes for " + file);
+			}
+			return false; // not supported by the file system
+		}
+		finally {
+			clib.close(fd);
+		}
+	}
+	
+	@Override public ProcessSample sample(Process process) {
+		long pid = getPid(process);
+		if (pid <= 0 || new File("/proc/" + pid).isDirectory() == false) {
+			return null;
+		}
+		
+		ProcessSample sample = new ProcessSample(new Date().getTime());
+		for (long child : getProcessTree(pid)) {
+			String status = readProcFile(child, "status");
+			if (status == null) { // already exited
+				continue;
+			}
+			sample.setProcesses(sample.getProcesses() + 1);
+			
+			// the proportional share doesn't count twice the memory shared with the children, but smaps_rollup is only there since linux 4.14
+			String rollup = readProcFile(child, "smaps_rollup");
+			long memory = rollup != null ? procValue(rollup, "Pss:") : -1;
+			long swap = rollup != null ? procValue(rollup, "SwapPss:") : -1;
+			if (memory == -1) {
+				memory = procValue(status, "VmRSS:");
+			}
+			if (swap == -1) {
+				swap = procValue(status, "VmSwap:");
+			}
+			sample.setMemory(sample.getMemory() + Math.max(memory, 0) + Math.max(swap, 0));
+			sample.setSwap(sample.getSwap() + Math.max(swap, 0));
+			
+			String io = readProcFile(child, "io");
+			if (io != null) {
+				sample.setReadBytes(sample.getReadBytes() + Math.max(procValue(io, "read_bytes:"), 0));
+				sample.setWrittenBytes(sample.getWrittenBytes() + Math.max(procValue(io, "write_bytes:"), 0));
+			}
+		}
+		return sample.getProcesses() > 0 ? sample : null;
+	}
+	
+	/**
+	 * @return the pid and the ones of all its descendants
+	 */
+	private List<Long> getProcessTree(long pid) {
+		List<Long> tree = new ArrayList<Long>();
+		tree.add(pid);
+		
+		Map<Long, List<Long>> children = null; // by parent, when the kernel doesn't list the children of a process
+		for (int i = 0; i < tree.size(); i++) {
+			long parent = tree.get(i);
+			List<Long> found = null;
+			File[] tasks = new File("/proc/" + parent + "/task").listFiles();
+			if (tasks != null && tasks.length > 0 && new File(tasks[0], "children").exists()) {
+				found = new ArrayList<Long>();
+				for (File task : tasks) {
+					String list = readFile(new File(task, "children"));
+					if (list != null) {
+						for (String child : list.trim().split(" ")) {
+							if (child.isEmpty() == false) {
+								found.add(Long.parseLong(child));
+							}
+						}
+					}
+				}
+			}
+			else {
+				if (children == null) {
+					children = getChildrenByParent();
+				}
+				found = children.get(parent);
+			}
+			if (found != null) {
+				for (Long child : found) {
+					if (tree.contains(child) == false) {
+						tree.add(child);
+					}
+				}
+			}
+		}
+		return tree;
+	}
+	
+	private Map<Long, List<Long>> getChildrenByParent() {
+		Map<Long, List<Long>> children = new HashMap<Long, List<Long>>();
+		File[] processes = new File("/proc").listFiles();
+		if (processes == null) {
+			return children;
+		}
+		for (File process : processes) {
+			if (process.getName().matches("[0-9]+") == false) {
+				continue;
+			}
+			String stat = readFile(new File(process, "stat"));
+			if (stat == null) {
+				continue;
+			}
+			// "pid (name) state ppid ...", the name can contain spaces and parentheses
+			String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+			if (fields.length > 1) {
+				Long parent = Long.parseLong(fields[1]);
+				if (children.containsKey(parent) == false) {
+					children.put(parent, new ArrayList<Long>());
+				}
+				children.get(parent).add(Long.parseLong(process.getName()));
+			}
+		}
+		return children;
+	}
+	
+	/**
+	 * @return the value of the field of a /proc file ("VmRSS:   1234 kB" for example), -1 if it's not there
+	 */
+	private static long procValue(String content, String field) {
+		int index = content.startsWith(field) ? 0 : content.indexOf("\n" + field);
+		if (index == -1) {
+			return -1;
+		}
+		int start = content.indexOf(field, index) + field.length();
+		while (start < content.length() && (content.charAt(start) == ' ' || content.charAt(start) == '\t')) {
+			start++;
+		}
+		int end = start;
+		while (end < content.length() && Character.isDigit(content.charAt(end))) {
+			end++;
+		}
+		if (end == start) {
+			return -1;
+		}
+		return Long.parseLong(content.substring(start, end));
+	}
+	
+	private static String readProcFile(long pid, String name) {
+		return readFile(new File("/proc/" + pid + "/" + name));
+	}
+	
+	private static String readFile(File file) {
+		try {
+			return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+		}
+		catch (IOException | SecurityException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * @return the pid of the process, -1 if it can't be found
+	 */
+	private static long getPid(Process process) {
+		if (process == null) {
+			return -1;
+		}
+		try {
+			return (Long) Process.class.getMethod("pid").invoke(process); // java 9+
+		}
+		catch (ReflectiveOperationException e) {
+		}
+		try {
+			Field field = process.getClass().getDeclaredField("pid"); // java.lang.UNIXProcess of java 8
+			field.setAccessible(true);
+			return field.getLong(process);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			return -1;
+		}
+	}
+	
+	@Override public boolean cloneFile(File source, File destination) {
+		CLib clib;
+		try {
+			clib = (CLib) Native.load(CLib.path, CLib.class);
+		}
+		catch (UnsatisfiedLinkError e) {
+			return false;
+		}
+		
+		int source_fd = clib.open(source.getAbsolutePath(), CLib.O_RDONLY, 0);
+		if (source_fd < 0) {
+			return false;
+		}
+		try {
+			int destination_fd = clib.open(destination.getAbsolutePath(), CLib.O_WRONLY | CLib.O_CREAT_LINUX | CLib.O_EXCL_LINUX, 0644);
+			if (destination_fd < 0) {
+				return false;
+			}
+			int ret = clib.ioctl(destination_fd, new NativeLong(CLib.FICLONE), source_fd); // fails if the file system doesn't support it (ext4)
+			clib.close(destination_fd);
+			if (ret != 0) {
+				destination.delete();
+				return false;
+			}
+			return true;
+		}
+		finally {
+			clib.close(source_fd);
+		}
 	}
 	
 	@Override public boolean getSupportHighPriority() {
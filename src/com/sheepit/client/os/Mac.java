@@ -28,6 +28,8 @@ import java.util.Map;
 
 import com.sheepit.client.Log;
 import com.sheepit.client.hardware.cpu.CPU;
+import com.sheepit.client.os.posix.CLib;
+import com.sun.jna.Native;
 
 public class Mac extends OS {
 	private final String NICE_BINARY_PATH = "nice";
@@ -169,6 +171,16 @@ public class Mac extends OS {
 		return "/usr/local/cuda/lib/libcuda.dylib";
 	}
 	
+	@Override public boolean cloneFile(File source, File destination) {
+		try {
+			CLib clib = (CLib) Native.load(CLib.path, CLib.class);
+			return clib.clonefile(source.getAbsolutePath(), destination.getAbsolutePath(), 0) == 0; // fails if the file system is not APFS
+		}
+		catch (UnsatisfiedLinkError e) { // clonefile is only available since macOS 10.12
+			return false;
+		}
+	}
+	
 	@Override public boolean getSupportHighPriority() {
 		try {
 			ProcessBuilder builder = new ProcessBuilder();
@@ -18,6 +18,7 @@
  */
 package com.sheepit.client.os;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
@@ -56,6 +57,52 @@ public abstract class OS {
 		return builder.start();
 	}
 	
+	/**
+	 * Start the process in the cgroup (from createCGroup), or as exec does if it's null
+	 */
+	public Process exec(List<String> command, Map<String, String> env, CGroup cgroup) throws IOException {
+		return this.exec(command, env);
+	}
+	
+	/**
+	 * Create a cgroup (Linux) for a render, see CGroup.create
+	 *
+	 * @return null if the system doesn't support it
+	 */
+	public CGroup createCGroup(String name, long maxMemory, int cores, int priority) {
+		return null;
+	}
+	
+	/**
+	 * Create destination as a copy-on-write clone of source (reflink): the blocks are shared until one of the files is modified, nothing is
+	 * written on the disk.
+	 *
+	 * @return false if the system or the file system doesn't support it, destination is then not created
+	 */
+	public boolean cloneFile(File source, File destination) {
+		return false;
+	}
+	
+	/**
+	 * Allocate the blocks of the first size bytes of the file on the disk, without writing them, so the file can't run out of space while it's
+	 * written. The file is extended to size if it's smaller.
+	 *
+	 * @return false if the system or the file system doesn't support it
+	 * @throws IOException if there is not enough space on the disk
+	 */
+	public boolean preallocate(File file, long size) throws IOException {
+		return false;
+	}
+	
+	/**
+	 * Measure the resources used by the process and its children (the renderer can start other processes)
+	 *
+	 * @return null if the system doesn't tell
+	 */
+	public ProcessSample sample(Process process) {
+		return null;
+	}
+	
 	public boolean kill(Process proc) {
 		if (proc != null) {
 			proc.destroy();
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client.os;
+
+import lombok.Data;
+
+/**
+ * Resources used by a process and all its children at a given time
+ */
+@Data public class ProcessSample {
+	private long time; // in ms
+	private int processes;
+	private long memory; // in kB, resident (proportional share if the system gives it) and swapped
+	private long swap; // in kB
+	private long readBytes; // from the disk, since the start of the processes
+	private long writtenBytes;
+	
+	public ProcessSample(long time_) {
+		this.time = time_;
+		this.processes = 0;
+		this.memory = 0;
+		this.swap = 0;
+		this.readBytes = 0;
+		this.writtenBytes = 0;
+	}
+}
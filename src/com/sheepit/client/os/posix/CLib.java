@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client.os.posix;
+
+import com.sun.jna.Library;
+import com.sun.jna.NativeLong;
+
+/**
+ * The few functions of the C library used by the client on Linux and macOS
+ */
+public interface CLib extends Library {
+	public static final String path = "c";
+	
+	int O_RDONLY = 0;
+	int O_WRONLY = 1;
+	int O_CREAT_LINUX = 0100;
+	int O_EXCL_LINUX = 0200;
+	
+	/**
+	 * Linux ioctl sharing the blocks of the file descriptor given as argument, _IOW(0x94, 9, int)
+	 */
+	long FICLONE = 0x40049409L;
+	
+	int ENOSPC = 28;
+	
+	int SIGKILL = 9;
+	
+	int open(String pathname, int flags, int mode);
+	
+	int close(int fd);
+	
+	int kill(int pid, int sig);
+	
+	int ioctl(int fd, NativeLong request, int arg);
+	
+	/**
+	 * Linux, allocate the blocks of a part of a file, returns -1 (and sets errno) if the file system doesn't support it or the disk is full
+	 */
+	int fallocate(int fd, int mode, long offset, long len);
+	
+	/**
+	 * macOS (10.12 and later), copy-on-write copy of a file on APFS
+	 */
+	int clonefile(String src, String dst, int flags);
+}
@@ -137,6 +137,11 @@ public class GuiText implements Gui {
 		System.out.println(String
 			.format("%s Session downloads: %s @ %s/s / Uploads: %s @ %s/s", this.df.format(new Date()), downloads.getSessionTraffic(),
 				downloads.getAverageSessionSpeed(), uploads.getSessionTraffic(), uploads.getAverageSessionSpeed()));
+		if (downloads.isLimited() || uploads.isLimited()) {
+			System.out.println(String
+				.format("%s Network now: downloads %s/s (limit %s) / Uploads %s/s (limit %s)", this.df.format(new Date()), downloads.getCurrentSpeed(),
+					downloads.getCurrentLimit(), uploads.getCurrentSpeed(), uploads.getCurrentLimit()));
+		}
 	}
 	
 	@Override public void displayStats(Stats stats) {
@@ -37,6 +37,8 @@ import java.util.LinkedList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.sheepit.client.ArchiveCache;
+import com.sheepit.client.BandwidthLimiter;
 import com.sheepit.client.Client;
 import com.sheepit.client.Configuration;
 import com.sheepit.client.Configuration.ComputeType;
@@ -77,6 +79,12 @@ public class Worker {
 	
 	@Option(name = "--verbose", usage = "Display log", required = false) private boolean print_log = false;
 	
+	@Option(name = "-log-file", usage = "Write the log in a file, it's rotated every 10MB and the 3 previous ones are kept (file.1 being the most recent)", metaVar = "/var/log/sheepit.log", required = false) private String log_file = null;
+	
+	@Option(name = "-renderer-sample-interval", usage = "Interval in seconds between two measures of the memory used by the renderer and its children processes, to stop it as soon as it's over -memory (Linux only). Default 2, 0 to disable", metaVar = "2", required = false) private int renderer_sample_interval = 2;
+	
+	@Option(name = "--cgroups", usage = "Run each render in its own cgroup with hard limits from -memory, -cores and -priority, and kill all its processes at once (Linux with cgroup v2 only, the cgroup of the client must be delegated to its user, for example with Delegate=yes in a systemd service)", required = false) private boolean use_cgroups = false;
+	
 	@Option(name = "-request-time", usage = "H1:M1-H2:M2,H3:M3-H4:M4 Use the 24h format. For example to request job between 2am-8.30am and 5pm-11pm you should do --request-time 2:00-8:30,17:00-23:00 Caution, it's the requesting job time to get a project, not the working time", metaVar = "2:00-8:30,17:00-23:00", required = false) private String request_time = null;
 	
 	@Option(name = "-shutdown", usage = "Specify when the client will close and the host computer will shut down in a proper way. The time argument can have two different formats: an absolute date and time in the format yyyy-mm-ddThh:mm:ss (24h format) or a relative time in the format +m where m is the number of minutes from now.", metaVar = "DATETIME or +N", required = false) private String shutdown = null;
@@ -106,6 +114,20 @@ public class Worker {
 	
 	@Option(name = "-renderbucket-size", usage = "Set a custom GPU renderbucket size (32 for 32x32px, 64 for 64x64px, and so on). NVIDIA GPUs support a maximum renderbucket size of 512x512 pixel, while AMD GPUs support a maximum 2048x2048 pixel renderbucket size. Minimum renderbucket size is 32 pixels for all GPUs", required = false) private int renderbucketSize = -1;
 	
+	@Option(name = "--prefetch", usage = "Request, download and extract the next job while the current frame is rendering", required = false) private boolean prefetch = false;
+	
+	@Option(name = "-slots", usage = "Number of frames rendered at the same time, the cores and memory are split between them. Only the first one can use the GPU", metaVar = "2", required = false) private int slots = 1;
+	
+	@Option(name = "-scene-cache-size", usage = "Maximum size of the extracted projects kept between frames, number with unit (800M, 20G, ...). Default is a quarter of the free space of the cache directory, 0 to disable", required = false) private String scene_cache_size = null;
+	
+	@Option(name = "-archive-cache-size", usage = "Maximum size of the archives (and extracted renderers) kept in each cache directory (working, storage and shared-zip), number with unit (800M, 20G, ...). The least recently used ones are removed first. Default is no limit, the old ones are only removed when the disk is full", required = false) private String archive_cache_size = null;
+	
+	@Option(name = "-archive-cache-policy", usage = "Which archives are removed first when the cache is full: 'lru' (least recently used, default) or 'cost' (least expensive to download again, by size and number of uses)", required = false) private String archive_cache_policy = null;
+	
+	@Option(name = "-download-limit", usage = "Maximum download speed, in bytes per second with unit (500k, 2M, ...). It can depend on the time of the day, with time slots in the 24h format: 8:00-18:00=500k,18:00-22:00=2M,5M limits the downloads to 500kB/s during office hours, 2MB/s in the evening and 5MB/s the rest of the day (no limit outside of the time slots if there is no speed without time slot)", metaVar = "8:00-18:00=500k,5M", required = false) private String download_limit = null;
+	
+	@Option(name = "-upload-limit", usage = "Maximum upload speed, in the same format as -download-limit", metaVar = "8:00-18:00=200k", required = false) private String upload_limit = null;
+	
 	@Option(name = "-hostname", usage = "Set a custom hostname name (name change will be lost when client is closed)", required = false) private String hostname = null;
 	
 	public static void main(String[] args) {
@@ -129,8 +151,23 @@ public class Worker {
 		ComputeType compute_method = null;
 		Configuration config = new Configuration(null, login, password);
 		config.setPrintLog(print_log);
+		if (renderer_sample_interval < 0) {
+			System.err.println("ERROR: The renderer sample interval must be 0 (disabled) or more");
+			return;
+		}
+		config.setRendererSampleInterval(renderer_sample_interval * 1000L);
+		config.setUseCGroups(use_cgroups);
+		if (log_file != null) {
+			File file = new File(log_file);
+			if (file.getAbsoluteFile().getParentFile().isDirectory() == false || (file.exists() && file.canWrite() == false)) {
+				System.err.println("ERROR: The log file must be in an existing directory and writeable");
+				return;
+			}
+			config.setLogFile(file);
+		}
 		config.setUsePriority(priority);
 		config.setDetectGPUs(!no_gpu_detection);
+		config.setPrefetchNextJob(prefetch);
 		
 		if (sharedDownloadsDir != null) {
 			File dir = new File(sharedDownloadsDir);
@@ -230,6 +267,46 @@ public class Worker {
 			}
 		}
 		
+		if (scene_cache_size != null) {
+			try {
+				config.setSceneCacheSize(Utils.parseNumber(scene_cache_size));
+			}
+			catch (java.lang.IllegalStateException e) {
+				System.err.println(
+						String.format("ERROR: The entered value of scene cache size (-scene-cache-size parameter) doesn't seem to be a valid number [%s]", e.getMessage()));
+				return;
+			}
+		}
+		
+		if (archive_cache_size != null) {
+			try {
+				config.setArchiveCacheSize(Utils.parseNumber(archive_cache_size));
+			}
+			catch (java.lang.IllegalStateException e) {
+				System.err.println(
+						String.format("ERROR: The entered value of archive cache size (-archive-cache-size parameter) doesn't seem to be a valid number [%s]", e.getMessage()));
+				return;
+			}
+		}
+		
+		if (archive_cache_policy != null) {
+			try {
+				config.setArchiveCachePolicy(ArchiveCache.Policy.valueOf(archive_cache_policy.toUpperCase()));
+			}
+			catch (IllegalArgumentException e) {
+				System.err.println("ERROR: The entered value of archive cache policy (-archive-cache-policy parameter) must be 'lru' or 'cost'");
+				return;
+			}
+		}
+		
+		if (download_limit != null) {
+			parseBandwidthLimit("-download-limit", download_limit, config.getDownloadLimiter());
+		}
+		
+		if (upload_limit != null) {
+			parseBandwidthLimit("-upload-limit", upload_limit, config.getUploadLimiter());
+		}
+		
 		if (max_rendertime > 0) {
 			config.setMaxRenderTime(max_rendertime * 60);
 		}
@@ -288,6 +365,16 @@ public class Worker {
 		
 		config.setComputeMethod(compute_method);
 		
+		if (slots < 1) {
+			System.err.println("ERROR: The entered number of render slots (-slots parameter) is not valid. Please enter a number greater than zero");
+			System.exit(2);
+		}
+		else if (slots > 1 && compute_method == ComputeType.GPU) {
+			System.err.println("ERROR: Only one render slot can use the GPU, the compute method must be CPU or CPU_GPU to use more than one slot");
+			System.exit(2);
+		}
+		config.setRenderSlots(slots);
+		
 		// Change the default configuration if the user has specified a minimum renderbucket size of 32
 		if (renderbucketSize >= GPU.MIN_RENDERBUCKET_SIZE) {
 			// Send the proposed renderbucket size and check if viable
@@ -469,6 +556,51 @@ public class Worker {
 		}
 	}
 	
+	/**
+	 * Parse a speed limit like "8:00-18:00=500k,18:00-22:00=2M,5M" (the speed without time slot is used outside of the time slots)
+	 */
+	private void parseBandwidthLimit(String option, String value, BandwidthLimiter limiter) {
+		SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm");
+		for (String item : value.split(",")) {
+			String[] parts = item.split("=");
+			try {
+				if (parts.length == 1) {
+					limiter.setDefaultRate(parseRate(parts[0]));
+					continue;
+				}
+				
+				String[] times = parts[0].split("-");
+				if (parts.length != 2 || times.length != 2) {
+					System.err.println(String.format("ERROR: The entered speed limit (%s parameter) doesn't seem to be valid [%s]", option, item));
+					System.exit(2);
+				}
+				
+				Calendar start = Calendar.getInstance();
+				Calendar end = Calendar.getInstance();
+				start.setTime(timeFormat.parse(times[0]));
+				end.setTime(timeFormat.parse(times[1]));
+				limiter.addTimeSlot(start, end, parseRate(parts[1]));
+			}
+			catch (ParseException e) {
+				System.err.println(String.format(
+						"ERROR: The entered time slot (%s parameter) doesn't seem to be valid. Please check the format is correct [%s]", option, e.getMessage()));
+				System.exit(2);
+			}
+			catch (IllegalStateException | IllegalArgumentException e) {
+				System.err.println(String.format("ERROR: The entered speed (%s parameter) doesn't seem to be a valid number [%s]", option, item));
+				System.exit(2);
+			}
+		}
+	}
+	
+	private long parseRate(String rate) {
+		long value = Utils.parseNumber(rate);
+		if (value <= 0) {
+			throw new IllegalArgumentException("speed must be positive");
+		}
+		return value;
+	}
+	
 	private LocalDateTime shutdownTimeParse(String shutdownTime) {
 		try {
 			DateTimeFormatter df = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
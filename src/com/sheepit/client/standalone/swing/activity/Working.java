@@ -319,8 +319,10 @@ public class Working implements Activity {
 	}
 	
 	public void displayTransferStats(TransferStats downloads, TransferStats uploads) {
-		sessionDownloadsStatsValue.setText(String.format("%s @ %s/s", downloads.getSessionTraffic(), downloads.getAverageSessionSpeed()));
-		sessionUploadsStatsValue.setText(String.format("%s @ %s/s", uploads.getSessionTraffic(), uploads.getAverageSessionSpeed()));
+		sessionDownloadsStatsValue.setText(String.format("%s @ %s/s", downloads.getSessionTraffic(), downloads.getAverageSessionSpeed())
+				+ (downloads.isLimited() ? String.format(" (now %s/s, limit %s)", downloads.getCurrentSpeed(), downloads.getCurrentLimit()) : ""));
+		sessionUploadsStatsValue.setText(String.format("%s @ %s/s", uploads.getSessionTraffic(), uploads.getAverageSessionSpeed())
+				+ (uploads.isLimited() ? String.format(" (now %s/s, limit %s)", uploads.getCurrentSpeed(), uploads.getCurrentLimit()) : ""));
 		updateTime();
 	}
 	
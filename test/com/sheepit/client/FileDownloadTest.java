@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileDownloadTest {
+	private static final long SIZE = 80L * 1024 * 1024; // enough for several segments
+	private static File archive;
+	private static String md5;
+	
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+	private TestHttpServer httpServer;
+	private Server server;
+	
+	@BeforeClass public static void createArchive() throws IOException {
+		archive = File.createTempFile("download_", ".zip");
+		archive.deleteOnExit();
+		byte[] buffer = new byte[1024 * 1024];
+		Random random = new Random(42);
+		try (FileOutputStream out = new FileOutputStream(archive)) {
+			for (long written = 0; written < SIZE; written += buffer.length) {
+				random.nextBytes(buffer);
+				out.write(buffer);
+			}
+		}
+		md5 = Utils.md5(archive.getAbsolutePath());
+	}
+	
+	@Before public void setUp() throws IOException {
+		Configuration configuration = new Configuration(this.folder.newFolder("cache"), "", "");
+		this.server = new Server("http://127.0.0.1", configuration, null);
+	}
+	
+	@After public void tearDown() {
+		if (this.httpServer != null) {
+			this.httpServer.stop();
+		}
+	}
+	
+	@Test public void downloadsInSeveralSegments() throws Exception {
+		this.httpServer = new TestHttpServer(true);
+		FileDownload download = this.download(this.httpServer.serve("archive.zip", archive));
+		
+		assertEquals(Error.Type.OK, download.getResult());
+		assertEquals(md5, download.getMd5());
+		assertTrue("the archive has been split in segments", this.httpServer.getRangeRequests() > 1);
+	}
+	
+	@Test public void fallsBackToASingleStreamWithoutRanges() throws Exception {
+		this.httpServer = new TestHttpServer(false);
+		FileDownload download = this.download(this.httpServer.serve("archive.zip", archive));
+		
+		assertEquals(Error.Type.OK, download.getResult());
+		assertEquals(md5, download.getMd5());
+		assertEquals(1, this.httpServer.getRequests());
+	}
+	
+	@Test public void fetchesOnlyTheFailedSegmentsAgain() throws Exception {
+		this.httpServer = new TestHttpServer(true);
+		String url = this.httpServer.serve("archive.zip", archive);
+		this.httpServer.cutNextAnswers(2); // the probe, which is only read up to the end of the first segment, and another segment
+		FileDownload download = this.download(url);
+		
+		assertEquals(Error.Type.OK, download.getResult());
+		assertEquals(md5, download.getMd5());
+		
+		// one more request, which continues the cut segment where it stopped
+		List<String> ranges = this.httpServer.getRanges();
+		String[] resumed = ranges.get(ranges.size() - 1).split("-");
+		int cut = -1;
+		for (int i = 1; i < ranges.size() - 1; i++) {
+			if (ranges.get(i).endsWith("-" + resumed[1])) {
+				cut = i;
+			}
+		}
+		assertTrue("the cut segment has been requested again", cut != -1);
+		assertTrue("the cut segment has not been downloaded from its start again", Long.parseLong(resumed[0]) > Long.parseLong(ranges.get(cut).split("-")[0]));
+		assertEquals(1, Collections.frequency(ranges, "0-"));
+	}
+	
+	private FileDownload download(String url_) throws Exception {
+		File destination = new File(this.folder.getRoot(), "archive.zip.partial");
+		Job job = new Job(null, new TestGui(), Log.getInstance(null), null, "1", "0001", "", false, "", "", "", md5, md5, "test", null, "", false, "");
+		FileDownload download = new FileDownload(this.server, Log.getInstance(null), url_, destination, new TestGui(), "Downloading", job, null, null);
+		download.run();
+		if (download.getResult() == Error.Type.OK) {
+			assertArrayEquals(Files.readAllBytes(archive.toPath()), Files.readAllBytes(destination.toPath()));
+		}
+		return download;
+	}
+}
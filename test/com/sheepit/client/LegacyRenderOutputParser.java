@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sheepit.client.Error.Type;
+
+/**
+ * The parsing Job.render did before RenderOutputParser, kept only to compare the results and the speed of both.
+ * The gui and process updates are replaced by the same fields as RenderOutputParser.
+ */
+public class LegacyRenderOutputParser {
+	private static final String[] ERRORS = { "CUDA error: Out of memory", "CUDA error at cuCtxCreate: Out of memory", "CUDA error: Launch exceeded timeout in",
+			"CUDA error: Invalid value in cuTexRefSetAddress(", "CUDA error: Launch failed in cuCtxSynchronize()", "CUDA error: Illegal address in cuCtxSynchronize()",
+			"CUDA device supported only with compute capability", "terminate called after throwing an instance of 'boost::filesystem::filesystem_error'",
+			"terminate called after throwing an instance of 'std::bad_alloc'", "what(): std::bad_alloc", "EXCEPTION_ACCESS_VIOLATION", "Fatal Python error: Py_Initialize",
+			"Calloc returns null", "Malloc returns null", "CUDA kernel compilation failed" };
+	private static final Type[] ERROR_TYPES = { Type.RENDERER_OUT_OF_VIDEO_MEMORY, Type.RENDERER_OUT_OF_VIDEO_MEMORY, Type.RENDERER_OUT_OF_VIDEO_MEMORY,
+			Type.RENDERER_OUT_OF_VIDEO_MEMORY, Type.RENDERER_OUT_OF_VIDEO_MEMORY, Type.RENDERER_OUT_OF_VIDEO_MEMORY, Type.GPU_NOT_SUPPORTED, Type.NOOUTPUTFILE,
+			Type.RENDERER_OUT_OF_MEMORY, Type.RENDERER_OUT_OF_MEMORY, Type.RENDERER_CRASHED, Type.RENDERER_CRASHED_PYTHON_ERROR, Type.RENDERER_OUT_OF_MEMORY,
+			Type.RENDERER_OUT_OF_MEMORY, Type.GPU_NOT_SUPPORTED };
+	
+	private final String updateRenderingStatusMethod;
+	private final Pattern tilePattern = Pattern.compile(" (Rendered|Path Tracing Tile|Rendering) (\\d+)\\s?\\/\\s?(\\d+)( Tiles| samples|,)");
+	
+	String longVersion;
+	String shortVersion;
+	int progress;
+	long memoryPeak;
+	int remainingTime;
+	int statusDone;
+	int statusTotal;
+	Type error;
+	
+	public LegacyRenderOutputParser(String updateRenderingStatusMethod_) {
+		this.updateRenderingStatusMethod = updateRenderingStatusMethod_;
+	}
+	
+	public void parse(String line) {
+		this.progress = -1;
+		this.memoryPeak = -1;
+		this.remainingTime = -1;
+		this.statusDone = -1;
+		this.statusTotal = -1;
+		
+		if (this.longVersion == null) {
+			Pattern blenderPattern = Pattern.compile("Blender (([0-9]{1,3}\\.[0-9]{0,3}).*)$");
+			Matcher blendDetectedVersion = blenderPattern.matcher(line);
+			
+			if (blendDetectedVersion.find()) {
+				this.longVersion = blendDetectedVersion.group(1);
+				this.shortVersion = blendDetectedVersion.group(2);
+			}
+		}
+		
+		Matcher standardTileInfo = this.tilePattern.matcher(line);
+		if (standardTileInfo.find()) {
+			int tileJustProcessed = Integer.parseInt(standardTileInfo.group(2));
+			int totalTilesInJob = Integer.parseInt(standardTileInfo.group(3));
+			
+			this.progress = Math.abs((tileJustProcessed * 100) / totalTilesInJob);
+		}
+		
+		this.updateRenderingMemoryPeak(line);
+		this.updateRenderingStatus(line);
+		this.error = this.detectError(line);
+	}
+	
+	private void updateRenderingStatus(String line) {
+		if (this.updateRenderingStatusMethod != null && this.updateRenderingStatusMethod.equals(Job.UPDATE_METHOD_BLENDER_INTERNAL_BY_PART)) {
+			this.parseStatus(line, " Part ", "-");
+		}
+		else if (this.updateRenderingStatusMethod == null || this.updateRenderingStatusMethod.equals(Job.UPDATE_METHOD_BY_REMAINING_TIME)) {
+			String search_remaining = "remaining:";
+			int index = line.toLowerCase().indexOf(search_remaining);
+			if (index != -1) {
+				String buf1 = line.substring(index + search_remaining.length());
+				index = buf1.indexOf(" ");
+				
+				if (index != -1) {
+					String remaining_time = buf1.substring(0, index).trim();
+					int last_index = remaining_time.lastIndexOf('.'); //format 00:00:00.00 (hr:min:sec)
+					if (last_index > 0) {
+						remaining_time = remaining_time.substring(0, last_index);
+					}
+					
+					try {
+						DateFormat date_parse_minute = new SimpleDateFormat("m:s");
+						DateFormat date_parse_hour = new SimpleDateFormat("h:m:s");
+						DateFormat date_parse = date_parse_minute;
+						if (remaining_time.split(":").length > 2) {
+							date_parse = date_parse_hour;
+						}
+						date_parse.setTimeZone(TimeZone.getTimeZone("GMT"));
+						Date date = date_parse.parse(remaining_time);
+						this.remainingTime = (int) (date.getTime() / 1000);
+					}
+					catch (ParseException err) {
+					}
+				}
+			}
+		}
+		else if (this.updateRenderingStatusMethod.equals(Job.UPDATE_METHOD_BY_TILE)) {
+			this.parseStatus(line, " Tile ", "/");
+		}
+	}
+	
+	private void parseStatus(String line, String search, String separator) {
+		int index = line.lastIndexOf(search);
+		if (index != -1) {
+			String buf = line.substring(index + search.length());
+			String[] parts = buf.split(separator);
+			if (parts.length == 2) {
+				try {
+					int current = Integer.parseInt(parts[0]);
+					int total = Integer.parseInt(parts[1]);
+					if (total != 0) {
+						this.statusDone = current;
+						this.statusTotal = total;
+					}
+				}
+				catch (NumberFormatException e) {
+				}
+			}
+		}
+	}
+	
+	private void updateRenderingMemoryPeak(String line) {
+		String[] elements = line.toLowerCase().split("(peak)");
+		
+		for (String element : elements) {
+			int end = -1;
+			if (element.isEmpty() == false && element.charAt(0) == ' ') {
+				end = element.indexOf(')');
+			}
+			else if (element.isEmpty() == false && element.charAt(0) == ':') {
+				end = element.indexOf('|');
+			}
+			if (end > 0) {
+				try {
+					long mem = Utils.parseNumber(element.substring(1, end).trim()) / 1000; // internal use of ram is in kB
+					if (mem > this.memoryPeak) {
+						this.memoryPeak = mem;
+					}
+				}
+				catch (IllegalStateException | NumberFormatException e) {
+					// failed to parseNumber
+				}
+			}
+		}
+	}
+	
+	private Type detectError(String line) {
+		for (int i = 0; i < ERRORS.length; i++) {
+			if (line.contains(ERRORS[i])) {
+				return ERROR_TYPES[i];
+			}
+		}
+		return Type.OK;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * RenderOutputParser against the parsing Job.render did before, over the whole Blender log of the test resources.
+ * The score is for the whole log, divide it by the number of lines printed at the setup to get the time per line.
+ *
+ * gradle jmh -Pjmh="RenderOutputParserBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderOutputParserBenchmark {
+	@Param({ Job.UPDATE_METHOD_BY_REMAINING_TIME, Job.UPDATE_METHOD_BY_TILE }) public String updateRenderingStatusMethod;
+	
+	private String[] lines;
+	
+	@Setup public void readLog() throws IOException {
+		List<String> log = RenderOutputParserTest.readLog();
+		this.lines = log.toArray(new String[log.size()]);
+		System.out.println("RenderOutputParserBenchmark " + this.lines.length + " lines");
+	}
+	
+	@Benchmark public void parser(Blackhole blackhole) {
+		// a parser per job, like Job.render
+		RenderOutputParser parser = new RenderOutputParser(this.updateRenderingStatusMethod);
+		for (String line : this.lines) {
+			parser.parse(line);
+			blackhole.consume(parser.getProgress());
+			blackhole.consume(parser.getMemoryPeak());
+			blackhole.consume(parser.getRemainingTime());
+			blackhole.consume(parser.getStatusDone());
+			blackhole.consume(parser.getError());
+		}
+	}
+	
+	@Benchmark public void legacy(Blackhole blackhole) {
+		LegacyRenderOutputParser parser = new LegacyRenderOutputParser(this.updateRenderingStatusMethod);
+		for (String line : this.lines) {
+			parser.parse(line);
+			blackhole.consume(parser.progress);
+			blackhole.consume(parser.memoryPeak);
+			blackhole.consume(parser.remainingTime);
+			blackhole.consume(parser.statusDone);
+			blackhole.consume(parser.error);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sheepit.client.Error.Type;
+
+public class RenderOutputParserTest {
+	
+	/**
+	 * @return the lines of the Blender log in the test resources: the outputs quoted next to the error signatures, and some renders of each status method
+	 */
+	public static List<String> readLog() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(RenderOutputParserTest.class.getResourceAsStream("blender.log"), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		}
+		return lines;
+	}
+	
+	@Test public void givesTheSameResultsAsTheLegacyParserByRemainingTime() throws IOException {
+		this.compareWithLegacy(Job.UPDATE_METHOD_BY_REMAINING_TIME);
+	}
+	
+	@Test public void givesTheSameResultsAsTheLegacyParserByPart() throws IOException {
+		this.compareWithLegacy(Job.UPDATE_METHOD_BLENDER_INTERNAL_BY_PART);
+	}
+	
+	@Test public void givesTheSameResultsAsTheLegacyParserByTile() throws IOException {
+		this.compareWithLegacy(Job.UPDATE_METHOD_BY_TILE);
+	}
+	
+	@Test public void readsTheRemainingTimeOverTwelveHours() {
+		RenderOutputParser parser = new RenderOutputParser(Job.UPDATE_METHOD_BY_REMAINING_TIME);
+		parser.parse("Fra:1 Mem:96.43M (0.00M, Peak 112.78M) | Time:00:10.17 | Remaining:13:02:05.19 | Mem:40.17M, Peak:41.03M | Scene | Rendered 1/120 Tiles");
+		assertEquals((13 * 60 + 2) * 60 + 5, parser.getRemainingTime());
+	}
+	
+	@Test public void ignoresAnEmptyTileCount() {
+		RenderOutputParser parser = new RenderOutputParser(Job.UPDATE_METHOD_BY_TILE);
+		parser.parse("Fra:1 Mem:102.41M (0.00M, Peak 215.18M) | Mem:176.04M, Peak:199.23M | Scene, RenderLayer | Path Tracing Tile 0/0");
+		assertEquals(-1, parser.getProgress());
+		assertEquals(0, parser.getStatusTotal());
+	}
+	
+	@Test public void keepsThePriorityOfTheErrors() {
+		RenderOutputParser parser = new RenderOutputParser(Job.UPDATE_METHOD_BY_REMAINING_TIME);
+		parser.parse("Fra:1 Mem:7.25M | Error | CUDA kernel compilation failed after CUDA error: Out of memory in cuMemAlloc");
+		assertEquals(Type.RENDERER_OUT_OF_VIDEO_MEMORY, parser.getError());
+	}
+	
+	private void compareWithLegacy(String updateRenderingStatusMethod_) throws IOException {
+		RenderOutputParser parser = new RenderOutputParser(updateRenderingStatusMethod_);
+		LegacyRenderOutputParser legacy = new LegacyRenderOutputParser(updateRenderingStatusMethod_);
+		int errors = 0;
+		for (String line : readLog()) {
+			parser.parse(line);
+			legacy.parse(line);
+			
+			assertEquals(line, legacy.longVersion, parser.getLongVersion());
+			assertEquals(line, legacy.shortVersion, parser.getShortVersion());
+			assertEquals(line, legacy.progress, parser.getProgress());
+			if (line.toLowerCase().contains("peak")) { // the legacy parser also read a line starting with a space as a peak
+				assertEquals(line, legacy.memoryPeak, parser.getMemoryPeak());
+			}
+			assertEquals(line, legacy.remainingTime, parser.getRemainingTime());
+			assertEquals(line, legacy.statusDone, parser.getStatusDone());
+			assertEquals(line, legacy.statusTotal, parser.getStatusTotal());
+			assertEquals(line, legacy.error, parser.getError());
+			if (parser.getError() != Type.OK) {
+				errors++;
+			}
+		}
+		assertEquals(true, errors > 0);
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import net.lingala.zip4j.core.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.util.Zip4jConstants;
+
+/**
+ * Build scene-like archives for the tests and benchmarks: a few big files (half random, half repeated so the deflate has something to do),
+ * lots of small ones, some sub-directories and an empty file.
+ */
+public class TestArchive {
+	public enum Encryption {
+		NONE, ZIPCRYPTO, AES
+	}
+	
+	public static final String PASSWORD = "sheepit-test-password";
+	
+	private static final int BIG_FILES = 8;
+	private static final int SMALL_FILES = 64;
+	private static final int SMALL_FILE_SIZE = 16 * 1024;
+	
+	public static void fill(File directory_, long size_, long seed_) throws IOException {
+		Random random = new Random(seed_);
+		long smallFiles = Math.min(size_ / 2, (long) SMALL_FILES * SMALL_FILE_SIZE) / SMALL_FILE_SIZE;
+		long big = (size_ - smallFiles * SMALL_FILE_SIZE) / BIG_FILES;
+		
+		for (int i = 0; i < BIG_FILES; i++) {
+			write(new File(directory_, "big_" + i + ".blend"), big, random);
+		}
+		for (int i = 0; i < smallFiles; i++) {
+			write(new File(directory_, "textures/" + (i % 4) + "/small_" + i + ".png"), SMALL_FILE_SIZE, random);
+		}
+		write(new File(directory_, "empty.txt"), 0, random);
+		new File(directory_, "cache/empty_directory").mkdirs();
+	}
+	
+	/**
+	 * Zip the content of the directory (not the directory itself), the same way the server builds the scene archives
+	 */
+	public static File create(File archive_, File directory_, Encryption encryption_) throws ZipException {
+		ZipParameters parameters = new ZipParameters();
+		parameters.setCompressionMethod(Zip4jConstants.COMP_DEFLATE);
+		parameters.setCompressionLevel(Zip4jConstants.DEFLATE_LEVEL_FAST);
+		parameters.setIncludeRootFolder(false);
+		if (encryption_ != Encryption.NONE) {
+			parameters.setEncryptFiles(true);
+			parameters.setPassword(PASSWORD);
+			if (encryption_ == Encryption.AES) {
+				parameters.setEncryptionMethod(Zip4jConstants.ENC_METHOD_AES);
+				parameters.setAesKeyStrength(Zip4jConstants.AES_STRENGTH_256);
+			}
+			else {
+				parameters.setEncryptionMethod(Zip4jConstants.ENC_METHOD_STANDARD);
+			}
+		}
+		new ZipFile(archive_).addFolder(directory_, parameters);
+		return archive_;
+	}
+	
+	public static void delete(File file_) {
+		File[] files = file_.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				delete(file);
+			}
+		}
+		file_.delete();
+	}
+	
+	private static void write(File file_, long size_, Random random_) throws IOException {
+		file_.getParentFile().mkdirs();
+		byte[] buffer = new byte[1024 * 1024];
+		try (FileOutputStream out = new FileOutputStream(file_)) {
+			long written = 0;
+			while (written < size_) {
+				int length = (int) Math.min(buffer.length, size_ - written);
+				if ((written / buffer.length) % 2 == 0) {
+					random_.nextBytes(buffer);
+				}
+				out.write(buffer, 0, length);
+				written += length;
+			}
+		}
+	}
+}
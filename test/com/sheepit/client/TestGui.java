@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+/**
+ * Gui of the tests, nothing is displayed
+ */
+public class TestGui implements Gui {
+	@Override public void start() {
+	}
+	
+	@Override public void stop() {
+	}
+	
+	@Override public void status(String msg_) {
+	}
+	
+	@Override public void status(String msg_, boolean overwriteSuspendedMsg) {
+	}
+	
+	@Override public void status(String msg_, int progress) {
+	}
+	
+	@Override public void status(String msg_, int progress, long size) {
+	}
+	
+	@Override public void updateTrayIcon(Integer percentage_) {
+	}
+	
+	@Override public void setRenderingProjectName(String name_) {
+	}
+	
+	@Override public void setRemainingTime(String time_) {
+	}
+	
+	@Override public void setRenderingTime(String time_) {
+	}
+	
+	@Override public void displayTransferStats(TransferStats downloads, TransferStats uploads) {
+	}
+	
+	@Override public void displayStats(Stats stats) {
+	}
+	
+	@Override public void displayUploadQueueStats(int queueSize, long queueVolume) {
+	}
+	
+	@Override public void error(String err_) {
+	}
+	
+	@Override public void AddFrameRendered() {
+	}
+	
+	@Override public void successfulAuthenticationEvent(String publickey) {
+	}
+	
+	@Override public void setClient(Client cli) {
+	}
+	
+	@Override public void setComputeMethod(String computeMethod_) {
+	}
+	
+	@Override public Client getClient() {
+		return null;
+	}
+}
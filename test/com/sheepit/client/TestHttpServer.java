@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server for the transfer tests and benchmarks.
+ *
+ * GET serves the files given to serve(), with the Range (a single range) and If-Range headers if ranges are supported, and can cut some of
+ * the answers in their middle like a broken connection. POST /upload reads the whole body and answers like the job validation of the server.
+ */
+public class TestHttpServer implements HttpHandler {
+	private HttpServer server;
+	private Map<String, File> files;
+	private boolean rangeSupported;
+	private int answersToCut; // the next answers to stop in their middle
+	private AtomicInteger requests;
+	private AtomicInteger rangeRequests;
+	private List<String> ranges; // requested, in order
+	private AtomicLong uploaded; // in bytes
+	
+	public TestHttpServer(boolean rangeSupported_) throws IOException {
+		this.files = new ConcurrentHashMap<String, File>();
+		this.rangeSupported = rangeSupported_;
+		this.answersToCut = 0;
+		this.requests = new AtomicInteger(0);
+		this.rangeRequests = new AtomicInteger(0);
+		this.ranges = Collections.synchronizedList(new ArrayList<String>());
+		this.uploaded = new AtomicLong(0);
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 64);
+		this.server.createContext("/", this);
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.start();
+	}
+	
+	/**
+	 * @return the url of the file
+	 */
+	public String serve(String name_, File file_) {
+		this.files.put("/" + name_, file_);
+		return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/" + name_;
+	}
+	
+	public String getUploadUrl() {
+		return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/upload";
+	}
+	
+	/**
+	 * Stop the next count_ answers to a GET in their middle
+	 */
+	public synchronized void cutNextAnswers(int count_) {
+		this.answersToCut = count_;
+	}
+	
+	public int getRequests() {
+		return this.requests.get();
+	}
+	
+	public int getRangeRequests() {
+		return this.rangeRequests.get();
+	}
+	
+	/**
+	 * @return the ranges requested ("start-end", end is empty for the end of the file), in order
+	 */
+	public List<String> getRanges() {
+		synchronized (this.ranges) {
+			return new ArrayList<String>(this.ranges);
+		}
+	}
+	
+	public long getUploaded() {
+		return this.uploaded.get();
+	}
+	
+	public void stop() {
+		this.server.stop(0);
+	}
+	
+	@Override public void handle(HttpExchange exchange_) throws IOException {
+		this.requests.incrementAndGet();
+		try {
+			if ("POST".equals(exchange_.getRequestMethod())) {
+				this.upload(exchange_);
+			}
+			else {
+				this.download(exchange_);
+			}
+		}
+		finally {
+			exchange_.close();
+		}
+	}
+	
+	private synchronized boolean cutThisAnswer() {
+		if (this.answersToCut > 0) {
+			this.answersToCut--;
+			return true;
+		}
+		return false;
+	}
+	
+	private void upload(HttpExchange exchange_) throws IOException {
+		byte[] buffer = new byte[256 * 1024];
+		InputStream in = exchange_.getRequestBody();
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			this.uploaded.addAndGet(read);
+		}
+		byte[] answer = "<?xml version=\"1.0\" encoding=\"utf-8\" ?><jobvalidate status=\"0\" />".getBytes(StandardCharsets.UTF_8);
+		exchange_.getResponseHeaders().set("Content-Type", "text/xml; charset=utf-8");
+		exchange_.sendResponseHeaders(200, answer.length);
+		exchange_.getResponseBody().write(answer);
+	}
+	
+	private void download(HttpExchange exchange_) throws IOException {
+		File file = this.files.get(exchange_.getRequestURI().getPath());
+		if (file == null) {
+			exchange_.sendResponseHeaders(404, -1);
+			return;
+		}
+		
+		long size = file.length();
+		String etag = "\"" + size + "-" + file.lastModified() + "\"";
+		long start = 0;
+		long end = size - 1;
+		boolean partial = false;
+		String range = exchange_.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange_.getRequestHeaders().getFirst("If-Range");
+		if (this.rangeSupported && range != null && range.startsWith("bytes=") && (ifRange == null || ifRange.equals(etag))) {
+			this.rangeRequests.incrementAndGet();
+			this.ranges.add(range.substring("bytes=".length()));
+			String[] bounds = range.substring("bytes=".length()).split("-", -1);
+			start = Long.parseLong(bounds[0]);
+			if (bounds[1].isEmpty() == false) {
+				end = Math.min(end, Long.parseLong(bounds[1]));
+			}
+			partial = true;
+		}
+		
+		if (this.rangeSupported) {
+			exchange_.getResponseHeaders().set("Accept-Ranges", "bytes");
+			exchange_.getResponseHeaders().set("ETag", etag);
+		}
+		exchange_.getResponseHeaders().set("Content-Type", "application/zip");
+		long length = end - start + 1;
+		if (partial) {
+			exchange_.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + size);
+			exchange_.sendResponseHeaders(206, length);
+		}
+		else {
+			exchange_.sendResponseHeaders(200, length);
+		}
+		
+		// a cut answer is not complete, the client gets an error while reading it
+		long toSend = this.cutThisAnswer() ? length / 2 : length;
+		byte[] buffer = new byte[256 * 1024];
+		OutputStream out = exchange_.getResponseBody();
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			in.seek(start);
+			long sent = 0;
+			while (sent < toSend) {
+				int read = in.read(buffer, 0, (int) Math.min(buffer.length, toSend - sent));
+				if (read == -1) {
+					break;
+				}
+				out.write(buffer, 0, read);
+				sent += read;
+			}
+		}
+		catch (IOException e) {
+			// the client has closed the connection, its segment is done or cancelled
+		}
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Random;
+
+import com.sheepit.client.Error.ServerCode;
+
+/**
+ * Throughput of Server.HTTPGetFile and Server.HTTPSendFile against a local TestHttpServer, in MB/s and in cpu seconds per GB.
+ * The cpu time is the one of the whole process, so it includes the server side.
+ *
+ * gradle throughput -Pthroughput="<sizes in MB, comma separated> <runs> <directory>"
+ * by default "16,256,1024 3 java.io.tmpdir", the directory needs twice the biggest size of free space.
+ */
+public class TransferThroughput {
+	private static final double MB = 1024 * 1024;
+	private static final double GB = 1024 * MB;
+	
+	private final Server server;
+	private final TestHttpServer httpServer;
+	private final File directory;
+	
+	public static void main(String[] args) throws Exception {
+		String[] sizes = (args.length > 0 ? args[0] : "16,256,1024").split(",");
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+		File parent = new File(args.length > 2 ? args[2] : System.getProperty("java.io.tmpdir"));
+		
+		File directory = Files.createTempDirectory(parent.toPath(), "throughput_").toFile();
+		TestHttpServer httpServer = new TestHttpServer(true);
+		try {
+			TransferThroughput throughput = new TransferThroughput(httpServer, directory);
+			throughput.run(Integer.parseInt(sizes[0]), 1, false); // warm up
+			System.out.println(String.format("%-10s %10s %10s %12s", "transfer", "size (MB)", "MB/s", "cpu-s/GB"));
+			for (String size : sizes) {
+				throughput.run(Integer.parseInt(size.trim()), runs, true);
+			}
+		}
+		finally {
+			httpServer.stop();
+			TestArchive.delete(directory);
+		}
+	}
+	
+	public TransferThroughput(TestHttpServer httpServer_, File directory_) throws IOException {
+		this.httpServer = httpServer_;
+		this.directory = directory_;
+		this.server = new Server("http://127.0.0.1", new Configuration(new File(directory_, "cache"), "", ""), null);
+	}
+	
+	private void run(int sizeMB_, int runs_, boolean print_) throws Exception {
+		File file = new File(this.directory, "file_" + sizeMB_ + ".png");
+		write(file, sizeMB_ * 1024L * 1024L);
+		String url = this.httpServer.serve(file.getName(), file);
+		File destination = new File(this.directory, "downloaded_" + sizeMB_ + ".png");
+		String md5 = Utils.md5(file.getAbsolutePath());
+		TestGui gui = new TestGui();
+		
+		long downloadTime = 0;
+		long downloadCpu = 0;
+		long uploadTime = 0;
+		long uploadCpu = 0;
+		for (int i = 0; i < runs_; i++) {
+			Job job = new Job(null, gui, Log.getInstance(null), null, "1", "0001", "", false, "", "", "", md5, md5, "test", null, "", false, "");
+			long start = System.nanoTime();
+			long startCpu = cpuTime();
+			FileDownload download = this.server.HTTPGetFile(url, destination.getAbsolutePath(), gui, "Downloading", job, null);
+			downloadTime += System.nanoTime() - start;
+			downloadCpu += cpuTime() - startCpu;
+			if (download.getResult() != Error.Type.OK || md5.equals(download.getMd5()) == false) {
+				throw new IOException("Download of " + sizeMB_ + " MB failed: " + download.getResult());
+			}
+			FileDownload.discard(new File(destination.getAbsolutePath() + ".partial"));
+			
+			long uploaded = this.httpServer.getUploaded();
+			start = System.nanoTime();
+			startCpu = cpuTime();
+			ServerCode code = this.server.HTTPSendFile(this.httpServer.getUploadUrl(), file.getAbsolutePath(), 0, gui);
+			uploadTime += System.nanoTime() - start;
+			uploadCpu += cpuTime() - startCpu;
+			if (code != ServerCode.OK || this.httpServer.getUploaded() - uploaded < file.length()) {
+				throw new IOException("Upload of " + sizeMB_ + " MB failed: " + code);
+			}
+		}
+		
+		if (print_) {
+			double bytes = (double) file.length() * runs_;
+			System.out.println(String.format("%-10s %10d %10.1f %12.2f", "GET", sizeMB_, bytes / MB / (downloadTime / 1e9), downloadCpu / 1e9 / (bytes / GB)));
+			System.out.println(String.format("%-10s %10d %10.1f %12.2f", "POST", sizeMB_, bytes / MB / (uploadTime / 1e9), uploadCpu / 1e9 / (bytes / GB)));
+		}
+		file.delete();
+	}
+	
+	/**
+	 * @return the cpu time of the process, in ns
+	 */
+	private static long cpuTime() {
+		return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+	}
+	
+	private static void write(File file_, long size_) throws IOException {
+		byte[] buffer = new byte[1024 * 1024];
+		Random random = new Random(size_);
+		try (FileOutputStream out = new FileOutputStream(file_)) {
+			for (long written = 0; written < size_; written += buffer.length) {
+				random.nextBytes(buffer);
+				out.write(buffer, 0, (int) Math.min(buffer.length, size_ - written));
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.lingala.zip4j.core.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+
+/**
+ * ZipExtractor against the single threaded ZipFile.extractAll it replaced.
+ *
+ * The default size keeps a run short, the real scenes are bigger, for example:
+ * gradle jmh -Pjmh="ZipExtractorBenchmark -p sizeMB=4096"
+ * The archive is written in java.io.tmpdir (or -Djmh.zip.directory=...), it needs about three times the size of free space.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ZipExtractorBenchmark {
+	@Param({ "256" }) public long sizeMB;
+	
+	@Param({ "NONE", "ZIPCRYPTO", "AES" }) public TestArchive.Encryption encryption;
+	
+	private File directory;
+	private File archive;
+	private File destination;
+	
+	@Setup(Level.Trial) public void createArchive() throws IOException, ZipException {
+		String parent = System.getProperty("jmh.zip.directory", System.getProperty("java.io.tmpdir"));
+		this.directory = Files.createTempDirectory(new File(parent).toPath(), "zip_benchmark_").toFile();
+		File content = new File(this.directory, "content");
+		TestArchive.fill(content, this.sizeMB * 1024 * 1024, 42);
+		this.archive = TestArchive.create(new File(this.directory, "scene.zip"), content, this.encryption);
+		TestArchive.delete(content);
+	}
+	
+	@Setup(Level.Invocation) public void createDestination() {
+		// a fresh directory each time, extracting over existing files doesn't cost the same
+		this.destination = new File(this.directory, "extracted");
+		TestArchive.delete(this.destination);
+		this.destination.mkdirs();
+	}
+	
+	@TearDown(Level.Trial) public void deleteArchive() {
+		TestArchive.delete(this.directory);
+	}
+	
+	@Benchmark public void zipExtractor() throws IOException, ZipException {
+		ZipExtractor.extract(this.archive, this.destination, TestArchive.PASSWORD);
+	}
+	
+	@Benchmark public void extractAll() throws ZipException {
+		ZipFile zipFile = new ZipFile(this.archive);
+		if (zipFile.isEncrypted()) {
+			zipFile.setPassword(TestArchive.PASSWORD);
+		}
+		zipFile.extractAll(this.destination.getAbsolutePath());
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import net.lingala.zip4j.core.ZipFile;
+import net.lingala.zip4j.exception.ZipException;
+
+/**
+ * ZipExtractor must give exactly what ZipFile.extractAll gives, for every encryption the server uses
+ */
+public class ZipExtractorTest {
+	private static final long SIZE = 24L * 1024 * 1024;
+	
+	@ClassRule public static TemporaryFolder sources = new TemporaryFolder();
+	private static File content;
+	
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+	
+	@BeforeClass public static void createContent() throws IOException {
+		content = sources.newFolder("content");
+		TestArchive.fill(content, SIZE, 42);
+	}
+	
+	@Test public void extractsAnArchiveWithoutEncryption() throws Exception {
+		this.compareWithExtractAll(TestArchive.Encryption.NONE);
+	}
+	
+	@Test public void extractsAZipCryptoArchive() throws Exception {
+		this.compareWithExtractAll(TestArchive.Encryption.ZIPCRYPTO);
+	}
+	
+	@Test public void extractsAnAesArchive() throws Exception {
+		this.compareWithExtractAll(TestArchive.Encryption.AES);
+	}
+	
+	@Test(expected = ZipException.class) public void refusesAWrongPassword() throws Exception {
+		File archive = TestArchive.create(new File(this.folder.getRoot(), "scene.zip"), content, TestArchive.Encryption.AES);
+		ZipExtractor.extract(archive, this.folder.newFolder("extracted"), "wrong password");
+	}
+	
+	@Test public void givesTheUncompressedSize() throws Exception {
+		File archive = TestArchive.create(new File(this.folder.getRoot(), "scene.zip"), content, TestArchive.Encryption.ZIPCRYPTO);
+		long size = 0;
+		for (String path : list(content)) {
+			File file = new File(content, path);
+			if (file.isFile()) {
+				size += file.length();
+			}
+		}
+		assertEquals(size, ZipExtractor.getUncompressedSize(archive));
+	}
+	
+	private void compareWithExtractAll(TestArchive.Encryption encryption_) throws Exception {
+		File archive = TestArchive.create(new File(this.folder.getRoot(), "scene.zip"), content, encryption_);
+		
+		File extracted = this.folder.newFolder("extracted");
+		ZipExtractor.extract(archive, extracted, TestArchive.PASSWORD);
+		
+		File reference = this.folder.newFolder("reference");
+		ZipFile zipFile = new ZipFile(archive);
+		if (zipFile.isEncrypted()) {
+			zipFile.setPassword(TestArchive.PASSWORD);
+		}
+		zipFile.extractAll(reference.getAbsolutePath());
+		
+		List<String> files = list(reference);
+		assertTrue("the archive is not empty", files.size() > 1);
+		assertEquals(files, list(extracted));
+		for (String path : files) {
+			File expected = new File(reference, path);
+			File actual = new File(extracted, path);
+			assertEquals(path, expected.isDirectory(), actual.isDirectory());
+			if (expected.isFile()) {
+				assertArrayEquals(path, Files.readAllBytes(expected.toPath()), Files.readAllBytes(actual.toPath()));
+			}
+		}
+	}
+	
+	/**
+	 * @return the path of every file and directory under the directory, sorted
+	 */
+	private static List<String> list(File directory_) {
+		List<String> paths = new ArrayList<String>();
+		list(directory_, "", paths);
+		Collections.sort(paths);
+		return paths;
+	}
+	
+	private static void list(File directory_, String prefix_, List<String> paths_) {
+		File[] files = directory_.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String path = prefix_ + file.getName();
+			paths_.add(path);
+			if (file.isDirectory()) {
+				list(file, path + "/", paths_);
+			}
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2020 Laurent CLOUET
+ * Author Laurent CLOUET <laurent.clouet@nopnop.net>
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; version 2
+ * of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package com.sheepit.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ZipStreamExtractorTest {
+	private static final int LOCAL_FILE_HEADER = 0x04034b50;
+	private static final int DATA_DESCRIPTOR = 0x08074b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test public void extractsAnArchiveWithDataDescriptors() throws Exception {
+		byte[] first = content(300 * 1024, 1);
+		byte[] second = "second entry".getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(archive)) {
+			zip.putNextEntry(new ZipEntry("textures/first.bin"));
+			zip.write(first);
+			zip.putNextEntry(new ZipEntry("second.txt"));
+			zip.write(second);
+		}
+		
+		File directory = this.extract(archive.toByteArray());
+		assertArrayEquals(first, Files.readAllBytes(new File(directory, "textures/first.bin").toPath()));
+		assertArrayEquals(second, Files.readAllBytes(new File(directory, "second.txt").toPath()));
+	}
+	
+	@Test public void extractsZip64Entries() throws Exception {
+		byte[] stored = content(200 * 1024, 2);
+		byte[] deflated = content(500 * 1024, 3);
+		byte[] last = "after the zip64 entries".getBytes(StandardCharsets.UTF_8);
+		
+		ByteArrayOutputStream archive = new ByteArrayOutputStream();
+		// sizes in the Zip64 field only
+		writeLocalHeader(archive, "stored.bin", 0, 0, crc(stored), 0xffffffffL, 0xffffffffL, zip64Field(stored.length, stored.length));
+		archive.write(stored);
+		
+		// sizes unknown in the local header, with a Zip64 field (so 8 bytes sizes in the data descriptor), like a streamed Info-ZIP archive
+		byte[] compressed = deflate(deflated);
+		writeLocalHeader(archive, "textures/deflated.bin", 0x8, 8, 0, 0, 0, zip64Field(0, 0));
+		archive.write(compressed);
+		writeInt(archive, DATA_DESCRIPTOR);
+		writeInt(archive, crc(deflated));
+		writeLong(archive, compressed.length);
+		writeLong(archive, deflated.length);
+		
+		// a usual entry, it's only extracted if the previous data descriptor has been read entirely
+		byte[] compressedLast = deflate(last);
+		writeLocalHeader(archive, "last.txt", 0x8, 8, 0, 0, 0, new byte[0]);
+		archive.write(compressedLast);
+		writeInt(archive, DATA_DESCRIPTOR);
+		writeInt(archive, crc(last));
+		writeInt(archive, compressedLast.length);
+		writeInt(archive, last.length);
+		
+		writeInt(archive, END_OF_CENTRAL_DIRECTORY);
+		archive.write(new byte[18]);
+		
+		File directory = this.extract(archive.toByteArray());
+		assertArrayEquals(stored, Files.readAllBytes(new File(directory, "stored.bin").toPath()));
+		assertArrayEquals(deflated, Files.readAllBytes(new File(directory, "textures/deflated.bin").toPath()));
+		assertArrayEquals(last, Files.readAllBytes(new File(directory, "last.txt").toPath()));
+	}
+	
+	private File extract(byte[] archive_) throws IOException {
+		File directory = new File(this.folder.getRoot(), "extracted");
+		ZipStreamExtractor extractor = new ZipStreamExtractor(directory, null, Log.getInstance(null));
+		extractor.start(new ByteArrayInputStream(archive_));
+		assertTrue("the archive has been extracted", extractor.await());
+		return directory;
+	}
+	
+	private static byte[] content(int size_, long seed_) {
+		// half random, half repeated, like a scene
+		byte[] content = new byte[size_];
+		new Random(seed_).nextBytes(content);
+		for (int i = size_ / 2; i < size_; i++) {
+			content[i] = (byte) (i % 61);
+		}
+		return content;
+	}
+	
+	private static byte[] deflate(byte[] data_) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (DeflaterOutputStream deflater = new DeflaterOutputStream(output, new Deflater(Deflater.DEFAULT_COMPRESSION, true))) {
+			deflater.write(data_);
+		}
+		return output.toByteArray();
+	}
+	
+	private static int crc(byte[] data_) {
+		CRC32 crc = new CRC32();
+		crc.update(data_);
+		return (int) crc.getValue();
+	}
+	
+	/**
+	 * @return a Zip64 extended information field with the sizes of the entry, as in a local header
+	 */
+	private static byte[] zip64Field(long size_, long compressed_) {
+		ByteArrayOutputStream field = new ByteArrayOutputStream();
+		writeShort(field, 0x0001);
+		writeShort(field, 16);
+		writeLong(field, size_);
+		writeLong(field, compressed_);
+		return field.toByteArray();
+	}
+	
+	private static void writeLocalHeader(ByteArrayOutputStream output_, String name_, int flags_, int method_, int crc_, long compressed_, long size_, byte[] extra_)
+			throws IOException {
+		byte[] name = name_.getBytes(StandardCharsets.UTF_8);
+		writeInt(output_, LOCAL_FILE_HEADER);
+		writeShort(output_, 45); // version needed to extract, 4.5 for Zip64
+		writeShort(output_, flags_);
+		writeShort(output_, method_);
+		writeShort(output_, 0); // time
+		writeShort(output_, 0x21); // date
+		writeInt(output_, crc_);
+		writeInt(output_, (int) compressed_);
+		writeInt(output_, (int) size_);
+		writeShort(output_, name.length);
+		writeShort(output_, extra_.length);
+		output_.write(name);
+		output_.write(extra_);
+	}
+	
+	private static void writeShort(ByteArrayOutputStream output_, int value_) {
+		output_.write(value_ & 0xff);
+		output_.write((value_ >>> 8) & 0xff);
+	}
+	
+	private static void writeInt(ByteArrayOutputStream output_, int value_) {
+		writeShort(output_, value_ & 0xffff);
+		writeShort(output_, (value_ >>> 16) & 0xffff);
+	}
+	
+	private static void writeLong(ByteArrayOutputStream output_, long value_) {
+		writeInt(output_, (int) value_);
+		writeInt(output_, (int) (value_ >>> 32));
+	}
+}